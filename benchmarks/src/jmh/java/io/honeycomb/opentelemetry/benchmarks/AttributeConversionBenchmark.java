@@ -0,0 +1,57 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.opentelemetry.exporters.HoneycombSpanExporter;
+import io.opentelemetry.common.AttributeType;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of span attributes into event fields for each attribute type, by exporting a single
+ * span that carries nothing but attributes of that type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AttributeConversionBenchmark {
+
+    @Param({"STRING", "LONG", "DOUBLE", "BOOLEAN"})
+    AttributeType attributeType;
+
+    @Param({"50"})
+    int attributeCount;
+
+    private HoneycombSpanExporter exporter;
+    private List<SpanData> spans;
+
+    @Setup
+    public void setUp() {
+        exporter = HoneycombSpanExporter.newBuilder("benchmark")
+            .writeKey("key")
+            .dataSet("dataset")
+            .transport(new NoopTransport())
+            .build();
+        spans = BenchmarkSpans.spans(BenchmarkSpans.resource(0), 1, attributeCount, attributeType);
+    }
+
+    @TearDown
+    public void tearDown() {
+        exporter.shutdown();
+    }
+
+    @Benchmark
+    public CompletableResultCode export() {
+        return exporter.export(spans);
+    }
+}
@@ -0,0 +1,92 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.AttributeType;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates real SDK spans for the benchmarks so that the exporter sees the same {@link SpanData} implementation
+ * as it does in production.
+ */
+final class BenchmarkSpans {
+
+    private BenchmarkSpans() {
+    }
+
+    /**
+     * Creates a resource with the given number of string attributes (including {@code service.name}), roughly
+     * resembling what the k8s and cloud resource detectors produce.
+     */
+    static Resource resource(final int attributeCount) {
+        final Attributes.Builder attributes = Attributes.newBuilder();
+        if (attributeCount > 0) {
+            attributes.setAttribute("service.name", "benchmark-service");
+        }
+        for (int i = 1; i < attributeCount; i++) {
+            attributes.setAttribute("resource.attribute." + i, "resource-value-" + i);
+        }
+        return Resource.create(attributes.build());
+    }
+
+    /**
+     * Creates ended spans that each carry {@code attributeCount} attributes of the given type.
+     */
+    static List<SpanData> spans(final Resource resource, final int spanCount, final int attributeCount,
+                                final AttributeType attributeType) {
+        final TracerSdkProvider provider = TracerSdkProvider.builder().setResource(resource).build();
+        final Tracer tracer = provider.get("benchmarks", "1.0");
+
+        final List<SpanData> spans = new ArrayList<>(spanCount);
+        for (int i = 0; i < spanCount; i++) {
+            final Span span = tracer.spanBuilder("span-" + i).setSpanKind(Span.Kind.SERVER).startSpan();
+            for (int j = 0; j < attributeCount; j++) {
+                setAttribute(span, "attribute." + j, attributeType, j);
+            }
+            span.end();
+            spans.add(((ReadableSpan) span).toSpanData());
+        }
+        provider.shutdown();
+        return spans;
+    }
+
+    private static void setAttribute(final Span span, final String name, final AttributeType type, final int value) {
+        switch (type) {
+            case STRING:
+                span.setAttribute(name, "value-" + value);
+                break;
+            case LONG:
+                span.setAttribute(name, (long) value);
+                break;
+            case DOUBLE:
+                span.setAttribute(name, value + 0.5);
+                break;
+            case BOOLEAN:
+                span.setAttribute(name, value % 2 == 0);
+                break;
+            case STRING_ARRAY:
+                span.setAttribute(AttributeKey.stringArrayKey(name), Arrays.asList("a-" + value, "b-" + value));
+                break;
+            case LONG_ARRAY:
+                span.setAttribute(AttributeKey.longArrayKey(name), Arrays.asList((long) value, value + 1L));
+                break;
+            case DOUBLE_ARRAY:
+                span.setAttribute(AttributeKey.doubleArrayKey(name), Arrays.asList(value + 0.5, value + 1.5));
+                break;
+            case BOOLEAN_ARRAY:
+                span.setAttribute(AttributeKey.booleanArrayKey(name), Arrays.asList(true, false));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported attribute type: " + type);
+        }
+    }
+}
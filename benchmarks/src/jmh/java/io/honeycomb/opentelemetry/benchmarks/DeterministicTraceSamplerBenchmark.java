@@ -0,0 +1,90 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.opentelemetry.samplers.DeterministicTraceSampler;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DeterministicTraceSampler#shouldSample} across sample rates and trace ID shapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DeterministicTraceSamplerBenchmark {
+    private static final int TRACE_ID_COUNT = 1024;
+
+    @Param({"1", "10", "100"})
+    int sampleRate;
+
+    @Param
+    TraceIdShape traceIdShape;
+
+    private Sampler sampler;
+    private String[] traceIds;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        sampler = new DeterministicTraceSampler(sampleRate);
+        final Random random = new Random(42);
+        traceIds = new String[TRACE_ID_COUNT];
+        for (int i = 0; i < TRACE_ID_COUNT; i++) {
+            traceIds[i] = traceIdShape.create(random);
+        }
+    }
+
+    @Benchmark
+    public SamplingResult shouldSample() {
+        final String traceId = traceIds[index++ & (TRACE_ID_COUNT - 1)];
+        return sampler.shouldSample(null, traceId, "span", Span.Kind.SERVER, Attributes.empty(),
+            Collections.emptyList());
+    }
+
+    public enum TraceIdShape {
+        /** 32 lowercase hex characters, as generated by OpenTelemetry. */
+        W3C {
+            @Override
+            String create(final Random random) {
+                return hex(random, 32);
+            }
+        },
+        /** A random UUID including dashes, as used by some beelines and load balancers. */
+        UUID {
+            @Override
+            String create(final Random random) {
+                return new java.util.UUID(random.nextLong(), random.nextLong()).toString();
+            }
+        },
+        /** An AWS X-Ray style root ID, e.g. {@code 1-5ababc0a-4df707925c1681932ea22a20}. */
+        AWS {
+            @Override
+            String create(final Random random) {
+                return "1-" + hex(random, 8) + "-" + hex(random, 24);
+            }
+        };
+
+        abstract String create(Random random);
+
+        private static String hex(final Random random, final int length) {
+            final StringBuilder builder = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                builder.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            return builder.toString();
+        }
+    }
+}
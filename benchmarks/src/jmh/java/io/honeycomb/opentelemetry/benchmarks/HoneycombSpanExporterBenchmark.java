@@ -0,0 +1,82 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.opentelemetry.exporters.BatchEncoding;
+import io.honeycomb.opentelemetry.exporters.HoneycombSpanExporter;
+import io.opentelemetry.common.AttributeType;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HoneycombSpanExporter#export}. When sending through libhoney the
+ * {@link io.honeycomb.libhoney.transport.Transport} is replaced by a no-op so that only span conversion is measured;
+ * the batch API path serializes and posts large batches to a local server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HoneycombSpanExporterBenchmark {
+
+    @Param({"1", "100"})
+    int spansPerExport;
+
+    @Param({"10"})
+    int spanAttributeCount;
+
+    @Param({"1", "30"})
+    int resourceAttributeCount;
+
+    @Param({"LIBHONEY", "JSON", "MSGPACK"})
+    String encoding;
+
+    private LocalBatchServer server;
+    private HoneycombSpanExporter exporter;
+    private List<SpanData> spans;
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        if ("LIBHONEY".equals(encoding)) {
+            exporter = HoneycombSpanExporter.newBuilder("benchmark")
+                .writeKey("key")
+                .dataSet("dataset")
+                .transport(new NoopTransport())
+                .build();
+        } else {
+            server = new LocalBatchServer();
+            exporter = HoneycombSpanExporter.newBuilder("benchmark")
+                .writeKey("key")
+                .dataSet("dataset")
+                .apiHost(server.apiHost())
+                .batchSize(1000)
+                .batchEncoding(BatchEncoding.valueOf(encoding))
+                .build();
+        }
+        spans = BenchmarkSpans.spans(BenchmarkSpans.resource(resourceAttributeCount), spansPerExport,
+            spanAttributeCount, AttributeType.STRING);
+    }
+
+    @TearDown
+    public void tearDown() {
+        exporter.shutdown();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public CompletableResultCode export() {
+        return exporter.export(spans);
+    }
+}
@@ -0,0 +1,75 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.opentelemetry.exporters.BatchEncoding;
+import io.honeycomb.opentelemetry.exporters.HoneycombSpanExporter;
+import io.honeycomb.opentelemetry.exporters.HoneycombSpanExporterBuilder;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures starting and ending spans from several threads with the span processor in front of a batch API exporter,
+ * either the SDK's {@link BatchSpanProcessor} or the exporter's own span processor. Batches are posted to a local
+ * server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class HoneycombSpanProcessorBenchmark {
+
+    @Param({"BATCH_SPAN_PROCESSOR", "HONEYCOMB_SPAN_PROCESSOR"})
+    String processor;
+
+    private LocalBatchServer server;
+    private TracerSdkProvider tracerProvider;
+    private Tracer tracer;
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        server = new LocalBatchServer();
+        final HoneycombSpanExporterBuilder builder = HoneycombSpanExporter.newBuilder("benchmark")
+            .writeKey("key")
+            .dataSet("dataset")
+            .apiHost(server.apiHost())
+            .batchSize(1000)
+            .batchEncoding(BatchEncoding.JSON);
+        tracerProvider = TracerSdkProvider.builder().build();
+        if ("BATCH_SPAN_PROCESSOR".equals(processor)) {
+            tracerProvider.addSpanProcessor(BatchSpanProcessor.newBuilder(builder.build())
+                .setMaxExportBatchSize(1000)
+                .build());
+        } else {
+            tracerProvider.addSpanProcessor(builder.buildSpanProcessor());
+        }
+        tracer = tracerProvider.get("benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracerProvider.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public Span startAndEndSpan() {
+        final Span span = tracer.spanBuilder("span").startSpan();
+        span.setAttribute("http.status_code", 200L);
+        span.end();
+        return span;
+    }
+}
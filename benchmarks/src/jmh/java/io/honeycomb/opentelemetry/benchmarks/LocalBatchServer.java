@@ -0,0 +1,52 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stand-in for the Honeycomb batch API that reads and accepts every batch, so that benchmarks of the batch
+ * API path do not depend on the network.
+ */
+final class LocalBatchServer implements AutoCloseable {
+    private static final byte[] ACCEPTED = "[]".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    LocalBatchServer() {
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/1/batch/", exchange -> {
+            final byte[] buffer = new byte[8192];
+            try (InputStream body = exchange.getRequestBody()) {
+                while (body.read(buffer) != -1) {
+                    // discard
+                }
+            }
+            exchange.sendResponseHeaders(200, ACCEPTED.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(ACCEPTED);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(2));
+        server.start();
+    }
+
+    String apiHost() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,28 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.responses.ResponseObservable;
+import io.honeycomb.libhoney.transport.Transport;
+
+/**
+ * A {@link Transport} that accepts and discards every event, so that exporter benchmarks measure span conversion
+ * rather than batching and HTTP.
+ */
+final class NoopTransport implements Transport {
+    private final ResponseObservable responseObservable = new ResponseObservable();
+
+    @Override
+    public boolean submit(final ResolvedEvent event) {
+        return true;
+    }
+
+    @Override
+    public ResponseObservable getResponseObservable() {
+        return responseObservable;
+    }
+
+    @Override
+    public void close() {
+        responseObservable.close();
+    }
+}
@@ -0,0 +1,77 @@
+package io.honeycomb.opentelemetry.benchmarks;
+
+import io.honeycomb.opentelemetry.samplers.RuleBasedSampler;
+import io.honeycomb.opentelemetry.samplers.SamplingRule;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.Span;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RuleBasedSampler#shouldSample} with 50 rules mixing exact, prefix and regular expression conditions
+ * on span name, kind and attributes, for spans that meet one of the last 20 rules or none at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleBasedSamplerBenchmark {
+    private static final int SPAN_COUNT = 1024;
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final AttributeKey<String> URL = AttributeKey.stringKey("http.url");
+
+    private Sampler sampler;
+    private String[] traceIds;
+    private String[] names;
+    private Span.Kind[] kinds;
+    private Attributes[] attributes;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        final List<SamplingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rules.add(SamplingRule.newBuilder(0).nameEquals("GET /health/" + i).build());
+            rules.add(SamplingRule.newBuilder(2).nameStartsWith("db." + i + ".").spanKinds(Span.Kind.CLIENT).build());
+            rules.add(SamplingRule.newBuilder(3).nameMatches("GET /api/v" + i + "/.*").build());
+            rules.add(SamplingRule.newBuilder(5).attributeMatches("http.url", ".*/orders/" + i + "\\d+").build());
+        }
+        for (int i = 0; i < 10; i++) {
+            rules.add(SamplingRule.newBuilder(1).attributeEquals("http.route", "/route/" + i).build());
+        }
+        sampler = new RuleBasedSampler(rules, 20);
+
+        final Random random = new Random(42);
+        traceIds = new String[SPAN_COUNT];
+        names = new String[SPAN_COUNT];
+        kinds = new Span.Kind[SPAN_COUNT];
+        attributes = new Attributes[SPAN_COUNT];
+        for (int i = 0; i < SPAN_COUNT; i++) {
+            traceIds[i] = new java.util.UUID(random.nextLong(), random.nextLong()).toString();
+            names[i] = "POST /endpoint/" + random.nextInt(16);
+            kinds[i] = random.nextBoolean() ? Span.Kind.SERVER : Span.Kind.CLIENT;
+            // one in eight spans is for an order, matching one of the regular expressions
+            attributes[i] = Attributes.of(ROUTE, "/route/" + random.nextInt(20),
+                URL, "https://example.com/" + (random.nextInt(8) == 0 ? "orders/" : "items/") + random.nextInt(1000));
+        }
+    }
+
+    @Benchmark
+    public SamplingResult shouldSample() {
+        final int i = index++ & (SPAN_COUNT - 1);
+        return sampler.shouldSample(null, traceIds[i], names[i], kinds[i], attributes[i], Collections.emptyList());
+    }
+}
@@ -2,11 +2,17 @@ package io.honeycomb.opentelemetry.exporters;
 
 public class AttributeNames {
 
-    public static final String TRACE_ID_FIELD       = "trace.trace_id";
-    public static final String SPAN_ID_FIELD        = "trace.span_id";
-    public static final String PARENT_ID_FIELD      = "trace.parent_id";
-    public static final String TYPE_FIELD           = "type";
-    public static final String SERVICE_NAME_FIELD   = "service_name";
-    public static final String SPAN_NAME_FIELD      = "name";
-    public static final String DURATION_FIELD       = "duration_ms";
+    public static final String TRACE_ID_FIELD        = "trace.trace_id";
+    public static final String SPAN_ID_FIELD         = "trace.span_id";
+    public static final String PARENT_ID_FIELD       = "trace.parent_id";
+    public static final String TYPE_FIELD            = "type";
+    public static final String SERVICE_NAME_FIELD    = "service_name";
+    public static final String SPAN_NAME_FIELD       = "name";
+    public static final String DURATION_FIELD        = "duration_ms";
+    public static final String ANNOTATION_TYPE_FIELD = "meta.annotation_type";
+    public static final String LINK_TRACE_ID_FIELD   = "trace.link.trace_id";
+    public static final String LINK_SPAN_ID_FIELD    = "trace.link.span_id";
+    public static final String STATUS_CODE_FIELD     = "status_code";
+    public static final String STATUS_MESSAGE_FIELD  = "status_message";
+    public static final String ERROR_FIELD           = "error";
 }
@@ -0,0 +1,34 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+
+/**
+ * A sealed batch request body, ready to be sent to the Honeycomb batch API, along with the result that tracks its
+ * delivery.
+ */
+final class Batch {
+    private final byte[] body;
+    private final int eventCount;
+    private final CompletableResultCode result;
+
+    Batch(final byte[] body, final int eventCount, final CompletableResultCode result) {
+        this.body = body;
+        this.eventCount = eventCount;
+        this.result = result;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the result that is completed once the batch has been acknowledged by the API or has failed.
+     */
+    CompletableResultCode getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,165 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import java.util.Arrays;
+
+/**
+ * Base class for encoders that serialize events straight into a reusable byte buffer holding a batch request body.
+ * Subclasses define the wire format; this class keeps track of the buffer, the events in the current batch and the
+ * boundary of the last complete event.
+ * <p>
+ * Instances are not thread-safe.
+ */
+abstract class BatchEncoder implements EventWriter {
+    static final int INITIAL_CAPACITY = 16 * 1024;
+
+    protected byte[] buffer;
+    protected int size;
+    private int eventCount;
+    private int eventStart;
+
+    protected BatchEncoder(final int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * @return the value of the {@code Content-Type} header for batch bodies produced by this encoder.
+     */
+    abstract String contentType();
+
+    /**
+     * Writes whatever precedes the first event of a batch.
+     */
+    protected abstract void startBatch();
+
+    /**
+     * Writes whatever follows the last event of a batch.
+     */
+    protected abstract void endBatch();
+
+    /**
+     * Discards the current batch and starts a new one.
+     */
+    final void reset() {
+        size = 0;
+        eventCount = 0;
+        startBatch();
+        eventStart = size;
+    }
+
+    /**
+     * @return the number of complete events in the current batch.
+     */
+    final int eventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the number of bytes the current batch occupies.
+     */
+    final int size() {
+        return size;
+    }
+
+    /**
+     * Completes the current batch and returns a copy of its body, then starts a new batch.
+     *
+     * @return the batch request body.
+     */
+    final byte[] finish() {
+        endBatch();
+        final byte[] body = Arrays.copyOf(buffer, size);
+        reset();
+        return body;
+    }
+
+    /**
+     * Drops anything written since the last complete event, e.g. because converting a span failed half way through.
+     */
+    final void discardEvent() {
+        size = eventStart;
+    }
+
+    /**
+     * Marks the end of a complete event, to be called by subclasses from {@link #endEvent()}.
+     */
+    protected final void eventCompleted() {
+        eventCount++;
+        eventStart = size;
+    }
+
+    protected final void writeByte(final int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    protected final void writeBytes(final byte[] bytes, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    protected final void ensureCapacity(final int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    /**
+     * Writes the string as UTF-8 without any escaping. Unpaired surrogates are replaced with {@code '?'}, in the same
+     * way as {@link String#getBytes(java.nio.charset.Charset)}.
+     */
+    protected final void writeUtf8(final String value) {
+        final int length = value.length();
+        ensureCapacity(length * 3);
+        final byte[] buffer = this.buffer;
+        int position = size;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        size = position;
+    }
+
+    /**
+     * @return the number of bytes {@link #writeUtf8(String)} writes for the given string.
+     */
+    protected static int utf8Length(final String value) {
+        final int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // 4 bytes for 2 chars
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+}
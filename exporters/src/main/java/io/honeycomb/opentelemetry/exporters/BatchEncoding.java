@@ -0,0 +1,17 @@
+package io.honeycomb.opentelemetry.exporters;
+
+/**
+ * Wire formats for sending spans straight to the Honeycomb batch API, see
+ * {@link HoneycombSpanExporterBuilder#batchEncoding(BatchEncoding)}.
+ */
+public enum BatchEncoding {
+    /**
+     * JSON request bodies ({@code application/json}).
+     */
+    JSON,
+
+    /**
+     * MessagePack request bodies ({@code application/msgpack}), which are smaller and cheaper to produce than JSON.
+     */
+    MSGPACK
+}
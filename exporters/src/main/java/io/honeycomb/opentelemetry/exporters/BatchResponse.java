@@ -0,0 +1,65 @@
+package io.honeycomb.opentelemetry.exporters;
+
+/**
+ * The outcome of a batch request that reached the Honeycomb API.
+ */
+final class BatchResponse {
+    private final int statusCode;
+    private final int rejectedEvents;
+    private final long retryAfterMillis;
+
+    BatchResponse(final int statusCode, final int rejectedEvents) {
+        this(statusCode, rejectedEvents, -1);
+    }
+
+    /**
+     * @param retryAfterMillis the delay requested by a {@code Retry-After} header, or -1 if there was none.
+     */
+    BatchResponse(final int statusCode, final int rejectedEvents, final long retryAfterMillis) {
+        this.statusCode = statusCode;
+        this.rejectedEvents = rejectedEvents;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the HTTP status code of the batch request.
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the number of events in an accepted batch that were individually rejected by the API.
+     */
+    int getRejectedEvents() {
+        return rejectedEvents;
+    }
+
+    /**
+     * @return how long the API asked clients to wait before sending again, or -1 if it did not say.
+     */
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * @return true if the batch was accepted and none of its events were rejected.
+     */
+    boolean isSuccess() {
+        return statusCode == 200 && rejectedEvents == 0;
+    }
+
+    /**
+     * @return true if the API could not handle the batch at the moment, i.e. it was throttled or failed on the
+     * server side, and sending it again later may succeed.
+     */
+    boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResponse{statusCode=" + statusCode + ", rejectedEvents=" + rejectedEvents
+            + ", retryAfterMillis=" + retryAfterMillis + '}';
+    }
+}
@@ -0,0 +1,44 @@
+package io.honeycomb.opentelemetry.exporters;
+
+/**
+ * Sends sealed batches to Honeycomb asynchronously.
+ */
+interface BatchSender {
+
+    /**
+     * Sends the batch, invoking the callback once it has completed or failed. Implementations may block the calling
+     * thread when too many requests are pending, but never wait for the request itself to complete.
+     *
+     * @param batch    to send.
+     * @param callback notified of the outcome.
+     */
+    void send(Batch batch, Callback callback);
+
+    /**
+     * Sends the batch like {@link #send(Batch, Callback)} if that is possible without blocking, i.e. the limit of
+     * pending requests has not been reached.
+     *
+     * @param batch    to send.
+     * @param callback notified of the outcome if the batch is sent.
+     * @return false if the batch was not sent and the callback will not be invoked.
+     */
+    boolean offer(Batch batch, Callback callback);
+
+    /**
+     * Waits for pending requests to complete (up to an implementation defined limit) and releases all resources.
+     */
+    void close();
+
+    interface Callback {
+
+        /**
+         * The request reached the Honeycomb API, which responded as described.
+         */
+        void onResponse(Batch batch, BatchResponse response);
+
+        /**
+         * The request could not be completed, e.g. because the connection was refused or timed out.
+         */
+        void onFailure(Batch batch, Exception cause);
+    }
+}
@@ -0,0 +1,258 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.honeycomb.opentelemetry.exporters.ResultCodes.completeWith;
+
+/**
+ * Serializes spans straight into batch request bodies and hands complete batches to a {@link BatchSender}, without
+ * creating libhoney events.
+ * <p>
+ * A batch is sent once it holds {@code batchSize} events or approaches the size limit of the batch API, and
+ * partially filled batches are sent every {@code batchTimeoutMillis} by a background thread. The thresholds are checked
+ * after every event rather than every span, so that spans with many span events are streamed across batches. Batches
+ * are tracked until the API has acknowledged them or they have failed, so that {@link #export(Collection)} and
+ * {@link #flush()} can report when the spans they cover have been delivered.
+ */
+final class BatchingSpanSink implements SpanSink {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingSpanSink.class);
+
+    /**
+     * The batch API accepts bodies of up to 5MB, leave room for the event that crosses this threshold.
+     */
+    static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+    private final SpanConverter converter;
+    private final BatchEncoder encoder;
+    private final BatchSender sender;
+    private final int batchSize;
+    private final ScheduledExecutorService timer;
+    private final Set<Batch> inFlight = ConcurrentHashMap.newKeySet();
+    private final BatchSender.Callback callback = new TrackingCallback();
+    private CompletableResultCode openBatchResult = new CompletableResultCode();
+    private boolean shutdown;
+
+    /**
+     * @param converter          converts spans to events.
+     * @param encoder            the encoder to serialize events with, owned by this sink.
+     * @param sender             sends complete batches, owned by this sink.
+     * @param batchSize          maximum number of events per batch.
+     * @param batchTimeoutMillis maximum time a partially filled batch waits before it is sent.
+     */
+    BatchingSpanSink(final SpanConverter converter, final BatchEncoder encoder, final BatchSender sender,
+                     final int batchSize, final long batchTimeoutMillis) {
+        this.converter = converter;
+        this.encoder = encoder;
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-batch-timer-%d").setDaemon(true).build());
+        this.timer.scheduleWithFixedDelay(this::sendPending, batchTimeoutMillis, batchTimeoutMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the spans to the current batch, sending batches as they fill up. The result completes once every batch
+     * holding one of the spans has been acknowledged or has failed, and fails if any of them failed or if a span
+     * could not be converted. Events that were completed before a span failed to convert are still sent.
+     */
+    @Override
+    public CompletableResultCode export(final Collection<SpanData> spans) {
+        final List<CompletableResultCode> results = new ArrayList<>(1);
+        synchronized (this) {
+            if (shutdown) {
+                return CompletableResultCode.ofFailure();
+            }
+            final EventWriter writer = new BatchWriter(results);
+            for (SpanData span : spans) {
+                try {
+                    converter.write(span, writer);
+                } catch (final RuntimeException e) {
+                    encoder.discardEvent();
+                    LOG.warn("Failed to convert span {}", span.getSpanId(), e);
+                    results.add(CompletableResultCode.ofFailure());
+                }
+            }
+        }
+        if (results.isEmpty()) {
+            return CompletableResultCode.ofSuccess();
+        }
+        final CompletableResultCode result = new CompletableResultCode();
+        completeWith(result, results.size() == 1 ? results.get(0) : CompletableResultCode.ofAll(results));
+        return result;
+    }
+
+    /**
+     * Sends the partially filled batch, if any, and returns a result that completes once every batch sent so far has
+     * been acknowledged or has failed. The result fails if any of these batches failed.
+     * <p>
+     * Sending may have to wait for pending requests to complete, so it is done on the background thread rather than
+     * blocking the caller.
+     */
+    @Override
+    public CompletableResultCode flush() {
+        final CompletableResultCode result = new CompletableResultCode();
+        try {
+            timer.execute(() -> {
+                sendPending();
+                completeWith(result, inFlightResult());
+            });
+        } catch (final RejectedExecutionException e) {
+            // already shut down, which sent the last batch
+            return inFlightResult();
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return CompletableResultCode.ofSuccess();
+            }
+            shutdown = true;
+            sendBatch();
+        }
+        // lets pending flushes run, but cancels the periodic task
+        timer.shutdown();
+        final CompletableResultCode result = inFlightResult();
+        sender.close();
+        return result;
+    }
+
+    private synchronized void sendPending() {
+        sendBatch();
+    }
+
+    private void sendBatch() {
+        final int eventCount = encoder.eventCount();
+        if (eventCount == 0) {
+            return;
+        }
+        final Batch batch = new Batch(encoder.finish(), eventCount, openBatchResult);
+        openBatchResult = new CompletableResultCode();
+        inFlight.add(batch);
+        sender.send(batch, callback);
+    }
+
+    @Override
+    public int pendingBatches() {
+        return inFlight.size();
+    }
+
+    private CompletableResultCode inFlightResult() {
+        final List<CompletableResultCode> results = new ArrayList<>(inFlight.size());
+        for (Batch batch : inFlight) {
+            results.add(batch.getResult());
+        }
+        return results.isEmpty() ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofAll(results);
+    }
+
+    /**
+     * Writes events to the encoder, noting the batches they end up in and sending batches as soon as they are full.
+     * Only used while holding the sink's lock.
+     */
+    private final class BatchWriter implements EventWriter {
+        private final List<CompletableResultCode> results;
+
+        private BatchWriter(final List<CompletableResultCode> results) {
+            this.results = results;
+        }
+
+        @Override
+        public void beginEvent(final long timestampNanos) {
+            encoder.beginEvent(timestampNanos);
+        }
+
+        @Override
+        public void addField(final String name, final String value) {
+            encoder.addField(name, value);
+        }
+
+        @Override
+        public void addField(final String name, final long value) {
+            encoder.addField(name, value);
+        }
+
+        @Override
+        public void addField(final String name, final double value) {
+            encoder.addField(name, value);
+        }
+
+        @Override
+        public void addDurationField(final String name, final long durationNanos) {
+            encoder.addDurationField(name, durationNanos);
+        }
+
+        @Override
+        public void addField(final String name, final boolean value) {
+            encoder.addField(name, value);
+        }
+
+        @Override
+        public void addField(final String name, final Object value) {
+            encoder.addField(name, value);
+        }
+
+        @Override
+        public void addField(final String name, final List<?> values, final int maxElements) {
+            encoder.addField(name, values, maxElements);
+        }
+
+        @Override
+        public void setSampleRate(final long sampleRate) {
+            encoder.setSampleRate(sampleRate);
+        }
+
+        @Override
+        public void addFields(final ResourceFields fields) {
+            encoder.addFields(fields);
+        }
+
+        @Override
+        public void endEvent() {
+            encoder.endEvent();
+            if (results.isEmpty() || results.get(results.size() - 1) != openBatchResult) {
+                results.add(openBatchResult);
+            }
+            if (encoder.eventCount() >= batchSize || encoder.size() >= MAX_BATCH_BYTES) {
+                sendBatch();
+            }
+        }
+    }
+
+    private final class TrackingCallback implements BatchSender.Callback {
+        @Override
+        public void onResponse(final Batch batch, final BatchResponse response) {
+            if (response.isSuccess()) {
+                batch.getResult().succeed();
+            } else {
+                LOG.warn("Batch of {} events was not fully accepted: {}", batch.getEventCount(), response);
+                batch.getResult().fail();
+            }
+            // completed before removal, so that a concurrent flush never misses a pending batch
+            inFlight.remove(batch);
+        }
+
+        @Override
+        public void onFailure(final Batch batch, final Exception cause) {
+            LOG.warn("Failed to send batch of {} events", batch.getEventCount(), cause);
+            batch.getResult().fail();
+            inFlight.remove(batch);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A size-capped log of batch request bodies on local disk, made up of fixed size memory-mapped segment files.
+ * Batches are appended at the tail and read back in the same order from the head, across process restarts.
+ * <p>
+ * Each segment starts with a magic number followed by records of the form
+ * {@code [int length][int eventCount][int crc32][body]}. The length is written last, so a record only becomes
+ * visible once it is complete, and the checksum detects records that were torn by a crash. A consumed record has its
+ * length negated, and segments are deleted once all of their records have been consumed. New segments are
+ * initialized under a temporary name and then renamed, so a crash during rotation never leaves a partial segment
+ * behind.
+ * <p>
+ * Writes survive a crash of the process as soon as they have been made, since they go to the page cache; they are
+ * forced to the storage device when a segment is completed and when the spool is closed.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class DiskSpool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(DiskSpool.class);
+    private static final int MAGIC = 0x484e5953; // "HNYS"
+    private static final int SEGMENT_HEADER = 4;
+    private static final int RECORD_HEADER = 12;
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+
+    /**
+     * Opens the spool in the given directory, recovering any batches left behind by a previous process.
+     *
+     * @param directory    to keep the segment files in, created if it does not exist.
+     * @param maxBytes     maximum disk space taken up by segment files.
+     * @param segmentBytes size of each segment file, which is also the upper bound for the size of a batch.
+     * @throws IOException if the directory or its segments cannot be accessed.
+     */
+    DiskSpool(final Path directory, final long maxBytes, final int segmentBytes) throws IOException {
+        if (segmentBytes <= SEGMENT_HEADER + RECORD_HEADER || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("The spool must fit at least one segment of a usable size");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes);
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Appends a batch at the tail of the spool.
+     *
+     * @return false if the batch does not fit, because the spool is full or the batch is larger than a segment.
+     */
+    synchronized boolean append(final byte[] body, final int eventCount) {
+        final int recordBytes = RECORD_HEADER + body.length;
+        if (SEGMENT_HEADER + recordBytes > segmentBytes) {
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePosition + recordBytes > segmentBytes) {
+            // reclaims consumed segments first, including the tail once it has been drained
+            head();
+            if (tail != null && !tail.hasRecord()) {
+                segments.removeLast();
+                tail.delete();
+                tail = null;
+            }
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            if (tail != null) {
+                tail.buffer.force();
+            }
+            try {
+                tail = createSegment(nextSequence++);
+            } catch (final IOException e) {
+                LOG.warn("Failed to create spool segment in {}", directory, e);
+                return false;
+            }
+            segments.addLast(tail);
+        }
+        tail.append(body, eventCount);
+        return true;
+    }
+
+    /**
+     * @return the batch at the head of the spool without removing it, or null if the spool is empty.
+     */
+    synchronized Record peek() {
+        final Segment head = head();
+        return head == null ? null : head.read(head.readPosition);
+    }
+
+    /**
+     * @param maxRecords the maximum number of batches to return.
+     * @return up to the given number of batches from the head of the spool, in order, without removing them.
+     */
+    synchronized List<Record> peek(final int maxRecords) {
+        final List<Record> records = new ArrayList<>();
+        head();
+        for (Segment segment : segments) {
+            int position = segment.readPosition;
+            while (position < segment.writePosition && records.size() < maxRecords) {
+                final Record record = segment.read(position);
+                records.add(record);
+                position += RECORD_HEADER + record.body.length;
+            }
+            if (records.size() == maxRecords) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Removes the batch at the head of the spool, e.g. once it has been delivered.
+     */
+    synchronized void remove() {
+        final Segment head = head();
+        if (head != null) {
+            head.consume();
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return head() == null;
+    }
+
+    /**
+     * @return the number of bytes taken up by segment files.
+     */
+    synchronized long sizeBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    /**
+     * Returns the first segment holding a record that has not been consumed, deleting fully consumed segments along
+     * the way. The tail segment is never deleted since it is still being written to.
+     */
+    private Segment head() {
+        Segment head = segments.peekFirst();
+        while (head != null && !head.hasRecord()) {
+            if (head == segments.peekLast()) {
+                return null;
+            }
+            segments.removeFirst();
+            head.delete();
+            head = segments.peekFirst();
+        }
+        return head;
+    }
+
+    private void recover() throws IOException {
+        final List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+                    // left behind by a crash during rotation
+                    delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        sequences.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (final NumberFormatException e) {
+                        LOG.warn("Ignoring unexpected file {} in spool directory", file);
+                    }
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (long sequence : sequences) {
+            final Path path = segmentPath(sequence);
+            final Segment segment = openSegment(path);
+            if (segment == null) {
+                LOG.warn("Deleting unreadable spool segment {}", path);
+                delete(path);
+            } else {
+                segments.addLast(segment);
+            }
+            nextSequence = sequence + 1;
+        }
+    }
+
+    private Segment createSegment(final long sequence) throws IOException {
+        final Path path = segmentPath(sequence);
+        final Path temp = directory.resolve(SEGMENT_PREFIX + sequence + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return openSegment(path);
+    }
+
+    private Segment openSegment(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != segmentBytes) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            if (buffer.getInt(0) != MAGIC) {
+                unmap(buffer);
+                return null;
+            }
+            return new Segment(path, buffer);
+        }
+    }
+
+    private Path segmentPath(final long sequence) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            LOG.warn("Failed to delete spool file {}", path, e);
+        }
+    }
+
+    /**
+     * Releases the mapping of a segment right away rather than once the buffer is garbage collected, so that the disk
+     * space of a deleted segment is freed. The buffer must not be used afterwards. Falls back to waiting for the
+     * garbage collector if the JVM offers no way to do this.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // not available, try the Java 8 way below
+        }
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to unmap spool segment, its space is freed once it is garbage collected", e);
+        }
+    }
+
+    private static int checksum(final byte[] body) {
+        final CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A batch read from the spool.
+     */
+    static final class Record {
+        private final byte[] body;
+        private final int eventCount;
+
+        private Record(final byte[] body, final int eventCount) {
+            this.body = body;
+            this.eventCount = eventCount;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        int getEventCount() {
+            return eventCount;
+        }
+    }
+
+    private final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int readPosition = SEGMENT_HEADER;
+        private int writePosition = SEGMENT_HEADER;
+
+        /**
+         * Scans the records of an existing segment to find the first unconsumed record and the end of the valid
+         * records, discarding anything after a torn record.
+         */
+        private Segment(final Path path, final MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+            boolean consumed = true;
+            int position = SEGMENT_HEADER;
+            while (position + RECORD_HEADER <= segmentBytes) {
+                final int length = buffer.getInt(position);
+                final int bodyLength = Math.abs(length);
+                if (length == 0 || length == Integer.MIN_VALUE || position + RECORD_HEADER + bodyLength > segmentBytes
+                    || (length > 0 && checksum(body(position, bodyLength)) != buffer.getInt(position + 8))) {
+                    break;
+                }
+                if (length < 0 && consumed) {
+                    readPosition = position + RECORD_HEADER + bodyLength;
+                } else {
+                    consumed = false;
+                }
+                position += RECORD_HEADER + bodyLength;
+            }
+            writePosition = position;
+            if (position + 4 <= segmentBytes && buffer.getInt(position) != 0) {
+                LOG.warn("Discarding torn record at offset {} of spool segment {}", position, path);
+                buffer.putInt(position, 0);
+            }
+        }
+
+        private void append(final byte[] body, final int eventCount) {
+            final int position = writePosition;
+            buffer.putInt(position + 4, eventCount);
+            buffer.putInt(position + 8, checksum(body));
+            final ByteBuffer target = buffer.duplicate();
+            target.position(position + RECORD_HEADER);
+            target.put(body);
+            if (position + RECORD_HEADER + body.length + 4 <= segmentBytes) {
+                // terminates the log in case a previous process left garbage behind
+                buffer.putInt(position + RECORD_HEADER + body.length, 0);
+            }
+            // publishes the record
+            buffer.putInt(position, body.length);
+            writePosition = position + RECORD_HEADER + body.length;
+        }
+
+        /**
+         * Unmaps and deletes the segment file. The segment must not be used afterwards.
+         */
+        private void delete() {
+            unmap(buffer);
+            DiskSpool.delete(path);
+        }
+
+        private boolean hasRecord() {
+            return readPosition < writePosition;
+        }
+
+        private Record read(final int position) {
+            final int length = buffer.getInt(position);
+            return new Record(body(position, length), buffer.getInt(position + 4));
+        }
+
+        private void consume() {
+            final int length = buffer.getInt(readPosition);
+            buffer.putInt(readPosition, -length);
+            readPosition += RECORD_HEADER + length;
+        }
+
+        private byte[] body(final int position, final int length) {
+            final byte[] body = new byte[length];
+            final ByteBuffer source = buffer.duplicate();
+            source.position(position + RECORD_HEADER);
+            source.get(body);
+            return body;
+        }
+    }
+}
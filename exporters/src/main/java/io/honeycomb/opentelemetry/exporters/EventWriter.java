@@ -0,0 +1,65 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import java.util.List;
+
+/**
+ * Receives the fields of Honeycomb events as they are produced from spans.
+ * <p>
+ * Implementations either build libhoney {@link io.honeycomb.libhoney.Event}s or serialize the fields straight into
+ * a batch request body, which lets the span conversion be written once for both export paths. Typed methods are
+ * provided for primitive values so that streaming implementations do not need to box them.
+ * <p>
+ * Calls for a single event are always bracketed by {@link #beginEvent(long)} and {@link #endEvent()}.
+ */
+interface EventWriter {
+
+    /**
+     * Starts a new event.
+     *
+     * @param timestampNanos the event's timestamp in nanoseconds since the epoch.
+     */
+    void beginEvent(long timestampNanos);
+
+    void addField(String name, String value);
+
+    void addField(String name, long value);
+
+    void addField(String name, double value);
+
+    void addField(String name, boolean value);
+
+    /**
+     * Adds a duration as fractional milliseconds, e.g. {@code 0.25} for 250 microseconds. Streaming implementations
+     * write the exact decimal without going through a {@code double}'s string form.
+     *
+     * @param durationNanos the duration in nanoseconds.
+     */
+    void addDurationField(String name, long durationNanos);
+
+    /**
+     * Adds a field whose type is only known at runtime, such as a global field. Strings, numbers and booleans are
+     * written as such, any other value is written as its {@code toString()} representation.
+     */
+    void addField(String name, Object value);
+
+    /**
+     * Adds an array field holding the first {@code maxElements} of the given values, which are strings, numbers or
+     * booleans as for {@link #addField(String, Object)}.
+     */
+    void addField(String name, List<?> values, int maxElements);
+
+    /**
+     * Sets the sample rate of the current event, i.e. the number of events it stands for. Defaults to 1.
+     */
+    void setSampleRate(long sampleRate);
+
+    /**
+     * Adds all fields of a precomputed field set.
+     */
+    void addFields(ResourceFields fields);
+
+    /**
+     * Completes the current event.
+     */
+    void endEvent();
+}
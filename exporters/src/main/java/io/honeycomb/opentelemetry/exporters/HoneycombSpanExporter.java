@@ -1,23 +1,18 @@
 package io.honeycomb.opentelemetry.exporters;
 
-import io.honeycomb.libhoney.Event;
 import io.honeycomb.libhoney.HoneyClient;
-import io.opentelemetry.common.AttributeConsumer;
-import io.opentelemetry.common.AttributeKey;
+import io.honeycomb.libhoney.TransportOptions;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
-import io.opentelemetry.trace.SpanId;
 
 import java.util.Collection;
-import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 public class HoneycombSpanExporter implements SpanExporter {
 
-    private final HoneyClient client;
-    private final String serviceName;
+    private final SpanSink sink;
 
     public HoneycombSpanExporter(final HoneyClient client, final String serviceName) {
         if (client == null) {
@@ -26,93 +21,42 @@ public class HoneycombSpanExporter implements SpanExporter {
         if (isNullOrEmpty(serviceName)) {
             throw new IllegalArgumentException();
         }
-        this.client = client;
-        this.serviceName = serviceName;
+        this.sink = new LibhoneySpanSink(client, new SpanConverter(serviceName), TransportOptions.DEFAULT_BATCH_SIZE);
+    }
+
+    HoneycombSpanExporter(final SpanSink sink) {
+        this.sink = sink;
     }
 
     @Override
     public CompletableResultCode export(final Collection<SpanData> openTelemetrySpans) {
-        for (SpanData span : openTelemetrySpans) {
-            createHoneycombEvent(client, serviceName, span).sendPresampled();
-        }
-        return CompletableResultCode.ofSuccess();
+        return sink.export(openTelemetrySpans);
     }
 
     @Override
     public CompletableResultCode flush() {
-        return CompletableResultCode.ofSuccess();
+        return sink.flush();
     }
 
     @Override
     public CompletableResultCode shutdown() {
-        client.close();
-        return CompletableResultCode.ofSuccess();
+        return sink.shutdown();
     }
 
-    private static Event createHoneycombEvent(final HoneyClient client, final String serviceName, final SpanData span) {
-        long start = TimeUnit.NANOSECONDS.toMillis(span.getStartEpochNanos());
-        long duration = TimeUnit.NANOSECONDS.toMillis(Math.max(1, span.getEndEpochNanos() - span.getStartEpochNanos()));
-
-        final Event event = client.createEvent()
-            .setTimestamp(start)
-            .addField(AttributeNames.SERVICE_NAME_FIELD, serviceName)
-            .addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId())
-            .addField(AttributeNames.SPAN_ID_FIELD, span.getSpanId())
-            .addField(AttributeNames.DURATION_FIELD, duration);
-
-        if (span.getName() != null && !span.getName().isEmpty()) {
-            event.addField(AttributeNames.SPAN_NAME_FIELD, span.getName());
-        }
-        if (SpanId.isValid(span.getParentSpanId())) {
-            event.addField(AttributeNames.PARENT_ID_FIELD, span.getParentSpanId());
-        }
-        if (span.getKind() != null) {
-            event.addField(AttributeNames.TYPE_FIELD, span.getKind().name());
-        }
-
-        // span attributes
-        span.getAttributes().forEach(
-            new AttributeConsumer() {
-                @Override
-                public <T> void consume(AttributeKey<T> key, T value) {
-                    addAttributeAsField(event, key, value);
-                }
-            }
-        );
-
-        // resource attributes
-        if (span.getResource() != null) {
-            span.getResource().getAttributes().forEach(
-                new AttributeConsumer() {
-                    @Override
-                    public <T> void consume(AttributeKey<T> key, T value) {
-                        addAttributeAsField(event, key, value);
-                    }
-                }
-            );
-        }
-
-        return event;
-    }
-
-    private static <T> void addAttributeAsField(final Event event, final AttributeKey<T> key, final T value) {
-        switch(key.getType()) {
-            case STRING:
-                event.addField(key.getKey(), (String) value);
-                break;
-            case LONG:
-                event.addField(key.getKey(), (long) value);
-                break;
-            case BOOLEAN:
-                event.addField(key.getKey(), (boolean) value);
-                break;
-            case DOUBLE:
-                event.addField(key.getKey(), (double) value);
-                break;
-            default:
-                // ignore
-                break;
-        }
+    /**
+     * The number of batch requests that this exporter has sent to the batch API, or holds for a retry, and that have
+     * not completed yet. Together with {@link HoneycombSpanExporterBuilder#maxPendingBatchRequests(int)} this tells
+     * how far delivery is falling behind, e.g. to sample more aggressively while it does.
+     * <p>
+     * When sending through libhoney, this is the number of batches filled by the events that libhoney has queued or
+     * is sending and has not reported a response for yet. libhoney rejects events once its queue holds
+     * {@link HoneycombSpanExporterBuilder#queueCapacity(int)} events, i.e. at the queue capacity divided by the batch
+     * size in batches.
+     *
+     * @return the number of pending batch requests.
+     */
+    public int getPendingBatches() {
+        return sink.pendingBatches();
     }
 
     public static HoneycombSpanExporterBuilder newBuilder(String serviceName) {
@@ -1,32 +1,113 @@
 package io.honeycomb.opentelemetry.exporters;
 
+import com.google.common.hash.Hashing;
 import io.honeycomb.libhoney.Event;
 import io.honeycomb.libhoney.EventFactory;
 import io.honeycomb.libhoney.EventPostProcessor;
 import io.honeycomb.libhoney.HoneyClient;
 import io.honeycomb.libhoney.LibHoney;
+import io.honeycomb.libhoney.Options;
 import io.honeycomb.libhoney.ResponseObserver;
+import io.honeycomb.libhoney.TransportOptions;
 import io.honeycomb.libhoney.ValueSupplier;
 import io.honeycomb.libhoney.builders.HoneyClientBuilder;
 import io.honeycomb.libhoney.responses.ClientRejected.RejectionReason;
 import io.honeycomb.libhoney.transport.Transport;
 import io.honeycomb.libhoney.transport.batch.impl.HoneycombBatchConsumer;
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.trace.Span;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 
 import javax.net.ssl.SSLContext;
 import java.net.URI;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 public class HoneycombSpanExporterBuilder {
+    private static final String USER_AGENT = "honeycomb-opentelemetry-java";
+    private static final long DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS = 100;
+    private static final long DEFAULT_RETRY_MAX_BACKOFF_MILLIS = 10_000;
+    private static final long DEFAULT_RETRY_BUFFER_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_SPOOL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final long SPOOL_INITIAL_BACKOFF_MILLIS = 250;
+    private static final long SPOOL_MAX_BACKOFF_MILLIS = 30_000;
+    private static final int DEFAULT_SPAN_PROCESSOR_QUEUE_CAPACITY = 2048;
+    private static final long DEFAULT_TAIL_SAMPLING_MAX_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_TAIL_SAMPLING_DECISION_WAIT_MILLIS = 10_000;
 
     protected HoneyClientBuilder clientBuilder = new HoneyClientBuilder();
     protected final String serviceName;
 
+    // mirrored configuration, used when spans are sent to the batch API directly rather than through libhoney
+    private BatchEncoding batchEncoding;
+    private final Map<String, Object> globalFields = new LinkedHashMap<>();
+    private String writeKey;
+    private String dataSet;
+    private URI apiHost = Options.DEFAULT_API_HOST;
+    private int batchSize = TransportOptions.DEFAULT_BATCH_SIZE;
+    private long batchTimeoutMillis = TransportOptions.DEFAULT_BATCH_TIMEOUT;
+    private int maxPendingBatchRequests = TransportOptions.DEFAULT_MAX_PENDING_BATCH_REQUESTS;
+    private int maxConnections = TransportOptions.DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerApiHost = TransportOptions.DEFAULT_MAX_CONNECTIONS_PER_API_HOST;
+    private int connectTimeout = TransportOptions.DEFAULT_CONNECT_TIMEOUT;
+    private int connectionRequestTimeout = TransportOptions.DEFAULT_CONNECTION_REQUEST_TIMEOUT;
+    private int socketTimeout = TransportOptions.DEFAULT_SOCKET_TIMEOUT;
+    private int bufferSize = TransportOptions.DEFAULT_BUFFER_SIZE;
+    private int ioThreadCount = TransportOptions.DEFAULT_IO_THREAD_COUNT;
+    private long maximumHttpRequestShutdownWait = TransportOptions.DEFAULT_MAX_HTTP_REQUEST_SHUTDOWN_WAIT;
+    private String additionalUserAgent = TransportOptions.DEFAULT_ADDITIONAL_USER_AGENT;
+    private HttpHost proxy;
+    private UsernamePasswordCredentials proxyCredentials;
+    private SSLContext sslContext;
+    private int maxLinksPerSpan = SpanConverter.DEFAULT_MAX_LINKS_PER_SPAN;
+    private int maxArrayElements = SpanConverter.DEFAULT_MAX_ARRAY_ELEMENTS;
+    private int maxRetryAttempts = 1;
+    private long retryInitialBackoffMillis = DEFAULT_RETRY_INITIAL_BACKOFF_MILLIS;
+    private long retryMaxBackoffMillis = DEFAULT_RETRY_MAX_BACKOFF_MILLIS;
+    private long retryBufferBytes = DEFAULT_RETRY_BUFFER_BYTES;
+    private Path spoolDirectory;
+    private long spoolMaxBytes;
+    private final List<RouteSpec> routes = new ArrayList<>();
+    private int spanProcessorQueueCapacity = DEFAULT_SPAN_PROCESSOR_QUEUE_CAPACITY;
+    private WaitStrategy spanProcessorWaitStrategy = WaitStrategy.BLOCKING;
+    private boolean tailSampling;
+    private final List<TailSampler.Rule> tailSamplingRules = new ArrayList<>();
+    private int tailSampleRate = 1;
+    private long tailSamplingMaxBytes = DEFAULT_TAIL_SAMPLING_MAX_BYTES;
+    private long tailSamplingDecisionWaitMillis = DEFAULT_TAIL_SAMPLING_DECISION_WAIT_MILLIS;
+    // libhoney-only configuration, tracked to reject it when sending to the batch API
+    private boolean globalDynamicFields;
+    private boolean responseObservers;
+    private boolean eventPostProcessor;
+    private boolean customTransport;
+
     /**
      * Creates a new HoneycombSpanExporterBuilder that can be used to create an instance of HoneycombSpanExporter.
      *
-     * @param serviceName the service name.
+     * @param serviceName the service name, used for spans whose resource has no {@code service.name} attribute.
      */
     public HoneycombSpanExporterBuilder(String serviceName) {
         if (isNullOrEmpty(serviceName)) {
@@ -49,8 +130,533 @@ public class HoneycombSpanExporterBuilder {
      * @return new HoneycombSpanExporter instance
      */
     public HoneycombSpanExporter build() {
-        final HoneyClient client = clientBuilder.build();
-        return new HoneycombSpanExporter(client, serviceName);
+        return new HoneycombSpanExporter(buildSink());
+    }
+
+    /**
+     * Build a new span processor that exports spans as configured by calling the various builder methods previous to
+     * this call. Register it with the tracer provider in place of a {@code BatchSpanProcessor} and an exporter:
+     * <pre>{@code
+     * OpenTelemetrySdk.getTracerProvider().addSpanProcessor(
+     *     HoneycombSpanExporter.newBuilder("my-service")
+     *         .batchEncoding(BatchEncoding.JSON)
+     *         .dataSet("dataset")
+     *         .writeKey("write key")
+     *         .buildSpanProcessor())}</pre>
+     * <p>
+     * Ended spans are written into the exporter's batches by a single background thread, rather than being batched by
+     * the span processor first, see {@link HoneycombSpanProcessor}. Shutting the processor down shuts the exporter
+     * down.
+     *
+     * @return new HoneycombSpanProcessor instance
+     * @see #spanProcessorQueueCapacity(int)
+     * @see #spanProcessorWaitStrategy(WaitStrategy)
+     */
+    public HoneycombSpanProcessor buildSpanProcessor() {
+        return new HoneycombSpanProcessor(buildSink(), spanProcessorQueueCapacity, spanProcessorWaitStrategy);
+    }
+
+    private SpanSink buildSink() {
+        Assert.state(spoolDirectory == null || batchEncoding != null,
+            "A spool can only be used when sending to the batch API, see batchEncoding");
+        Assert.state(maxRetryAttempts == 1 || batchEncoding != null,
+            "Retries can only be used when sending to the batch API, see batchEncoding");
+        Assert.state(routes.isEmpty() || batchEncoding != null,
+            "Routes can only be used when sending to the batch API, see batchEncoding");
+        Assert.state(!globalDynamicFields || batchEncoding == null,
+            "Dynamic global fields can only be used when sending through libhoney, see batchEncoding");
+        Assert.state(!responseObservers || batchEncoding == null,
+            "Response observers can only be used when sending through libhoney, see batchEncoding");
+        Assert.state(!eventPostProcessor || batchEncoding == null,
+            "An event post processor can only be used when sending through libhoney, see batchEncoding");
+        Assert.state(!customTransport || batchEncoding == null,
+            "A custom transport can only be used when sending through libhoney, see batchEncoding");
+        final SpanConverter converter = new SpanConverter(serviceName, maxLinksPerSpan, maxArrayElements);
+        final SpanSink sink;
+        if (batchEncoding != null) {
+            sink = buildBatchingSink(converter);
+        } else {
+            sink = new LibhoneySpanSink(clientBuilder.build(), converter, batchSize);
+        }
+        if (!tailSampling) {
+            return sink;
+        }
+        return new TailSamplingSpanSink(sink, new TailSampler(tailSamplingRules, tailSampleRate), converter,
+            tailSamplingMaxBytes, tailSamplingDecisionWaitMillis);
+    }
+
+    private SpanSink buildBatchingSink(final SpanConverter converter) {
+        Assert.notNull(writeKey, "A write key is required to send spans to the batch API");
+        Assert.notNull(dataSet, "A dataset is required to send spans to the batch API");
+        final CloseableHttpAsyncClient client = buildHttpClient().build();
+        if (routes.isEmpty()) {
+            return newBatchingSink(converter, client, true, dataSet, writeKey, spoolMaxBytes);
+        }
+
+        // routes with the same dataset and write key share a sink, the default route comes first
+        final Set<String> distinctRoutes = new HashSet<>();
+        distinctRoutes.add(dataSet + '\n' + writeKey);
+        for (RouteSpec route : routes) {
+            distinctRoutes.add(route.dataSet + '\n' + (route.writeKey != null ? route.writeKey : writeKey));
+        }
+        // the spool size is shared by the spools of all sinks
+        final long routeSpoolBytes = spoolMaxBytes / distinctRoutes.size();
+        final List<String> routeKeys = new ArrayList<>();
+        final List<SpanSink> sinks = new ArrayList<>();
+        final List<SpanRouter.Rule> rules = new ArrayList<>();
+        try {
+            routeKeys.add(dataSet + '\n' + writeKey);
+            sinks.add(newBatchingSink(converter, client, false, dataSet, writeKey, routeSpoolBytes));
+            for (RouteSpec route : routes) {
+                final String routeWriteKey = route.writeKey != null ? route.writeKey : writeKey;
+                int index = routeKeys.indexOf(route.dataSet + '\n' + routeWriteKey);
+                if (index < 0) {
+                    index = sinks.size();
+                    routeKeys.add(route.dataSet + '\n' + routeWriteKey);
+                    sinks.add(newBatchingSink(converter, client, false, route.dataSet, routeWriteKey, routeSpoolBytes));
+                }
+                rules.add(route.rule.apply(index));
+            }
+        } catch (final RuntimeException e) {
+            for (SpanSink sink : sinks) {
+                sink.shutdown();
+            }
+            closeQuietly(client);
+            throw e;
+        }
+        return new RoutingSpanSink(new SpanRouter(rules, 0), sinks, client);
+    }
+
+    private SpanSink newBatchingSink(final SpanConverter converter, final CloseableHttpAsyncClient client,
+                                     final boolean ownsClient, final String dataSet, final String writeKey,
+                                     final long spoolBytes) {
+        final BatchEncoder encoder = newBatchEncoder();
+        BatchSender sender = new HttpBatchSender(
+            client, apiHost, writeKey, dataSet, ContentType.create(encoder.contentType()),
+            maxPendingBatchRequests, maximumHttpRequestShutdownWait, ownsClient);
+        if (maxRetryAttempts > 1) {
+            sender = new RetryingBatchSender(sender, maxRetryAttempts, retryInitialBackoffMillis,
+                retryMaxBackoffMillis, retryBufferBytes);
+        }
+        if (spoolDirectory != null) {
+            final Path directory = spoolDirectory.resolve(spoolName(dataSet, writeKey, batchEncoding));
+            try {
+                final DiskSpool spool = new DiskSpool(directory, spoolBytes,
+                    (int) Math.min(MAX_SPOOL_SEGMENT_BYTES, spoolBytes));
+                // replays no more batches at once than can be pending by default when there is no limit
+                sender = new SpoolingBatchSender(sender, spool, SPOOL_INITIAL_BACKOFF_MILLIS, SPOOL_MAX_BACKOFF_MILLIS,
+                    maxPendingBatchRequests < 0
+                        ? TransportOptions.DEFAULT_MAX_PENDING_BATCH_REQUESTS : maxPendingBatchRequests);
+            } catch (final IOException e) {
+                sender.close();
+                throw new UncheckedIOException("Failed to open spool in " + directory, e);
+            }
+        }
+        return new BatchingSpanSink(converter, encoder, sender, batchSize, batchTimeoutMillis);
+    }
+
+    /**
+     * Names the spool subdirectory of a dataset, write key and encoding. The spool only holds request bodies, so keying
+     * it by what they are sent to and how they are encoded means batches left behind by a previous process are never
+     * replayed to another dataset, with another write key or with the content type of another encoding, however the
+     * configuration has changed in the meantime.
+     */
+    private static String spoolName(final String dataSet, final String writeKey, final BatchEncoding encoding) {
+        return Hashing.sha256().hashString(dataSet + '\n' + writeKey + '\n' + encoding, StandardCharsets.UTF_8)
+            .toString();
+    }
+
+    private static void closeQuietly(final CloseableHttpAsyncClient client) {
+        try {
+            client.close();
+        } catch (final IOException e) {
+            // nothing was sent yet
+        }
+    }
+
+    private BatchEncoder newBatchEncoder() {
+        switch (batchEncoding) {
+            case MSGPACK:
+                return new MsgPackBatchEncoder(globalFields);
+            case JSON:
+            default:
+                return new JsonBatchEncoder(globalFields);
+        }
+    }
+
+    private HttpAsyncClientBuilder buildHttpClient() {
+        final String userAgent = isNullOrEmpty(additionalUserAgent)
+            ? USER_AGENT
+            : USER_AGENT + " " + additionalUserAgent;
+        final HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClients.custom()
+            .setUserAgent(userAgent)
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerApiHost)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build())
+            .setDefaultConnectionConfig(ConnectionConfig.custom().setBufferSize(bufferSize).build())
+            .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(ioThreadCount).build());
+        if (proxy != null) {
+            httpClientBuilder.setProxy(proxy);
+            if (proxyCredentials != null) {
+                final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(proxy), proxyCredentials);
+                httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+        }
+        if (sslContext != null) {
+            httpClientBuilder.setSSLContext(sslContext);
+        }
+        return httpClientBuilder;
+    }
+
+    /**
+     * Maximum number of links exported per span. Each link of a span is sent as an event of its own with
+     * {@code meta.annotation_type=link}, pointing at the linked span with {@code trace.link.trace_id} and
+     * {@code trace.link.span_id}. Links beyond this number are dropped.
+     * <p>
+     * Default: 128
+     *
+     * @param maxLinksPerSpan maximum number of link events per span, 0 to not export links.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder maxLinksPerSpan(final int maxLinksPerSpan) {
+        Assert.isTrue(maxLinksPerSpan >= 0, "The maximum number of links must not be negative");
+        this.maxLinksPerSpan = maxLinksPerSpan;
+        return this;
+    }
+
+    /**
+     * Maximum number of elements exported per array attribute. Array attributes are sent as JSON arrays (or
+     * MessagePack arrays, see {@link #batchEncoding(BatchEncoding)}) holding the first elements of the array.
+     * <p>
+     * Default: 128
+     *
+     * @param maxArrayElements maximum number of elements per array attribute.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder maxArrayAttributeElements(final int maxArrayElements) {
+        Assert.isTrue(maxArrayElements >= 0, "The maximum number of array elements must not be negative");
+        this.maxArrayElements = maxArrayElements;
+        return this;
+    }
+
+    /**
+     * Try batch requests again that failed because the Honeycomb API could not be reached, was throttling requests
+     * ({@code 429}) or failed on the server side ({@code 5xx}). Retries wait for an exponentially growing delay with
+     * jitter, see {@link #retryBackoff(long, long)}, or for as long as a {@code 429} or {@code 503} response asked for
+     * with a {@code Retry-After} header.
+     * <p>
+     * Retries happen in the background and never block {@link HoneycombSpanExporter#export}. Batches waiting for a
+     * retry when the exporter is shut down are not tried again.
+     * <p>
+     * Only applies when sending to the batch API, see {@link #batchEncoding(BatchEncoding)}.
+     * <p>
+     * Default: 1, i.e. failed batches are not retried.
+     *
+     * @param maxRetryAttempts maximum number of attempts per batch, including the first one.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder maxRetryAttempts(final int maxRetryAttempts) {
+        Assert.isTrue(maxRetryAttempts >= 1, "At least one attempt is required");
+        this.maxRetryAttempts = maxRetryAttempts;
+        return this;
+    }
+
+    /**
+     * Delay before retrying a failed batch request. The delay doubles with each attempt up to the maximum, and a
+     * random jitter of up to half the delay is applied so that concurrent retries spread out. Delays asked for with
+     * {@code Retry-After} are honored up to the maximum as well.
+     * <p>
+     * Default: 100, growing to 10000
+     *
+     * @param initialBackoffMillis delay before the first retry.
+     * @param maxBackoffMillis     upper bound for the delay.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder retryBackoff(final long initialBackoffMillis, final long maxBackoffMillis) {
+        Assert.isTrue(initialBackoffMillis > 0 && maxBackoffMillis >= initialBackoffMillis,
+            "Backoff must be positive and the maximum must not be less than the initial backoff");
+        this.retryInitialBackoffMillis = initialBackoffMillis;
+        this.retryMaxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Upper bound for the memory taken up by batches waiting for a retry. Batches that fail while the buffer is full
+     * are not retried.
+     * <p>
+     * Default: 16777216 (16MB)
+     *
+     * @param retryBufferBytes maximum size of all batch bodies waiting for a retry.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder retryBufferBytes(final long retryBufferBytes) {
+        Assert.isTrue(retryBufferBytes > 0, "The retry buffer size must be positive");
+        this.retryBufferBytes = retryBufferBytes;
+        return this;
+    }
+
+    /**
+     * Spool batches to local disk while the Honeycomb API cannot be reached or requests are backing up, and replay
+     * them once requests succeed again, oldest first and as many at once as {@link #maxPendingBatchRequests(int)}
+     * allows. Spooled batches survive restarts of the process: batches left in the directory are replayed when a new
+     * exporter is built with the same spool directory and sends to the same dataset with the same write key and
+     * batch encoding.
+     * <p>
+     * Each dataset, write key and encoding spools to a subdirectory named after a hash of the three. Subdirectories of
+     * datasets or encodings that are no longer sent to are left in place.
+     * <p>
+     * The spool consists of memory-mapped segment files of up to 16MB, so batches larger than the segment size are
+     * never spooled. Once the spool is full, further batches fail as they would without a spool.
+     * <p>
+     * Only applies when sending to the batch API, see {@link #batchEncoding(BatchEncoding)}.
+     * <p>
+     * Default: None, batches are not spooled.
+     *
+     * @param directory to keep the spool in, which must not be shared with other exporters.
+     * @param maxBytes  maximum disk space used by the spool, split evenly between routes if there are any.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder spool(final Path directory, final long maxBytes) {
+        Assert.notNull(directory, "The spool directory must not be null");
+        Assert.isTrue(maxBytes > 0, "The spool size must be positive");
+        this.spoolDirectory = directory;
+        this.spoolMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * The number of ended spans that may wait for the background thread of a span processor, see
+     * {@link #buildSpanProcessor()}. The capacity is rounded up to a power of two. Spans that end while the queue is
+     * full are dropped.
+     * <p>
+     * Only applies to span processors.
+     * <p>
+     * Default: 2048
+     *
+     * @param queueCapacity the number of queued spans.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder spanProcessorQueueCapacity(final int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "The queue capacity must be positive");
+        this.spanProcessorQueueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * How the background thread of a span processor waits for spans to end, see {@link #buildSpanProcessor()}.
+     * {@link WaitStrategy#BLOCKING} uses no CPU while idle, while the other strategies trade CPU time for a lower
+     * latency between the end of a span and its export.
+     * <p>
+     * Only applies to span processors.
+     * <p>
+     * Default: {@link WaitStrategy#BLOCKING}
+     *
+     * @param waitStrategy to set.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder spanProcessorWaitStrategy(final WaitStrategy waitStrategy) {
+        Assert.notNull(waitStrategy, "The wait strategy must not be null");
+        this.spanProcessorWaitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Sample whole traces once they have ended, keeping 1 in {@code sampleRate} of the traces that match none of the
+     * rules added with {@link #tailSampleErrors(int)}, {@link #tailSampleSlowTraces(long, int)} and
+     * {@link #tailSampleByAttribute(String, String, int)}.
+     * <p>
+     * Spans are held back per trace until the trace's local root span, i.e. its span without a parent or with a
+     * remote parent, has ended, or until the trace has waited for as long as configured with
+     * {@link #tailSamplingBuffer(long, long)}. The trace is then decided on with all of its spans that have ended,
+     * and kept or dropped as a whole. Which traces are kept at a given rate is decided deterministically from the
+     * trace id, independently of any sampling at the start of the trace. Kept traces are sent with a sample rate
+     * that combines the {@code sample.rate} they were sampled at on start with the tail sample rate.
+     * <p>
+     * Default: None, spans are sent as they end.
+     *
+     * @param sampleRate keep 1 in this many traces, 1 to keep all of them, 0 to drop all of them.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder tailSampleRate(final int sampleRate) {
+        Assert.isTrue(sampleRate >= 0, "Sample rate must not be negative");
+        this.tailSampling = true;
+        this.tailSampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Keep 1 in {@code sampleRate} of the traces that have a span with an error status, see
+     * {@link #tailSampleRate(int)}. Tail sampling rules are tried in the order they were added and the first one that
+     * matches a trace sets its rate.
+     * <p>
+     * Default: None
+     *
+     * @param sampleRate keep 1 in this many traces, 1 to keep all of them, 0 to drop all of them.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder tailSampleErrors(final int sampleRate) {
+        return addTailSamplingRule(TailSampler.errors(sampleRate), sampleRate);
+    }
+
+    /**
+     * Keep 1 in {@code sampleRate} of the traces that took at least the given time, from the start of their earliest
+     * span to the end of their latest span, see {@link #tailSampleRate(int)} and {@link #tailSampleErrors(int)}.
+     * <p>
+     * Default: None
+     *
+     * @param minDurationMillis the minimum duration of the trace.
+     * @param sampleRate        keep 1 in this many traces, 1 to keep all of them, 0 to drop all of them.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder tailSampleSlowTraces(final long minDurationMillis, final int sampleRate) {
+        return addTailSamplingRule(
+            TailSampler.minDuration(TimeUnit.MILLISECONDS.toNanos(minDurationMillis), sampleRate), sampleRate);
+    }
+
+    /**
+     * Keep 1 in {@code sampleRate} of the traces that have a span with the given attribute value, see
+     * {@link #tailSampleRate(int)} and {@link #tailSampleErrors(int)}.
+     * <p>
+     * Default: None
+     *
+     * @param key        the span attribute, which must be a string attribute.
+     * @param value      the value the attribute must have.
+     * @param sampleRate keep 1 in this many traces, 1 to keep all of them, 0 to drop all of them.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder tailSampleByAttribute(final String key, final String value,
+                                                              final int sampleRate) {
+        Assert.notNull(key, "The attribute key must not be null");
+        Assert.notNull(value, "The attribute value must not be null");
+        return addTailSamplingRule(TailSampler.attribute(key, value, sampleRate), sampleRate);
+    }
+
+    private HoneycombSpanExporterBuilder addTailSamplingRule(final TailSampler.Rule rule, final int sampleRate) {
+        Assert.isTrue(sampleRate >= 0, "Sample rate must not be negative");
+        this.tailSampling = true;
+        tailSamplingRules.add(rule);
+        return this;
+    }
+
+    /**
+     * Bounds for the spans held back by tail sampling, see {@link #tailSampleRate(int)}. Once the estimated size of
+     * the spans held back exceeds {@code maxBytes}, the traces that started arriving first are decided on early with
+     * the spans they have so far. A trace whose local root span has not ended after {@code decisionWaitMillis} is
+     * decided on likewise. Spans of a trace that end after it was decided are kept or dropped along with it.
+     * <p>
+     * Default: 67108864 (64MB) and 10000
+     *
+     * @param maxBytes           upper bound for the estimated size of the spans held back.
+     * @param decisionWaitMillis how long a trace waits for its local root span.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder tailSamplingBuffer(final long maxBytes, final long decisionWaitMillis) {
+        Assert.isTrue(maxBytes > 0 && decisionWaitMillis > 0, "The bounds must be positive");
+        this.tailSamplingMaxBytes = maxBytes;
+        this.tailSamplingDecisionWaitMillis = decisionWaitMillis;
+        return this;
+    }
+
+    /**
+     * Send spans whose resource has the given attribute value to another dataset, optionally with another write key,
+     * rather than to the dataset configured with {@link #dataSet(String)}. For instance, routing by
+     * {@code service.name} lets several services that share a process send to datasets of their own through one
+     * exporter.
+     * <p>
+     * Routes are tried in the order they were added and the first one that matches a span wins; spans that match
+     * none go to the configured dataset. Routes to the same dataset and write key share their batches. Otherwise each
+     * route batches on its own, with the batch size, timeout, pending request limit, retries and spool configured for
+     * this builder, while all routes share one HTTP connection pool. The spool size is split evenly between the routes,
+     * each of which spools to a subdirectory of its own, see {@link #spool(Path, long)}. Routing decisions are cached
+     * per resource.
+     * <p>
+     * Only applies when sending to the batch API, see {@link #batchEncoding(BatchEncoding)}.
+     * <p>
+     * Default: None, all spans go to the configured dataset.
+     *
+     * @param key      the resource attribute, which must be a string attribute.
+     * @param value    the value the attribute must have.
+     * @param dataSet  the dataset to send matching spans to.
+     * @param writeKey the write key to send matching spans with, or null to use the configured write key.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder routeByResourceAttribute(final String key, final String value,
+                                                                 final String dataSet, final String writeKey) {
+        Assert.notNull(key, "The attribute key must not be null");
+        Assert.notNull(value, "The attribute value must not be null");
+        return addRoute(route -> SpanRouter.resourceAttribute(key, value, route), dataSet, writeKey);
+    }
+
+    /**
+     * Send spans of the given kind to another dataset, optionally with another write key. See
+     * {@link #routeByResourceAttribute(String, String, String, String)} for how routes are applied.
+     * <p>
+     * Default: None, all spans go to the configured dataset.
+     *
+     * @param kind     the kind of span to route.
+     * @param dataSet  the dataset to send matching spans to.
+     * @param writeKey the write key to send matching spans with, or null to use the configured write key.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder routeBySpanKind(final Span.Kind kind, final String dataSet,
+                                                        final String writeKey) {
+        Assert.notNull(kind, "The span kind must not be null");
+        return addRoute(route -> SpanRouter.spanKind(kind, route), dataSet, writeKey);
+    }
+
+    /**
+     * Send spans created by the named instrumentation library, i.e. by tracers of that name, to another dataset,
+     * optionally with another write key. See {@link #routeByResourceAttribute(String, String, String, String)} for
+     * how routes are applied.
+     * <p>
+     * Default: None, all spans go to the configured dataset.
+     *
+     * @param name     the name of the instrumentation library.
+     * @param dataSet  the dataset to send matching spans to.
+     * @param writeKey the write key to send matching spans with, or null to use the configured write key.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder routeByInstrumentationLibrary(final String name, final String dataSet,
+                                                                      final String writeKey) {
+        Assert.notNull(name, "The instrumentation library name must not be null");
+        return addRoute(route -> SpanRouter.instrumentationLibrary(name, route), dataSet, writeKey);
+    }
+
+    private HoneycombSpanExporterBuilder addRoute(final IntFunction<SpanRouter.Rule> rule, final String dataSet,
+                                                  final String writeKey) {
+        Assert.isTrue(!isNullOrEmpty(dataSet), "A dataset is required for a route");
+        routes.add(new RouteSpec(rule, dataSet, writeKey));
+        return this;
+    }
+
+    /**
+     * Serialize spans straight into batch requests in the given encoding and post them to the Honeycomb batch API,
+     * rather than creating a libhoney {@link Event} per span. This avoids building a map of fields for every span
+     * and serializing it afterwards.
+     * <p>
+     * A write key and dataset are required in this mode. Static global fields, the transport settings and the
+     * proxy and SSL settings of this builder apply. Dynamic global fields, response observers, event post processors
+     * and custom transports can only be used when sending through libhoney, building fails if any of them is set.
+     * <p>
+     * In this mode the results of {@code export()} and {@code flush()} complete once the batches holding the spans
+     * have been acknowledged or have failed. When sending through libhoney, the result of {@code export()} completes
+     * once libhoney has reported a response for every event of the spans, and fails if any of them was rejected. The
+     * result of {@code flush()} cannot make libhoney send its partially filled batches, so it waits for libhoney to
+     * answer every event sent so far, and fails if that takes longer than 10 seconds.
+     * <p>
+     * Default: None, spans are sent through libhoney.
+     *
+     * @param batchEncoding the request body encoding, or null to send through libhoney.
+     * @return this.
+     */
+    public HoneycombSpanExporterBuilder batchEncoding(final BatchEncoding batchEncoding) {
+        this.batchEncoding = batchEncoding;
+        return this;
     }
 
     /**
@@ -67,6 +673,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder addGlobalField(final String name, final Object field) {
         clientBuilder.addGlobalField(name, field);
+        globalFields.put(name, field);
         return this;
     }
 
@@ -75,6 +682,8 @@ public class HoneycombSpanExporterBuilder {
      * Entries may be overridden before the event is sent to the server. See "Usage" on {@link HoneyClient}'s
      * class documentation.
      * <p>
+     * Only applies when sending through libhoney, see {@link #batchEncoding(BatchEncoding)}.
+     * <p>
      * Default: None
      *
      * @param name          the "key"
@@ -84,6 +693,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder addGlobalDynamicFields(final String name, final ValueSupplier<?> valueSupplier) {
         clientBuilder.addGlobalDynamicFields(name, valueSupplier);
+        this.globalDynamicFields = true;
         return this;
     }
 
@@ -99,6 +709,8 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder addProxy(final String proxyHost, final String username, final String password) {
         clientBuilder.addProxy(proxyHost, username, password);
+        this.proxy = new HttpHost(proxyHost);
+        this.proxyCredentials = new UsernamePasswordCredentials(username, password);
         return this;
     }
 
@@ -115,6 +727,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder dataSet(final String dataSet) {
         clientBuilder.dataSet(dataSet);
+        this.dataSet = dataSet;
         return this;
     }
 
@@ -130,6 +743,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder apiHost(final String apiHost) throws URISyntaxException {
         clientBuilder.apiHost(apiHost);
+        this.apiHost = new URI(apiHost);
         return this;
     }
 
@@ -148,6 +762,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder writeKey(final String writeKey) {
         clientBuilder.writeKey(writeKey);
+        this.writeKey = writeKey;
         return this;
     }
 
@@ -179,6 +794,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder batchSize(final int batchSize) {
         clientBuilder.batchSize(batchSize);
+        this.batchSize = batchSize;
         return this;
     }
 
@@ -198,6 +814,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder batchTimeoutMillis(final long batchTimeoutMillis) {
         clientBuilder.batchTimeoutMillis(batchTimeoutMillis);
+        this.batchTimeoutMillis = batchTimeoutMillis;
         return this;
     }
 
@@ -255,6 +872,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder maxPendingBatchRequests(final int maxPendingBatchRequests) {
         clientBuilder.maxPendingBatchRequests(maxPendingBatchRequests);
+        this.maxPendingBatchRequests = maxPendingBatchRequests;
         return this;
     }
 
@@ -270,6 +888,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder maxConnections(final int maxConnections) {
         clientBuilder.maxConnections(maxConnections);
+        this.maxConnections = maxConnections;
         return this;
     }
 
@@ -286,6 +905,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder maxConnectionsPerApiHost(final int maxConnectionsPerApiHost) {
         clientBuilder.maxConnectionsPerApiHost(maxConnectionsPerApiHost);
+        this.maxConnectionsPerApiHost = maxConnectionsPerApiHost;
         return this;
     }
 
@@ -300,6 +920,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder connectionTimeout(final int connectTimeout) {
         clientBuilder.connectionTimeout(connectTimeout);
+        this.connectTimeout = connectTimeout;
         return this;
     }
 
@@ -320,6 +941,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder connectionRequestTimeout(final int connectionRequestTimeout) {
         clientBuilder.connectionRequestTimeout(connectionRequestTimeout);
+        this.connectionRequestTimeout = connectionRequestTimeout;
         return this;
     }
 
@@ -334,6 +956,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder socketTimeout(final int socketTimeout) {
         clientBuilder.socketTimeout(socketTimeout);
+        this.socketTimeout = socketTimeout;
         return this;
     }
 
@@ -348,6 +971,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder bufferSize(final int bufferSize) {
         clientBuilder.bufferSize(bufferSize);
+        this.bufferSize = bufferSize;
         return this;
     }
 
@@ -363,6 +987,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder ioThreadCount(final int ioThreadCount) {
         clientBuilder.ioThreadCount(ioThreadCount);
+        this.ioThreadCount = ioThreadCount;
         return this;
     }
 
@@ -380,6 +1005,9 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder maximumHttpRequestShutdownWait(final Long maximumHttpRequestShutdownWait) {
         clientBuilder.maximumHttpRequestShutdownWait(maximumHttpRequestShutdownWait);
+        if (maximumHttpRequestShutdownWait != null) {
+            this.maximumHttpRequestShutdownWait = maximumHttpRequestShutdownWait;
+        }
         return this;
     }
 
@@ -395,6 +1023,7 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder additionalUserAgent(final String additionalUserAgent) {
         clientBuilder.additionalUserAgent(additionalUserAgent);
+        this.additionalUserAgent = additionalUserAgent;
         return this;
     }
 
@@ -408,6 +1037,8 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder addProxy(final String host) {
         clientBuilder.addProxy(host);
+        this.proxy = new HttpHost(host);
+        this.proxyCredentials = null;
         return this;
     }
 
@@ -419,17 +1050,21 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder sslContext(final SSLContext sslContext) {
         clientBuilder.sslContext(sslContext);
+        this.sslContext = sslContext;
         return this;
     }
 
     /**
      * Set this to apply a response observer for viewing responses of sending events to Honeycomb.
+     * <p>
+     * Only applies when sending through libhoney, see {@link #batchEncoding(BatchEncoding)}.
      *
      * @param responseObserver to set.
      * @return this.
      */
     public HoneycombSpanExporterBuilder addResponseObserver(final ResponseObserver responseObserver) {
         clientBuilder.addResponseObserver(responseObserver);
+        this.responseObservers = true;
         return this;
     }
 
@@ -437,6 +1072,8 @@ public class HoneycombSpanExporterBuilder {
      * Set this to apply post processing to any event about to be submitted to Honeycomb.
      * See {@link EventPostProcessor} for details.
      * <p>
+     * Only applies when sending through libhoney, see {@link #batchEncoding(BatchEncoding)}.
+     * <p>
      * Default: None
      *
      * @param eventPostProcessor to set.
@@ -444,18 +1081,37 @@ public class HoneycombSpanExporterBuilder {
      */
     public HoneycombSpanExporterBuilder eventPostProcessor(final EventPostProcessor eventPostProcessor) {
         clientBuilder.eventPostProcessor(eventPostProcessor);
+        this.eventPostProcessor = eventPostProcessor != null;
         return this;
     }
 
     /**
      * Transport for sending events to HoneyComb. Used by the {@link io.honeycomb.libhoney.HoneyClient} internals.
      * This can also be used to disable sending events to Honeycomb by passing in a mock Transport.
+     * <p>
+     * Only applies when sending through libhoney, see {@link #batchEncoding(BatchEncoding)}.
      *
      * @param transport to set.
      * @return this.
      */
     public HoneycombSpanExporterBuilder transport(final Transport transport){
        clientBuilder.transport(transport);
+       this.customTransport = transport != null;
        return this;
     }
+
+    /**
+     * A route as configured, resolved into a {@link SpanRouter.Rule} once the routes are numbered.
+     */
+    private static final class RouteSpec {
+        private final IntFunction<SpanRouter.Rule> rule;
+        private final String dataSet;
+        private final String writeKey;
+
+        private RouteSpec(final IntFunction<SpanRouter.Rule> rule, final String dataSet, final String writeKey) {
+            this.rule = rule;
+            this.dataSet = dataSet;
+            this.writeKey = writeKey;
+        }
+    }
 }
@@ -0,0 +1,212 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.honeycomb.opentelemetry.exporters.ResultCodes.completeWith;
+
+/**
+ * A {@link SpanProcessor} that hands ended spans straight to the exporter's batching, in place of the SDK's
+ * {@code BatchSpanProcessor} in front of a {@link HoneycombSpanExporter}.
+ * <p>
+ * The {@code BatchSpanProcessor} queues spans and collects them into batches of its own before exporting them, only
+ * for the exporter to batch them again, either in libhoney's transport queue or in the batch API requests. This
+ * processor queues ended spans in a lock-free ring buffer and a single background thread takes their data and writes
+ * it into the exporter's batches as they arrive, so spans are batched once, by the batch size and timeout configured
+ * on {@link HoneycombSpanExporterBuilder}, and the thread ending a span does no more than put it in the queue.
+ * <p>
+ * Only sampled spans are exported. Spans that end while the queue is full are dropped rather than blocking the
+ * thread that ends them.
+ * <p>
+ * Instances are created with {@link HoneycombSpanExporterBuilder#buildSpanProcessor()}.
+ */
+public final class HoneycombSpanProcessor implements SpanProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(HoneycombSpanProcessor.class);
+    /**
+     * Maximum number of spans passed to the sink at a time, which bounds how long the sink's lock is held.
+     */
+    private static final int MAX_EXPORT_SPANS = 512;
+    /**
+     * How long the worker waits for spans before checking again, only matters if a wake-up was missed.
+     */
+    private static final long IDLE_MILLIS = 1000;
+
+    private final SpanSink sink;
+    private final MpscRingBuffer<ReadableSpan> queue;
+    private final Queue<CompletableResultCode> flushRequests = new ConcurrentLinkedQueue<>();
+    private final CompletableResultCode shutdownResult = new CompletableResultCode();
+    private final LongAdder droppedSpans = new LongAdder();
+    // only used by the worker thread
+    private final List<ReadableSpan> endedSpans = new ArrayList<>(MAX_EXPORT_SPANS);
+    private final List<SpanData> spans = new ArrayList<>(MAX_EXPORT_SPANS);
+    private volatile boolean shutdown;
+    private volatile boolean terminated;
+
+    /**
+     * @param sink          the sink to write spans to, owned by this processor.
+     * @param queueCapacity the number of ended spans that may wait for the worker thread.
+     * @param waitStrategy  how the worker thread waits for spans.
+     */
+    HoneycombSpanProcessor(final SpanSink sink, final int queueCapacity, final WaitStrategy waitStrategy) {
+        this.sink = sink;
+        this.queue = new MpscRingBuffer<>(queueCapacity, waitStrategy);
+        final Thread worker = new Thread(this::run, "honeycomb-span-processor");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void onStart(final ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(final ReadableSpan span) {
+        if (shutdown || !span.getSpanContext().isSampled()) {
+            return;
+        }
+        // converted by the worker, to keep the cost of copying the span off the thread that ends it
+        if (!queue.offer(span)) {
+            droppedSpans.increment();
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    /**
+     * Stops accepting spans, and exports the spans that are still queued before shutting the exporter down. The
+     * result completes once the exporter has shut down.
+     */
+    @Override
+    public CompletableResultCode shutdown() {
+        shutdown = true;
+        queue.wakeUp();
+        return shutdownResult;
+    }
+
+    /**
+     * Exports the spans that have ended so far and flushes the exporter. The result completes once the exporter's
+     * flush has completed.
+     */
+    @Override
+    public CompletableResultCode forceFlush() {
+        final CompletableResultCode result = new CompletableResultCode();
+        flushRequests.add(result);
+        queue.wakeUp();
+        if (terminated && flushRequests.remove(result)) {
+            // the worker has already shut the exporter down, which flushed it
+            completeWith(result, shutdownResult);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of ended spans waiting in the queue to be exported.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of ended spans the queue can hold before spans are dropped.
+     */
+    public int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    /**
+     * @return the number of batch requests that have been sent, or are waiting to be retried, and have not completed
+     * yet, see {@link HoneycombSpanExporter#getPendingBatches()}.
+     */
+    public int getPendingBatches() {
+        return sink.pendingBatches();
+    }
+
+    /**
+     * @return the number of spans dropped so far because the queue was full.
+     */
+    long getDroppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    private void run() {
+        long reportedDrops = 0;
+        try {
+            while (!shutdown) {
+                queue.await(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                exportQueued();
+                completeFlushRequests();
+                final long drops = droppedSpans.sum();
+                if (drops != reportedDrops) {
+                    LOG.warn("Dropped {} spans because the span processor queue was full", drops - reportedDrops);
+                    reportedDrops = drops;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // spans ending concurrently with the shutdown may still be added, and are exported if they made it in time
+        exportQueued();
+        completeWith(shutdownResult, sink.shutdown());
+        // flushes requested from now on complete with the shutdown, see forceFlush
+        terminated = true;
+        CompletableResultCode request;
+        while ((request = flushRequests.poll()) != null) {
+            completeWith(request, shutdownResult);
+        }
+    }
+
+    private void exportQueued() {
+        while (queue.drain(endedSpans::add, MAX_EXPORT_SPANS) > 0) {
+            try {
+                for (ReadableSpan span : endedSpans) {
+                    spans.add(span.toSpanData());
+                }
+                sink.export(spans);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to export {} spans", endedSpans.size(), e);
+            }
+            endedSpans.clear();
+            spans.clear();
+        }
+    }
+
+    /**
+     * Completes flush requests with a flush of the sink. Spans that ended before a request was made are visible in
+     * the queue once the request is, so they are exported before the sink is flushed.
+     */
+    private void completeFlushRequests() {
+        if (flushRequests.isEmpty()) {
+            return;
+        }
+        final List<CompletableResultCode> requests = new ArrayList<>();
+        CompletableResultCode request;
+        while ((request = flushRequests.poll()) != null) {
+            requests.add(request);
+        }
+        exportQueued();
+        final CompletableResultCode result = sink.flush();
+        for (CompletableResultCode pending : requests) {
+            completeWith(pending, result);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts batches to the Honeycomb batch API ({@code /1/batch/<dataset>}) using a shared asynchronous HTTP client.
+ * <p>
+ * The number of requests pending completion is bounded; once the limit is reached {@link #send} blocks until a
+ * request completes, creating backpressure in the same way as libhoney's batch consumer.
+ */
+final class HttpBatchSender implements BatchSender {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpBatchSender.class);
+    private static final String WRITE_KEY_HEADER = "X-Honeycomb-Team";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final byte[] STATUS_FIELD = "\"status\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final CloseableHttpAsyncClient client;
+    private final URI batchUri;
+    private final String writeKey;
+    private final ContentType contentType;
+    private final Semaphore pendingRequests;
+    private final int maxPendingRequests;
+    private final long shutdownWaitMillis;
+    private final boolean closeClient;
+
+    /**
+     * @param client             the HTTP client, which is started if it is not running yet.
+     * @param apiHost            the Honeycomb API host.
+     * @param writeKey           the Honeycomb write key.
+     * @param dataSet            the dataset to send batches to.
+     * @param contentType        the content type of the batch bodies.
+     * @param maxPendingRequests maximum number of requests pending completion, or -1 for no limit.
+     * @param shutdownWaitMillis how long {@link #close()} waits for pending requests to complete.
+     * @param closeClient        whether {@link #close()} closes the client, false if it is shared with other
+     *                           senders.
+     */
+    HttpBatchSender(final CloseableHttpAsyncClient client, final URI apiHost, final String writeKey,
+                    final String dataSet, final ContentType contentType, final int maxPendingRequests,
+                    final long shutdownWaitMillis, final boolean closeClient) {
+        this.client = client;
+        this.batchUri = apiHost.resolve("/1/batch/" + urlEncode(dataSet));
+        this.writeKey = writeKey;
+        this.contentType = contentType;
+        this.maxPendingRequests = maxPendingRequests < 0 ? Integer.MAX_VALUE : maxPendingRequests;
+        this.pendingRequests = new Semaphore(this.maxPendingRequests);
+        this.shutdownWaitMillis = shutdownWaitMillis;
+        this.closeClient = closeClient;
+        if (!client.isRunning()) {
+            client.start();
+        }
+    }
+
+    @Override
+    public void send(final Batch batch, final Callback callback) {
+        try {
+            pendingRequests.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onFailure(batch, e);
+            return;
+        }
+        execute(batch, callback);
+    }
+
+    @Override
+    public boolean offer(final Batch batch, final Callback callback) {
+        if (!pendingRequests.tryAcquire()) {
+            return false;
+        }
+        execute(batch, callback);
+        return true;
+    }
+
+    private void execute(final Batch batch, final Callback callback) {
+        final HttpPost request = new HttpPost(batchUri);
+        request.setHeader(WRITE_KEY_HEADER, writeKey);
+        request.setEntity(new ByteArrayEntity(batch.getBody(), contentType));
+        try {
+            client.execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(final HttpResponse response) {
+                    pendingRequests.release();
+                    callback.onResponse(batch, toBatchResponse(response));
+                }
+
+                @Override
+                public void failed(final Exception cause) {
+                    pendingRequests.release();
+                    callback.onFailure(batch, cause);
+                }
+
+                @Override
+                public void cancelled() {
+                    pendingRequests.release();
+                    callback.onFailure(batch, new IOException("Batch request was cancelled"));
+                }
+            });
+        } catch (final RuntimeException e) {
+            // e.g. the client has already been shut down
+            pendingRequests.release();
+            callback.onFailure(batch, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!pendingRequests.tryAcquire(maxPendingRequests, shutdownWaitMillis, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Closing HTTP client with batch requests still pending after {}ms", shutdownWaitMillis);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!closeClient) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (final IOException e) {
+            LOG.warn("Failed to close HTTP client", e);
+        }
+    }
+
+    private static BatchResponse toBatchResponse(final HttpResponse response) {
+        final int statusCode = response.getStatusLine().getStatusCode();
+        int rejectedEvents = 0;
+        if (statusCode == 200 && response.getEntity() != null) {
+            try {
+                rejectedEvents = countRejectedEvents(EntityUtils.toByteArray(response.getEntity()));
+            } catch (final IOException e) {
+                LOG.debug("Failed to read batch response body", e);
+            }
+        }
+        return new BatchResponse(statusCode, rejectedEvents,
+            retryAfterMillis(response.getFirstHeader(RETRY_AFTER_HEADER), System.currentTimeMillis()));
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which holds either a number of seconds or an HTTP date.
+     *
+     * @return the delay in milliseconds, or -1 if the header is missing or malformed.
+     */
+    static long retryAfterMillis(final Header header, final long nowMillis) {
+        if (header == null || header.getValue() == null) {
+            return -1;
+        }
+        final String value = header.getValue().trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (final NumberFormatException e) {
+            final Date date = DateUtils.parseDate(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - nowMillis);
+        }
+    }
+
+    /**
+     * Counts the per-event statuses outside the 2xx range in a batch response body, which has the form
+     * {@code [{"status":202},{"status":400,"error":"..."}]}.
+     */
+    static int countRejectedEvents(final byte[] body) {
+        int rejected = 0;
+        int position = 0;
+        while ((position = indexOf(body, STATUS_FIELD, position)) >= 0) {
+            position += STATUS_FIELD.length;
+            while (position < body.length && (body[position] == ':' || body[position] == ' ')) {
+                position++;
+            }
+            int status = 0;
+            while (position < body.length && body[position] >= '0' && body[position] <= '9') {
+                status = status * 10 + (body[position++] - '0');
+            }
+            if (status < 200 || status >= 300) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    private static int indexOf(final byte[] data, final byte[] target, final int from) {
+        outer:
+        for (int i = from; i <= data.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static String urlEncode(final String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name()).replace("+", "%20");
+        } catch (final UnsupportedEncodingException e) { // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
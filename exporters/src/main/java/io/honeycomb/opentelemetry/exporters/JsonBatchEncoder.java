@@ -0,0 +1,367 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes events straight into a reusable byte buffer using the JSON format of the Honeycomb batch API:
+ * <pre>{@code
+ * [{"time":"2020-10-01T12:00:00.000Z","data":{"name":"value",...},"samplerate":1},...]
+ * }</pre>
+ * Field values are written as they are produced, so no intermediate maps are built and primitive values are never
+ * boxed. The buffer grows as needed and is reused for every batch.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class JsonBatchEncoder extends BatchEncoder {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_FIELDS = new byte[0];
+
+    private final byte[] globalFields;
+    private boolean firstField;
+    private long sampleRate;
+
+    /**
+     * @param globalFields fields added to every event, ahead of the event's own fields.
+     */
+    JsonBatchEncoder(final Map<String, ?> globalFields) {
+        this(INITIAL_CAPACITY, encodeFields(
+            globalFields.keySet().toArray(new String[0]), globalFields.values().toArray()));
+        reset();
+    }
+
+    private JsonBatchEncoder(final int capacity, final byte[] globalFields) {
+        super(capacity);
+        this.globalFields = globalFields;
+    }
+
+    /**
+     * Encodes the given fields as a fragment of a JSON object that can be appended to any event with
+     * {@link #addFields(ResourceFields)}. Every field is preceded by a comma.
+     */
+    static byte[] encodeFields(final String[] names, final Object[] values) {
+        if (names.length == 0) {
+            return NO_FIELDS;
+        }
+        final JsonBatchEncoder encoder = new JsonBatchEncoder(256, NO_FIELDS);
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] instanceof List) {
+                final List<?> elements = (List<?>) values[i];
+                encoder.addField(names[i], elements, elements.size());
+            } else {
+                encoder.addField(names[i], values[i]);
+            }
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.size);
+    }
+
+    @Override
+    String contentType() {
+        return "application/json";
+    }
+
+    @Override
+    protected void startBatch() {
+        writeByte('[');
+    }
+
+    @Override
+    protected void endBatch() {
+        writeByte(']');
+    }
+
+    @Override
+    public void beginEvent(final long timestampNanos) {
+        if (eventCount() > 0) {
+            writeByte(',');
+        }
+        writeAscii("{\"time\":\"");
+        writeTimestamp(timestampNanos);
+        writeAscii("\",\"data\":{");
+        firstField = true;
+        sampleRate = 1;
+        appendFragment(globalFields);
+    }
+
+    @Override
+    public void addField(final String name, final String value) {
+        writeName(name);
+        writeString(value);
+    }
+
+    @Override
+    public void addField(final String name, final long value) {
+        writeName(name);
+        writeLong(value);
+    }
+
+    @Override
+    public void addField(final String name, final double value) {
+        writeName(name);
+        writeDouble(value);
+    }
+
+    @Override
+    public void addDurationField(final String name, final long durationNanos) {
+        writeName(name);
+        if (durationNanos < 0) {
+            writeByte('-');
+        }
+        // Long.MIN_VALUE has no positive counterpart, but is not a duration any clock produces
+        final long nanos = Math.abs(durationNanos);
+        writeLong(nanos / 1_000_000);
+        writeFraction((int) (nanos % 1_000_000), 6);
+    }
+
+    @Override
+    public void addField(final String name, final boolean value) {
+        writeName(name);
+        writeAscii(value ? "true" : "false");
+    }
+
+    @Override
+    public void addField(final String name, final Object value) {
+        writeName(name);
+        writeValue(value);
+    }
+
+    @Override
+    public void addField(final String name, final List<?> values, final int maxElements) {
+        writeName(name);
+        writeByte('[');
+        final int count = Math.min(values.size(), maxElements);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                writeByte(',');
+            }
+            writeValue(values.get(i));
+        }
+        writeByte(']');
+    }
+
+    @Override
+    public void setSampleRate(final long sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void addFields(final ResourceFields fields) {
+        appendFragment(fields.json());
+    }
+
+    @Override
+    public void endEvent() {
+        writeAscii("},\"samplerate\":");
+        writeLong(sampleRate);
+        writeByte('}');
+        eventCompleted();
+    }
+
+    private void appendFragment(final byte[] fragment) {
+        if (fragment.length == 0) {
+            return;
+        }
+        // fragments start with a comma that must be dropped if this is the first field of the event
+        final int offset = firstField ? 1 : 0;
+        writeBytes(fragment, offset, fragment.length - offset);
+        firstField = false;
+    }
+
+    private void writeName(final String name) {
+        if (firstField) {
+            firstField = false;
+        } else {
+            writeByte(',');
+        }
+        writeString(name);
+        writeByte(':');
+    }
+
+    private void writeValue(final Object value) {
+        if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writeAscii((Boolean) value ? "true" : "false");
+        } else if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeString(final String value) {
+        final int length = value.length();
+        // worst case is a 6 byte escape sequence per char
+        ensureCapacity(length * 6 + 2);
+        final byte[] buffer = this.buffer;
+        int position = size;
+        buffer[position++] = '"';
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                switch (c) {
+                    case '\n':
+                        buffer[position++] = 'n';
+                        break;
+                    case '\r':
+                        buffer[position++] = 'r';
+                        break;
+                    case '\t':
+                        buffer[position++] = 't';
+                        break;
+                    default:
+                        buffer[position++] = 'u';
+                        buffer[position++] = '0';
+                        buffer[position++] = '0';
+                        buffer[position++] = HEX[c >> 4];
+                        buffer[position++] = HEX[c & 0xf];
+                        break;
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer[position++] = '"';
+        size = position;
+    }
+
+    private void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensureCapacity(20);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[size++] = '-';
+            remaining = -remaining;
+        }
+        final int digits = digitCount(remaining);
+        int position = size + digits;
+        size = position;
+        do {
+            buffer[--position] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        } while (remaining != 0);
+    }
+
+    private void writeDouble(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // not representable in JSON
+            writeAscii("null");
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+            writeAscii(".0");
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    /**
+     * Writes the timestamp in RFC3339 format with microsecond precision, e.g. {@code 2020-10-01T12:00:00.000000Z}.
+     */
+    private void writeTimestamp(final long epochNanos) {
+        final long epochSeconds = Math.floorDiv(epochNanos, 1_000_000_000L);
+        final int nanoOfSecond = (int) Math.floorMod(epochNanos, 1_000_000_000L);
+        final long epochDays = Math.floorDiv(epochSeconds, 86_400L);
+        final int secondOfDay = (int) Math.floorMod(epochSeconds, 86_400L);
+
+        // civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+        final long shifted = epochDays + 719_468L;
+        final long era = Math.floorDiv(shifted, 146_097L);
+        final int dayOfEra = (int) (shifted - era * 146_097L);
+        final int yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensureCapacity(27);
+        writeDigits(year, 4);
+        buffer[size++] = '-';
+        writeDigits(month, 2);
+        buffer[size++] = '-';
+        writeDigits(day, 2);
+        buffer[size++] = 'T';
+        writeDigits(secondOfDay / 3_600, 2);
+        buffer[size++] = ':';
+        writeDigits((secondOfDay / 60) % 60, 2);
+        buffer[size++] = ':';
+        writeDigits(secondOfDay % 60, 2);
+        buffer[size++] = '.';
+        writeDigits(nanoOfSecond / 1_000, 6);
+        buffer[size++] = 'Z';
+    }
+
+    /**
+     * Writes a decimal fraction of the given number of digits, without trailing zeros but with at least one digit,
+     * e.g. {@code .25} for 250000 and 6 digits, or {@code .0} for 0.
+     */
+    private void writeFraction(final int value, final int width) {
+        int remaining = value;
+        int digits = width;
+        while (digits > 1 && remaining % 10 == 0) {
+            remaining /= 10;
+            digits--;
+        }
+        ensureCapacity(digits + 1);
+        buffer[size++] = '.';
+        writeDigits(remaining, digits);
+    }
+
+    private void writeDigits(final long value, final int width) {
+        long remaining = value;
+        for (int position = size + width - 1; position >= size; position--) {
+            buffer[position] = (byte) ('0' + (remaining % 10));
+            remaining /= 10;
+        }
+        size += width;
+    }
+
+    private void writeAscii(final String value) {
+        final int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private static int digitCount(final long value) {
+        long limit = 10;
+        for (int digits = 1; digits < 19; digits++) {
+            if (value < limit) {
+                return digits;
+            }
+            limit *= 10;
+        }
+        return 19;
+    }
+}
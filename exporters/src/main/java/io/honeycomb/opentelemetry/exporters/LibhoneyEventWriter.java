@@ -0,0 +1,84 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.honeycomb.libhoney.Event;
+import io.honeycomb.libhoney.HoneyClient;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes each event into a libhoney {@link Event} and sends it through the {@link HoneyClient} when it is complete,
+ * tracking it as part of the export it belongs to.
+ * <p>
+ * Instances hold the event currently being written and must not be shared between threads.
+ */
+final class LibhoneyEventWriter implements EventWriter {
+    private final HoneyClient client;
+    private final LibhoneySpanSink.Backlog.Export export;
+    private Event event;
+
+    LibhoneyEventWriter(final HoneyClient client, final LibhoneySpanSink.Backlog.Export export) {
+        this.client = client;
+        this.export = export;
+    }
+
+    @Override
+    public void beginEvent(final long timestampNanos) {
+        event = client.createEvent()
+            .setTimestamp(TimeUnit.NANOSECONDS.toMillis(timestampNanos));
+    }
+
+    @Override
+    public void addField(final String name, final String value) {
+        event.addField(name, value);
+    }
+
+    @Override
+    public void addField(final String name, final long value) {
+        event.addField(name, value);
+    }
+
+    @Override
+    public void addField(final String name, final double value) {
+        event.addField(name, value);
+    }
+
+    @Override
+    public void addDurationField(final String name, final long durationNanos) {
+        event.addField(name, durationNanos / 1_000_000.0);
+    }
+
+    @Override
+    public void addField(final String name, final boolean value) {
+        event.addField(name, value);
+    }
+
+    @Override
+    public void addField(final String name, final Object value) {
+        event.addField(name, value);
+    }
+
+    @Override
+    public void addField(final String name, final List<?> values, final int maxElements) {
+        // a view rather than a copy, libhoney serializes it as a JSON array
+        event.addField(name, values.size() > maxElements ? values.subList(0, maxElements) : values);
+    }
+
+    @Override
+    public void setSampleRate(final long sampleRate) {
+        // libhoney takes an int rate, which any realistic rate fits
+        event.setSampleRate((int) Math.min(Integer.MAX_VALUE, sampleRate));
+    }
+
+    @Override
+    public void addFields(final ResourceFields fields) {
+        fields.writeTo(this);
+    }
+
+    @Override
+    public void endEvent() {
+        export.track(event);
+        event.sendPresampled();
+        event = null;
+    }
+}
@@ -0,0 +1,225 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.honeycomb.libhoney.Event;
+import io.honeycomb.libhoney.HoneyClient;
+import io.honeycomb.libhoney.ResponseObserver;
+import io.honeycomb.libhoney.responses.ClientRejected;
+import io.honeycomb.libhoney.responses.Response;
+import io.honeycomb.libhoney.responses.ServerAccepted;
+import io.honeycomb.libhoney.responses.ServerRejected;
+import io.honeycomb.libhoney.responses.Unknown;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends every span as a libhoney {@link io.honeycomb.libhoney.Event}, leaving batching and transmission to the
+ * {@link HoneyClient}.
+ * <p>
+ * libhoney reports delivery per event to its response observers only, so the sink observes the responses to its own
+ * events to tell how many are still queued or in flight in libhoney, and to complete the result of {@link #export}
+ * once every event of the exported spans has been answered. {@link #flush} cannot make libhoney send its partially
+ * filled batches, so it waits for libhoney to answer every event sent so far, up to a timeout.
+ */
+final class LibhoneySpanSink implements SpanSink {
+    static final long DEFAULT_FLUSH_TIMEOUT_MILLIS = 10_000;
+
+    private final HoneyClient client;
+    private final SpanConverter converter;
+    private final int batchSize;
+    private final long flushTimeoutMillis;
+    private final Backlog backlog = new Backlog();
+    private final ScheduledExecutorService timer;
+
+    LibhoneySpanSink(final HoneyClient client, final SpanConverter converter, final int batchSize) {
+        this(client, converter, batchSize, DEFAULT_FLUSH_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param client             the client to send events with.
+     * @param converter          turns spans into events.
+     * @param batchSize          the number of events libhoney sends per batch, to express its backlog in batches.
+     * @param flushTimeoutMillis maximum time a flush waits for libhoney to answer the events sent so far.
+     */
+    LibhoneySpanSink(final HoneyClient client, final SpanConverter converter, final int batchSize,
+                     final long flushTimeoutMillis) {
+        this.client = client;
+        this.converter = converter;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushTimeoutMillis = flushTimeoutMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-flush-timer-%d").setDaemon(true).build());
+        client.addResponseObserver(backlog);
+    }
+
+    @Override
+    public CompletableResultCode export(final Collection<SpanData> spans) {
+        final Backlog.Export export = backlog.newExport();
+        final LibhoneyEventWriter writer = new LibhoneyEventWriter(client, export);
+        for (SpanData span : spans) {
+            converter.write(span, writer);
+        }
+        export.sent();
+        return export.result;
+    }
+
+    /**
+     * Returns a result that succeeds once libhoney has answered every event sent by the sink, or fails if that takes
+     * longer than the flush timeout. Events sent while waiting delay the result just like the ones pending already.
+     */
+    @Override
+    public CompletableResultCode flush() {
+        final CompletableResultCode result = backlog.whenDrained();
+        if (result.isDone()) {
+            return result;
+        }
+        try {
+            final ScheduledFuture<?> timeout = timer.schedule(result::fail, flushTimeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete(() -> timeout.cancel(false));
+        } catch (final RejectedExecutionException e) {
+            // already shut down, the events left were dropped or will not be answered
+            result.fail();
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        // lets the timeouts of pending flushes run
+        timer.shutdown();
+        client.close();
+        return CompletableResultCode.ofSuccess();
+    }
+
+    /**
+     * @return the number of batches that the events sent by this sink and not yet answered by libhoney fill, i.e. the
+     * events waiting in libhoney's queue or in a pending request.
+     */
+    @Override
+    public int pendingBatches() {
+        final int pendingEvents = backlog.pendingEvents.get();
+        return (pendingEvents + batchSize - 1) / batchSize;
+    }
+
+    /**
+     * Counts the events sent by the sink that libhoney has not reported a response for yet. Events are tagged with
+     * the export they belong to in their metadata, so that responses to events sent through the same client by others
+     * are ignored. libhoney reports exactly one response per event, including events it rejects, e.g. because its
+     * queue is full.
+     */
+    static final class Backlog implements ResponseObserver {
+        private static final String METADATA_KEY = "honeycomb.opentelemetry.backlog";
+
+        private final AtomicInteger pendingEvents = new AtomicInteger();
+        private final List<CompletableResultCode> drainResults = new ArrayList<>();
+
+        Export newExport() {
+            return new Export();
+        }
+
+        /**
+         * @return a result that succeeds the next time no events are pending, right away if none are.
+         */
+        CompletableResultCode whenDrained() {
+            synchronized (drainResults) {
+                if (pendingEvents.get() == 0) {
+                    return CompletableResultCode.ofSuccess();
+                }
+                final CompletableResultCode result = new CompletableResultCode();
+                drainResults.add(result);
+                return result;
+            }
+        }
+
+        @Override
+        public void onServerAccepted(final ServerAccepted serverAccepted) {
+            answered(serverAccepted, true);
+        }
+
+        @Override
+        public void onServerRejected(final ServerRejected serverRejected) {
+            answered(serverRejected, false);
+        }
+
+        @Override
+        public void onClientRejected(final ClientRejected clientRejected) {
+            answered(clientRejected, false);
+        }
+
+        @Override
+        public void onUnknown(final Unknown unknown) {
+            answered(unknown, false);
+        }
+
+        private void answered(final Response response, final boolean accepted) {
+            final Map<String, Object> metadata = response.getEventMetadata();
+            final Object tag = metadata == null ? null : metadata.get(METADATA_KEY);
+            if (tag instanceof Export && ((Export) tag).backlog() == this) {
+                if (pendingEvents.decrementAndGet() == 0) {
+                    drained();
+                }
+                ((Export) tag).answered(accepted);
+            }
+        }
+
+        private void drained() {
+            final List<CompletableResultCode> results;
+            synchronized (drainResults) {
+                // checked again under the lock, as events may have been sent since
+                if (pendingEvents.get() != 0 || drainResults.isEmpty()) {
+                    return;
+                }
+                results = new ArrayList<>(drainResults);
+                drainResults.clear();
+            }
+            for (CompletableResultCode result : results) {
+                result.succeed();
+            }
+        }
+
+        /**
+         * The events of a single export. Its result fails as soon as one of them is rejected, and succeeds once the
+         * last one has been accepted. Answers may arrive while events are still being sent, so the export counts as
+         * one more pending event until {@link #sent()} is called.
+         */
+        final class Export {
+            final CompletableResultCode result = new CompletableResultCode();
+            private final AtomicInteger pending = new AtomicInteger(1);
+
+            void track(final Event event) {
+                event.addMetadata(METADATA_KEY, this);
+                pendingEvents.incrementAndGet();
+                pending.incrementAndGet();
+            }
+
+            void sent() {
+                answered(true);
+            }
+
+            private void answered(final boolean accepted) {
+                if (!accepted) {
+                    result.fail();
+                }
+                if (pending.decrementAndGet() == 0) {
+                    // no-op if already failed
+                    result.succeed();
+                }
+            }
+
+            private Backlog backlog() {
+                return Backlog.this;
+            }
+        }
+    }
+}
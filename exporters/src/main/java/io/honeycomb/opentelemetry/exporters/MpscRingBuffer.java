@@ -0,0 +1,246 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A bounded lock-free queue for many producer threads and a single consumer thread, used to hand spans from the
+ * threads that end them to the thread that batches them.
+ * <p>
+ * Elements are kept in a preallocated ring of slots, so enqueueing allocates nothing. Each slot carries a sequence
+ * number that tells producers whether the slot is free for a given position and tells the consumer whether it has
+ * been filled, so producers only contend on claiming a position with a single compare-and-set, and never on a lock.
+ * A full queue rejects elements rather than blocking the producer.
+ * <p>
+ * The consumer waits for elements according to a {@link WaitStrategy}. Only {@link WaitStrategy#BLOCKING} makes
+ * producers do any work on the consumer's behalf, and only while the consumer is actually asleep.
+ * <p>
+ * {@link #offer} is thread-safe, while {@link #poll}, {@link #drain} and {@link #await} must only be called by the
+ * single consumer thread.
+ */
+final class MpscRingBuffer<E> {
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile boolean consumerWaiting;
+    private volatile boolean wakeUpRequested;
+
+    /**
+     * @param capacity     the minimum number of elements the queue holds, rounded up to a power of two.
+     * @param waitStrategy how the consumer waits for elements.
+     */
+    MpscRingBuffer(final int capacity, final WaitStrategy waitStrategy) {
+        final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Adds the element unless the queue is full.
+     *
+     * @return whether the element was added.
+     */
+    boolean offer(final E element) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the consumer has not taken the element a full ring ago yet
+                return false;
+            } else {
+                // claimed by another producer in the meantime
+                position = tail.get();
+            }
+        }
+        slots[index] = element;
+        // a volatile write, which also orders it before the read of consumerWaiting
+        sequences.set(index, position + 1);
+        if (consumerWaiting) {
+            signal();
+        }
+        return true;
+    }
+
+    /**
+     * @return the next element, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        final long position = head.get();
+        final int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        final E element = (E) slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, position + slots.length);
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Removes up to {@code maxElements} elements and passes them to the consumer in order.
+     *
+     * @return the number of elements removed.
+     */
+    @SuppressWarnings("unchecked")
+    int drain(final Consumer<? super E> consumer, final int maxElements) {
+        long position = head.get();
+        int drained = 0;
+        while (drained < maxElements) {
+            final int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            final E element = (E) slots[index];
+            slots[index] = null;
+            sequences.lazySet(index, position + slots.length);
+            position++;
+            drained++;
+            head.lazySet(position);
+            consumer.accept(element);
+        }
+        return drained;
+    }
+
+    /**
+     * @return whether the queue is empty. Only exact when called by the consumer.
+     */
+    boolean isEmpty() {
+        final long position = head.get();
+        return sequences.get((int) position & mask) != position + 1;
+    }
+
+    /**
+     * @return the number of elements in the queue, which may be outdated by the time it is returned.
+     */
+    int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(slots.length, size));
+    }
+
+    /**
+     * Waits until the queue holds an element, the timeout passes or {@link #wakeUp()} is called.
+     *
+     * @return whether the queue holds an element.
+     */
+    boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (!isEmpty() || consumeWakeUp()) {
+            return !isEmpty();
+        }
+        final long timeoutNanos = unit.toNanos(timeout);
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            awaitSignal(timeoutNanos);
+        } else {
+            final long deadline = System.nanoTime() + timeoutNanos;
+            while (isEmpty() && !wakeUpRequested && deadline - System.nanoTime() > 0) {
+                idle();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        consumeWakeUp();
+        return !isEmpty();
+    }
+
+    /**
+     * Makes a current or the next call to {@link #await} return early, e.g. to have the consumer flush.
+     */
+    void wakeUp() {
+        wakeUpRequested = true;
+        if (consumerWaiting) {
+            signal();
+        }
+    }
+
+    private boolean consumeWakeUp() {
+        if (wakeUpRequested) {
+            wakeUpRequested = false;
+            return true;
+        }
+        return false;
+    }
+
+    private void awaitSignal(final long timeoutNanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long remaining = timeoutNanos;
+            while (remaining > 0) {
+                consumerWaiting = true;
+                // checked after announcing the wait, so that a producer either sees it or the element is seen here
+                if (!isEmpty() || wakeUpRequested) {
+                    break;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+        } finally {
+            consumerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            // spares the producers that come next the lock, until the consumer waits again
+            consumerWaiting = false;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+            case SLEEPING:
+                LockSupport.parkNanos(SLEEP_NANOS);
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            case BUSY_SPIN:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * An {@link AtomicLong} that fills the rest of its cache line, so that the producers' position and the consumer's
+     * position do not invalidate each other's cache lines.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
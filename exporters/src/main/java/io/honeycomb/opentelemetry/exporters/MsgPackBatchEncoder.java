@@ -0,0 +1,303 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes events straight into a reusable byte buffer using the MessagePack format of the Honeycomb batch API,
+ * i.e. an array of maps with the keys {@code time} (a MessagePack timestamp), {@code data} and {@code samplerate}.
+ * <p>
+ * The sizes of the batch array and of each event's data map are only known once they are complete, so 32 bit
+ * headers are written up front and patched afterwards. Numbers are written in their most compact representation.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class MsgPackBatchEncoder extends BatchEncoder {
+    private static final byte[] NO_FIELDS = new byte[0];
+    private static final byte[] TIME_KEY = fixStr("time");
+    private static final byte[] DATA_KEY = fixStr("data");
+    private static final byte[] SAMPLE_RATE_KEY = fixStr("samplerate");
+    private static final byte TIMESTAMP_TYPE = -1;
+
+    private final byte[] globalFields;
+    private final int globalFieldCount;
+    private int dataHeader;
+    private int fieldCount;
+    private long sampleRate;
+
+    /**
+     * @param globalFields fields added to every event, ahead of the event's own fields.
+     */
+    MsgPackBatchEncoder(final Map<String, ?> globalFields) {
+        this(INITIAL_CAPACITY, encodeFields(
+            globalFields.keySet().toArray(new String[0]), globalFields.values().toArray()), globalFields.size());
+        reset();
+    }
+
+    private MsgPackBatchEncoder(final int capacity, final byte[] globalFields, final int globalFieldCount) {
+        super(capacity);
+        this.globalFields = globalFields;
+        this.globalFieldCount = globalFieldCount;
+    }
+
+    /**
+     * Encodes the given fields as consecutive key/value pairs that can be appended to the data map of any event with
+     * {@link #addFields(ResourceFields)}.
+     */
+    static byte[] encodeFields(final String[] names, final Object[] values) {
+        if (names.length == 0) {
+            return NO_FIELDS;
+        }
+        final MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(256, NO_FIELDS, 0);
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] instanceof List) {
+                final List<?> elements = (List<?>) values[i];
+                encoder.addField(names[i], elements, elements.size());
+            } else {
+                encoder.addField(names[i], values[i]);
+            }
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.size);
+    }
+
+    @Override
+    String contentType() {
+        return "application/msgpack";
+    }
+
+    @Override
+    protected void startBatch() {
+        writeByte(0xdd);
+        writeInt(0);
+    }
+
+    @Override
+    protected void endBatch() {
+        putInt(1, eventCount());
+    }
+
+    @Override
+    public void beginEvent(final long timestampNanos) {
+        writeByte(0x83);
+        writeBytes(TIME_KEY, 0, TIME_KEY.length);
+        writeTimestamp(timestampNanos);
+        writeBytes(DATA_KEY, 0, DATA_KEY.length);
+        dataHeader = size;
+        writeByte(0xdf);
+        writeInt(0);
+        writeBytes(globalFields, 0, globalFields.length);
+        fieldCount = globalFieldCount;
+        sampleRate = 1;
+    }
+
+    @Override
+    public void addField(final String name, final String value) {
+        writeName(name);
+        writeString(value);
+    }
+
+    @Override
+    public void addField(final String name, final long value) {
+        writeName(name);
+        writeLong(value);
+    }
+
+    @Override
+    public void addField(final String name, final double value) {
+        writeName(name);
+        writeDouble(value);
+    }
+
+    @Override
+    public void addDurationField(final String name, final long durationNanos) {
+        writeName(name);
+        writeDouble(durationNanos / 1_000_000.0);
+    }
+
+    @Override
+    public void addField(final String name, final boolean value) {
+        writeName(name);
+        writeBoolean(value);
+    }
+
+    @Override
+    public void addField(final String name, final Object value) {
+        writeName(name);
+        writeValue(value);
+    }
+
+    @Override
+    public void addField(final String name, final List<?> values, final int maxElements) {
+        writeName(name);
+        final int count = Math.min(values.size(), maxElements);
+        if (count < 16) {
+            writeByte(0x90 | count);
+        } else if (count < 0x10000) {
+            writeByte(0xdc);
+            writeByte(count >> 8);
+            writeByte(count);
+        } else {
+            writeByte(0xdd);
+            writeInt(count);
+        }
+        for (int i = 0; i < count; i++) {
+            writeValue(values.get(i));
+        }
+    }
+
+    @Override
+    public void setSampleRate(final long sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void addFields(final ResourceFields fields) {
+        final byte[] fragment = fields.msgpack();
+        writeBytes(fragment, 0, fragment.length);
+        fieldCount += fields.size();
+    }
+
+    @Override
+    public void endEvent() {
+        putInt(dataHeader + 1, fieldCount);
+        writeBytes(SAMPLE_RATE_KEY, 0, SAMPLE_RATE_KEY.length);
+        writeLong(sampleRate);
+        eventCompleted();
+    }
+
+    private void writeName(final String name) {
+        writeString(name);
+        fieldCount++;
+    }
+
+    private void writeValue(final Object value) {
+        if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writeBoolean((Boolean) value);
+        } else if (value == null) {
+            writeByte(0xc0);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeBoolean(final boolean value) {
+        writeByte(value ? 0xc3 : 0xc2);
+    }
+
+    private void writeDouble(final double value) {
+        writeByte(0xcb);
+        writeLongBits(Double.doubleToLongBits(value));
+    }
+
+    private void writeString(final String value) {
+        final int length = utf8Length(value);
+        if (length < 32) {
+            writeByte(0xa0 | length);
+        } else if (length < 0x100) {
+            writeByte(0xd9);
+            writeByte(length);
+        } else if (length < 0x10000) {
+            writeByte(0xda);
+            writeByte(length >> 8);
+            writeByte(length);
+        } else {
+            writeByte(0xdb);
+            writeInt(length);
+        }
+        writeUtf8(value);
+    }
+
+    private void writeLong(final long value) {
+        if (value >= -32 && value < 128) {
+            // positive or negative fixint
+            writeByte((int) value);
+        } else if (value >= 0) {
+            if (value < 0x100) {
+                writeByte(0xcc);
+                writeByte((int) value);
+            } else if (value < 0x10000) {
+                writeByte(0xcd);
+                writeByte((int) (value >> 8));
+                writeByte((int) value);
+            } else if (value < 0x100000000L) {
+                writeByte(0xce);
+                writeInt((int) value);
+            } else {
+                writeByte(0xcf);
+                writeLongBits(value);
+            }
+        } else if (value >= Byte.MIN_VALUE) {
+            writeByte(0xd0);
+            writeByte((int) value);
+        } else if (value >= Short.MIN_VALUE) {
+            writeByte(0xd1);
+            writeByte((int) (value >> 8));
+            writeByte((int) value);
+        } else if (value >= Integer.MIN_VALUE) {
+            writeByte(0xd2);
+            writeInt((int) value);
+        } else {
+            writeByte(0xd3);
+            writeLongBits(value);
+        }
+    }
+
+    /**
+     * Writes a MessagePack timestamp extension value, using the 32, 64 or 96 bit format as required.
+     */
+    private void writeTimestamp(final long epochNanos) {
+        final long seconds = Math.floorDiv(epochNanos, 1_000_000_000L);
+        final int nanos = (int) Math.floorMod(epochNanos, 1_000_000_000L);
+        if (seconds >>> 34 == 0) {
+            if (nanos == 0 && seconds >>> 32 == 0) {
+                writeByte(0xd6);
+                writeByte(TIMESTAMP_TYPE);
+                writeInt((int) seconds);
+            } else {
+                writeByte(0xd7);
+                writeByte(TIMESTAMP_TYPE);
+                writeLongBits(((long) nanos << 34) | seconds);
+            }
+        } else {
+            writeByte(0xc7);
+            writeByte(12);
+            writeByte(TIMESTAMP_TYPE);
+            writeInt(nanos);
+            writeLongBits(seconds);
+        }
+    }
+
+    private void writeInt(final int value) {
+        ensureCapacity(4);
+        putInt(size, value);
+        size += 4;
+    }
+
+    private void writeLongBits(final long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void putInt(final int position, final int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    private static byte[] fixStr(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        final byte[] encoded = new byte[bytes.length + 1];
+        encoded[0] = (byte) (0xa0 | bytes.length);
+        System.arraycopy(bytes, 0, encoded, 1, bytes.length);
+        return encoded;
+    }
+}
@@ -0,0 +1,197 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.resources.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * The event fields derived from a {@link Resource}, converted once and shared by every span that carries the same
+ * resource, along with the resource's {@code service.name}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+final class ResourceFields {
+    static final String SERVICE_NAME_ATTRIBUTE = "service.name";
+    static final ResourceFields EMPTY = new ResourceFields(new String[0], new Object[0], null);
+
+    private final String[] names;
+    private final Object[] values;
+    private final String serviceName;
+    private volatile byte[] json;
+    private volatile byte[] msgpack;
+
+    private ResourceFields(final String[] names, final Object[] values, final String serviceName) {
+        this.names = names;
+        this.values = values;
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * Converts the attributes of the given resource into event fields. Array attributes are kept as lists of at most
+     * {@code maxArrayElements} elements.
+     *
+     * @param resource         to convert.
+     * @param maxArrayElements maximum number of elements kept per array attribute.
+     * @return the resource's fields.
+     */
+    static ResourceFields of(final Resource resource, final int maxArrayElements) {
+        final List<String> names = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+        final ReadableAttributes attributes = resource.getAttributes();
+        attributes.forEach(
+            new AttributeConsumer() {
+                @Override
+                public <T> void consume(AttributeKey<T> key, T value) {
+                    switch (key.getType()) {
+                        case STRING:
+                        case LONG:
+                        case BOOLEAN:
+                        case DOUBLE:
+                            names.add(key.getKey());
+                            values.add(value);
+                            break;
+                        case STRING_ARRAY:
+                        case LONG_ARRAY:
+                        case BOOLEAN_ARRAY:
+                        case DOUBLE_ARRAY:
+                            final List<?> elements = (List<?>) value;
+                            names.add(key.getKey());
+                            values.add(Collections.unmodifiableList(new ArrayList<>(
+                                elements.subList(0, Math.min(elements.size(), maxArrayElements)))));
+                            break;
+                        default:
+                            // ignore
+                            break;
+                    }
+                }
+            }
+        );
+        final String serviceName = attributes.get(AttributeKey.stringKey(SERVICE_NAME_ATTRIBUTE));
+        return new ResourceFields(names.toArray(new String[0]), values.toArray(),
+            isNullOrEmpty(serviceName) ? null : serviceName);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the resource's {@code service.name}, or null if it has none.
+     */
+    String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Writes all fields to the given writer one by one.
+     *
+     * @param writer to add the fields to.
+     */
+    void writeTo(final EventWriter writer) {
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] instanceof List) {
+                final List<?> elements = (List<?>) values[i];
+                writer.addField(names[i], elements, elements.size());
+            } else {
+                writer.addField(names[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the fields encoded as a JSON object fragment, see {@link JsonBatchEncoder#encodeFields}. The
+     * encoding is computed on first use and reused afterwards.
+     */
+    byte[] json() {
+        byte[] encoded = json;
+        if (encoded == null) {
+            json = encoded = JsonBatchEncoder.encodeFields(names, values);
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns the fields encoded as MessagePack key/value pairs, see {@link MsgPackBatchEncoder#encodeFields}. The
+     * encoding is computed on first use and reused afterwards.
+     */
+    byte[] msgpack() {
+        byte[] encoded = msgpack;
+        if (encoded == null) {
+            msgpack = encoded = MsgPackBatchEncoder.encodeFields(names, values);
+        }
+        return encoded;
+    }
+
+    /**
+     * A bounded cache of converted resources, keyed by resource identity.
+     * <p>
+     * A process typically only has one or a handful of resources, so the most recently used entry is checked first
+     * before falling back to the cache. Resources are weakly referenced so that discarded tracer providers do not
+     * keep their resources alive.
+     */
+    static final class Cache {
+        private static final int MAXIMUM_SIZE = 32;
+
+        private final int maxArrayElements;
+
+        private final LoadingCache<Resource, ResourceFields> cache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAXIMUM_SIZE)
+            .build(
+                new CacheLoader<Resource, ResourceFields>() {
+                    @Override
+                    public ResourceFields load(final Resource resource) {
+                        return ResourceFields.of(resource, maxArrayElements);
+                    }
+                }
+            );
+
+        private volatile Entry last;
+
+        /**
+         * @param maxArrayElements maximum number of elements kept per array attribute.
+         */
+        Cache(final int maxArrayElements) {
+            this.maxArrayElements = maxArrayElements;
+        }
+
+        /**
+         * Returns the fields for the given resource, converting it if it has not been seen before.
+         *
+         * @param resource to look up, may be null.
+         * @return the resource's fields.
+         */
+        ResourceFields get(final Resource resource) {
+            if (resource == null) {
+                return EMPTY;
+            }
+            final Entry entry = last;
+            if (entry != null && entry.resource == resource) {
+                return entry.fields;
+            }
+            final ResourceFields fields = cache.getUnchecked(resource);
+            last = new Entry(resource, fields);
+            return fields;
+        }
+
+        private static final class Entry {
+            private final Resource resource;
+            private final ResourceFields fields;
+
+            private Entry(final Resource resource, final ResourceFields fields) {
+                this.resource = resource;
+                this.fields = fields;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+
+/**
+ * Helpers for {@link CompletableResultCode}.
+ */
+final class ResultCodes {
+
+    private ResultCodes() {
+    }
+
+    /**
+     * Completes the target like the source once the source has completed.
+     *
+     * @param target the result to complete.
+     * @param source the result to complete it with.
+     */
+    static void completeWith(final CompletableResultCode target, final CompletableResultCode source) {
+        source.whenComplete(() -> {
+            if (source.isSuccess()) {
+                target.succeed();
+            } else {
+                target.fail();
+            }
+        });
+    }
+}
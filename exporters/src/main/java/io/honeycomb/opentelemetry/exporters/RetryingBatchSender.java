@@ -0,0 +1,207 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends batches through another {@link BatchSender}, trying batches again that failed with a retryable status or
+ * could not be sent at all.
+ * <p>
+ * Retries are scheduled on a background thread with exponential backoff and jitter, unless a throttling response
+ * ({@code 429} or {@code 503}) asked for a specific delay with {@code Retry-After}, which is capped at the maximum
+ * backoff so that a misbehaving server cannot hold batches back indefinitely. Batches waiting for a retry are
+ * kept in memory, bounded by a number of bytes; a batch that does not fit, or that has used up its attempts, is
+ * reported to the callback with the outcome of its last attempt. Neither {@link #send} nor the retries ever wait for
+ * a backoff to pass on the caller's thread.
+ * <p>
+ * Once closed, batches still waiting for a retry are reported with the outcome of their last attempt straight away,
+ * so that closing is only held up by the requests that are actually pending in the delegate.
+ */
+final class RetryingBatchSender implements BatchSender {
+    private final BatchSender delegate;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxBufferedBytes;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final Set<Retry> pendingRetries = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    /**
+     * @param delegate             the sender to send each attempt with.
+     * @param maxAttempts          maximum number of attempts per batch, including the first one.
+     * @param initialBackoffMillis base delay before the first retry, which doubles with each further attempt.
+     * @param maxBackoffMillis     upper bound for the backoff delay, and for delays asked for by the server.
+     * @param maxBufferedBytes     maximum size of all batch bodies waiting for a retry.
+     */
+    RetryingBatchSender(final BatchSender delegate, final int maxAttempts, final long initialBackoffMillis,
+                        final long maxBackoffMillis, final long maxBufferedBytes) {
+        this.delegate = delegate;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-batch-retry-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void send(final Batch batch, final Callback callback) {
+        delegate.send(batch, new Attempt(callback, 1));
+    }
+
+    @Override
+    public boolean offer(final Batch batch, final Callback callback) {
+        return delegate.offer(batch, new Attempt(callback, 1));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Retry retry : pendingRetries) {
+            retry.giveUp();
+        }
+        delegate.close();
+    }
+
+    /**
+     * @return the number of bytes of batch bodies currently waiting for a retry.
+     */
+    long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * @return the delay before the given attempt, using "equal jitter": half of the exponential backoff is fixed and
+     * the other half is random, which spreads out retries of concurrent batches without ever retrying immediately.
+     */
+    long backoffMillis(final int attempt) {
+        final long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        final long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    private static boolean isThrottled(final BatchResponse response) {
+        return response.getStatusCode() == 429 || response.getStatusCode() == 503;
+    }
+
+    /**
+     * Receives the outcome of one attempt and schedules the next one if the batch may be retried.
+     */
+    private final class Attempt implements Callback {
+        private final Callback callback;
+        private final int attempt;
+
+        private Attempt(final Callback callback, final int attempt) {
+            this.callback = callback;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void onResponse(final Batch batch, final BatchResponse response) {
+            if (!response.isRetryable()) {
+                callback.onResponse(batch, response);
+                return;
+            }
+            final long delay = isThrottled(response) && response.getRetryAfterMillis() >= 0
+                ? Math.min(response.getRetryAfterMillis(), maxBackoffMillis) : backoffMillis(attempt);
+            if (!retry(batch, delay, response, null)) {
+                callback.onResponse(batch, response);
+            }
+        }
+
+        @Override
+        public void onFailure(final Batch batch, final Exception cause) {
+            if (!retry(batch, backoffMillis(attempt), null, cause)) {
+                callback.onFailure(batch, cause);
+            }
+        }
+
+        private boolean retry(final Batch batch, final long delayMillis, final BatchResponse response,
+                              final Exception cause) {
+            if (closed || attempt >= maxAttempts || !reserve(batch.getBody().length)) {
+                return false;
+            }
+            final Retry retry = new Retry(batch, this, response, cause);
+            pendingRetries.add(retry);
+            try {
+                scheduler.schedule(retry, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                // closed concurrently
+                pendingRetries.remove(retry);
+                bufferedBytes.addAndGet(-batch.getBody().length);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean reserve(final long bytes) {
+            long current;
+            do {
+                current = bufferedBytes.get();
+                if (current + bytes > maxBufferedBytes) {
+                    return false;
+                }
+            } while (!bufferedBytes.compareAndSet(current, current + bytes));
+            return true;
+        }
+    }
+
+    /**
+     * A batch waiting for its next attempt, together with the outcome of its last one.
+     */
+    private final class Retry implements Runnable {
+        private final Batch batch;
+        private final Attempt last;
+        private final BatchResponse response;
+        private final Exception cause;
+
+        private Retry(final Batch batch, final Attempt last, final BatchResponse response, final Exception cause) {
+            this.batch = batch;
+            this.last = last;
+            this.response = response;
+            this.cause = cause;
+        }
+
+        @Override
+        public void run() {
+            if (!pendingRetries.remove(this)) {
+                return;
+            }
+            final Attempt next = new Attempt(last.callback, last.attempt + 1);
+            if (delegate.offer(batch, next)) {
+                bufferedBytes.addAndGet(-batch.getBody().length);
+                return;
+            }
+            // the delegate is saturated, try again later without using up an attempt
+            pendingRetries.add(this);
+            try {
+                scheduler.schedule(this, backoffMillis(last.attempt), TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                giveUp();
+            }
+        }
+
+        private void giveUp() {
+            if (!pendingRetries.remove(this)) {
+                return;
+            }
+            bufferedBytes.addAndGet(-batch.getBody().length);
+            if (response != null) {
+                last.callback.onResponse(batch, response);
+            } else {
+                last.callback.onFailure(batch, cause);
+            }
+        }
+    }
+}
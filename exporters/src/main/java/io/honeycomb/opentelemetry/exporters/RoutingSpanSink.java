@@ -0,0 +1,98 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends spans to one of several sinks, one per route, as decided by a {@link SpanRouter}. Each route batches on its
+ * own, while resources shared by the routes, such as the HTTP client, are closed once every route has shut down.
+ */
+final class RoutingSpanSink implements SpanSink {
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingSpanSink.class);
+
+    private final SpanRouter router;
+    private final List<SpanSink> sinks;
+    private final Closeable shared;
+
+    /**
+     * @param router decides on the index of the route for each span.
+     * @param sinks  the sinks of the routes, by index.
+     * @param shared closed after all sinks have shut down.
+     */
+    RoutingSpanSink(final SpanRouter router, final List<SpanSink> sinks, final Closeable shared) {
+        this.router = router;
+        this.sinks = new ArrayList<>(sinks);
+        this.shared = shared;
+    }
+
+    @Override
+    public CompletableResultCode export(final Collection<SpanData> spans) {
+        final List<List<SpanData>> partitions = new ArrayList<>(sinks.size());
+        for (int i = 0; i < sinks.size(); i++) {
+            partitions.add(null);
+        }
+        for (SpanData span : spans) {
+            final int route = router.route(span);
+            List<SpanData> partition = partitions.get(route);
+            if (partition == null) {
+                partition = new ArrayList<>();
+                partitions.set(route, partition);
+            }
+            partition.add(span);
+        }
+        final List<CompletableResultCode> results = new ArrayList<>(1);
+        for (int i = 0; i < sinks.size(); i++) {
+            if (partitions.get(i) != null) {
+                results.add(sinks.get(i).export(partitions.get(i)));
+            }
+        }
+        return combine(results);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        final List<CompletableResultCode> results = new ArrayList<>(sinks.size());
+        for (SpanSink sink : sinks) {
+            results.add(sink.flush());
+        }
+        return combine(results);
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        final List<CompletableResultCode> results = new ArrayList<>(sinks.size());
+        for (SpanSink sink : sinks) {
+            results.add(sink.shutdown());
+        }
+        try {
+            shared.close();
+        } catch (final IOException e) {
+            LOG.warn("Failed to close resources shared by routes", e);
+        }
+        return combine(results);
+    }
+
+    @Override
+    public int pendingBatches() {
+        int pending = 0;
+        for (SpanSink sink : sinks) {
+            pending += sink.pendingBatches();
+        }
+        return pending;
+    }
+
+    private static CompletableResultCode combine(final List<CompletableResultCode> results) {
+        if (results.isEmpty()) {
+            return CompletableResultCode.ofSuccess();
+        }
+        return results.size() == 1 ? results.get(0) : CompletableResultCode.ofAll(results);
+    }
+}
@@ -0,0 +1,257 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.AttributeType;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.SpanId;
+import io.opentelemetry.trace.StatusCanonicalCode;
+
+import java.util.List;
+
+/**
+ * Converts {@link SpanData} into Honeycomb events, writing every field in a single pass to an {@link EventWriter}.
+ * <p>
+ * Besides the event for the span itself, each span event becomes an event of its own with
+ * {@code meta.annotation_type=span_event}, and each link one with {@code meta.annotation_type=link}, written right
+ * after the span as the span's event and link lists are walked. The number of link events per span is capped.
+ * <p>
+ * A {@code sample.rate} attribute, as recorded by {@code DeterministicTraceSampler}, is sent as the sample rate of
+ * the span's events rather than as a field, multiplied by the rate of a tail sampler if one kept the trace. The
+ * Honeycomb samplers record it on every sampled span when the span starts, child spans included, so it does not
+ * depend on the order spans are exported in. Child spans without one, such as those of a sampler wrapped in
+ * {@code Samplers.parentBased}, are sent at the rate of their trace's local root, provided the root was converted
+ * first.
+ * <p>
+ * The {@code service_name} field is taken from the {@code service.name} attribute of the span's resource, so that
+ * one exporter can serve several logical services, and falls back to the configured service name.
+ * <p>
+ * Instances are thread-safe; the writer passed to {@link #write(SpanData, EventWriter)} is only used by the
+ * calling thread.
+ */
+final class SpanConverter {
+    static final String SPAN_EVENT_ANNOTATION_TYPE = "span_event";
+    static final String LINK_ANNOTATION_TYPE = "link";
+    static final int DEFAULT_MAX_LINKS_PER_SPAN = 128;
+    static final int DEFAULT_MAX_ARRAY_ELEMENTS = 128;
+    /**
+     * The attribute {@code DeterministicTraceSampler} records the sample rate in.
+     */
+    static final String SAMPLE_RATE_ATTRIBUTE = "sample.rate";
+
+    private final String defaultServiceName;
+    private final int maxLinksPerSpan;
+    private final int maxArrayElements;
+    private final ResourceFields.Cache resourceFields;
+    private final TraceSampleRates sampleRates = new TraceSampleRates();
+    private final TraceSampleRates tailSampleRates = new TraceSampleRates();
+
+    SpanConverter(final String serviceName) {
+        this(serviceName, DEFAULT_MAX_LINKS_PER_SPAN, DEFAULT_MAX_ARRAY_ELEMENTS);
+    }
+
+    /**
+     * @param serviceName      the service name added to events of spans whose resource has no {@code service.name}.
+     * @param maxLinksPerSpan  maximum number of link events written per span.
+     * @param maxArrayElements maximum number of elements written per array attribute.
+     */
+    SpanConverter(final String serviceName, final int maxLinksPerSpan, final int maxArrayElements) {
+        this.defaultServiceName = serviceName;
+        this.maxLinksPerSpan = maxLinksPerSpan;
+        this.maxArrayElements = maxArrayElements;
+        this.resourceFields = new ResourceFields.Cache(maxArrayElements);
+    }
+
+    /**
+     * Writes the event(s) for the given span.
+     *
+     * @param span   to convert.
+     * @param writer to write the events to.
+     */
+    void write(final SpanData span, final EventWriter writer) {
+        // resource attributes, converted once per resource
+        final ResourceFields resource = resourceFields.get(span.getResource());
+
+        writer.beginEvent(span.getStartEpochNanos());
+        writer.addField(AttributeNames.SERVICE_NAME_FIELD, serviceName(resource));
+        writer.addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
+        writer.addField(AttributeNames.SPAN_ID_FIELD, span.getSpanId());
+        writer.addDurationField(AttributeNames.DURATION_FIELD,
+            Math.max(0, span.getEndEpochNanos() - span.getStartEpochNanos()));
+
+        if (span.getName() != null && !span.getName().isEmpty()) {
+            writer.addField(AttributeNames.SPAN_NAME_FIELD, span.getName());
+        }
+        if (SpanId.isValid(span.getParentSpanId())) {
+            writer.addField(AttributeNames.PARENT_ID_FIELD, span.getParentSpanId());
+        }
+        if (span.getKind() != null) {
+            writer.addField(AttributeNames.TYPE_FIELD, span.getKind().name());
+        }
+        if (span.getStatus() != null) {
+            addStatusFields(writer, span.getStatus());
+        }
+
+        // span attributes, lifting the sample rate into the event's sample rate
+        final AttributeWriter attributes = new AttributeWriter(writer, true);
+        span.getAttributes().forEach(attributes);
+        final long sampleRate = sampleRate(span, attributes.sampleRate);
+        writer.setSampleRate(sampleRate);
+
+        writer.addFields(resource);
+
+        writer.endEvent();
+
+        final List<SpanData.Event> events = span.getEvents();
+        if (events != null) {
+            // indexed to avoid an iterator per span
+            for (int i = 0; i < events.size(); i++) {
+                writeSpanEvent(span, events.get(i), resource, sampleRate, writer);
+            }
+        }
+
+        final List<SpanData.Link> links = span.getLinks();
+        if (links != null && !links.isEmpty()) {
+            final int count = Math.min(links.size(), maxLinksPerSpan);
+            for (int i = 0; i < count; i++) {
+                writeLink(span, links.get(i), resource, sampleRate, writer);
+            }
+        }
+    }
+
+    /**
+     * Records the rate a tail sampler kept the trace at, which multiplies the rate its spans were sampled at on start.
+     */
+    void recordTailSampleRate(final String traceId, final long sampleRate) {
+        tailSampleRates.record(traceId, sampleRate);
+    }
+
+    /**
+     * Returns the rate the span was sampled at, from its {@code sample.rate} attribute or, for child spans without
+     * one, from its trace's local root. Rates of local roots are remembered for their children, so a child span
+     * without a rate of its own that is converted before its root is sent at a rate of 1 unless a tail sampler held
+     * the trace back.
+     */
+    private long sampleRate(final SpanData span, final long attributeRate) {
+        final long tailRate = tailSampleRates.get(span.getTraceId());
+        if (attributeRate > 0) {
+            if (!SpanId.isValid(span.getParentSpanId()) || span.getHasRemoteParent()) {
+                sampleRates.record(span.getTraceId(), attributeRate);
+            }
+            return attributeRate * tailRate;
+        }
+        return sampleRates.get(span.getTraceId()) * tailRate;
+    }
+
+    private String serviceName(final ResourceFields resource) {
+        final String serviceName = resource.getServiceName();
+        return serviceName != null ? serviceName : defaultServiceName;
+    }
+
+    private void writeSpanEvent(final SpanData span, final SpanData.Event event, final ResourceFields resource,
+                                final long sampleRate, final EventWriter writer) {
+        writer.beginEvent(event.getEpochNanos());
+        writer.addField(AttributeNames.SERVICE_NAME_FIELD, serviceName(resource));
+        writer.addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
+        writer.addField(AttributeNames.PARENT_ID_FIELD, span.getSpanId());
+        writer.addField(AttributeNames.SPAN_NAME_FIELD, event.getName());
+        writer.addField(AttributeNames.ANNOTATION_TYPE_FIELD, SPAN_EVENT_ANNOTATION_TYPE);
+        event.getAttributes().forEach(new AttributeWriter(writer, false));
+        writer.addFields(resource);
+        writer.setSampleRate(sampleRate);
+        writer.endEvent();
+    }
+
+    private void writeLink(final SpanData span, final SpanData.Link link, final ResourceFields resource,
+                           final long sampleRate, final EventWriter writer) {
+        final SpanContext context = link.getContext();
+        writer.beginEvent(span.getStartEpochNanos());
+        writer.addField(AttributeNames.SERVICE_NAME_FIELD, serviceName(resource));
+        writer.addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
+        writer.addField(AttributeNames.PARENT_ID_FIELD, span.getSpanId());
+        writer.addField(AttributeNames.LINK_TRACE_ID_FIELD, context.getTraceIdAsHexString());
+        writer.addField(AttributeNames.LINK_SPAN_ID_FIELD, context.getSpanIdAsHexString());
+        writer.addField(AttributeNames.ANNOTATION_TYPE_FIELD, LINK_ANNOTATION_TYPE);
+        link.getAttributes().forEach(new AttributeWriter(writer, false));
+        writer.addFields(resource);
+        writer.setSampleRate(sampleRate);
+        writer.endEvent();
+    }
+
+    /**
+     * Adds the status code as defined by OTLP, i.e. 0 for unset, 1 for ok and 2 for error, which is how Honeycomb
+     * represents it for data received over OTLP as well. The {@code error} field is only added to failed spans.
+     */
+    private static void addStatusFields(final EventWriter writer, final SpanData.Status status) {
+        final StatusCanonicalCode code = status.getCanonicalCode();
+        if (code != null) {
+            switch (code) {
+                case OK:
+                    writer.addField(AttributeNames.STATUS_CODE_FIELD, 1L);
+                    break;
+                case ERROR:
+                    writer.addField(AttributeNames.STATUS_CODE_FIELD, 2L);
+                    writer.addField(AttributeNames.ERROR_FIELD, true);
+                    break;
+                case UNSET:
+                default:
+                    writer.addField(AttributeNames.STATUS_CODE_FIELD, 0L);
+                    break;
+            }
+        }
+        final String description = status.getDescription();
+        if (description != null && !description.isEmpty()) {
+            writer.addField(AttributeNames.STATUS_MESSAGE_FIELD, description);
+        }
+    }
+
+    /**
+     * Adds attributes as fields, optionally taking the sample rate out of them rather than adding it as a field.
+     */
+    private final class AttributeWriter implements AttributeConsumer {
+        private final EventWriter writer;
+        private final boolean liftSampleRate;
+        private long sampleRate;
+
+        private AttributeWriter(final EventWriter writer, final boolean liftSampleRate) {
+            this.writer = writer;
+            this.liftSampleRate = liftSampleRate;
+        }
+
+        @Override
+        public <T> void consume(final AttributeKey<T> key, final T value) {
+            if (liftSampleRate && key.getType() == AttributeType.LONG && SAMPLE_RATE_ATTRIBUTE.equals(key.getKey())) {
+                sampleRate = (Long) value;
+            } else {
+                addAttributeAsField(writer, key, value);
+            }
+        }
+    }
+
+    private <T> void addAttributeAsField(final EventWriter writer, final AttributeKey<T> key, final T value) {
+        switch(key.getType()) {
+            case STRING:
+                writer.addField(key.getKey(), (String) value);
+                break;
+            case LONG:
+                writer.addField(key.getKey(), (long) value);
+                break;
+            case BOOLEAN:
+                writer.addField(key.getKey(), (boolean) value);
+                break;
+            case DOUBLE:
+                writer.addField(key.getKey(), (double) value);
+                break;
+            case STRING_ARRAY:
+            case LONG_ARRAY:
+            case BOOLEAN_ARRAY:
+            case DOUBLE_ARRAY:
+                writer.addField(key.getKey(), (List<?>) value, maxArrayElements);
+                break;
+            default:
+                // ignore
+                break;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decides which route, i.e. which dataset and write key, a span is sent to, by matching it against a list of rules.
+ * Rules are tried in the order they were added and the first matching rule wins; spans that match no rule go to
+ * the default route.
+ * <p>
+ * Rules on resource attributes are evaluated once per resource: the rules that remain for a resource are turned into
+ * a table indexed by span kind, kept per instrumentation library name if any rule looks at the library. Routing a
+ * span is therefore a cache lookup of its resource followed by an array lookup.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class SpanRouter {
+    private static final int MAXIMUM_RESOURCES = 32;
+    private static final Span.Kind[] KINDS = Span.Kind.values();
+    /**
+     * Index in the kind tables for spans without a kind.
+     */
+    private static final int NO_KIND = KINDS.length;
+
+    private final List<Rule> rules;
+    private final int defaultRoute;
+    private final boolean matchesLibraries;
+    private final LoadingCache<Resource, ResourceRoutes> cache = CacheBuilder.newBuilder()
+        .weakKeys()
+        .maximumSize(MAXIMUM_RESOURCES)
+        .build(
+            new CacheLoader<Resource, ResourceRoutes>() {
+                @Override
+                public ResourceRoutes load(final Resource resource) {
+                    return new ResourceRoutes(resource);
+                }
+            }
+        );
+    private final ResourceRoutes noResource;
+    private volatile ResourceRoutes last;
+
+    /**
+     * @param rules        the rules in the order they are tried.
+     * @param defaultRoute the route of spans that match no rule.
+     */
+    SpanRouter(final List<Rule> rules, final int defaultRoute) {
+        this.rules = new ArrayList<>(rules);
+        this.defaultRoute = defaultRoute;
+        boolean matchesLibraries = false;
+        for (Rule rule : rules) {
+            matchesLibraries |= rule instanceof LibraryRule;
+        }
+        this.matchesLibraries = matchesLibraries;
+        this.noResource = new ResourceRoutes(null);
+    }
+
+    /**
+     * @return the index of the route the span is sent to.
+     */
+    int route(final SpanData span) {
+        final Span.Kind kind = span.getKind();
+        return routes(span.getResource()).forLibrary(span.getInstrumentationLibraryInfo())
+            [kind == null ? NO_KIND : kind.ordinal()];
+    }
+
+    private ResourceRoutes routes(final Resource resource) {
+        if (resource == null) {
+            return noResource;
+        }
+        final ResourceRoutes entry = last;
+        if (entry != null && entry.resource == resource) {
+            return entry;
+        }
+        final ResourceRoutes routes = cache.getUnchecked(resource);
+        last = routes;
+        return routes;
+    }
+
+    static Rule resourceAttribute(final String key, final String value, final int route) {
+        return new ResourceAttributeRule(key, value, route);
+    }
+
+    static Rule spanKind(final Span.Kind kind, final int route) {
+        return new KindRule(kind, route);
+    }
+
+    static Rule instrumentationLibrary(final String name, final int route) {
+        return new LibraryRule(name, route);
+    }
+
+    /**
+     * A condition on a span, together with the route of the spans that meet it.
+     */
+    abstract static class Rule {
+        private final int route;
+
+        private Rule(final int route) {
+            this.route = route;
+        }
+    }
+
+    private static final class ResourceAttributeRule extends Rule {
+        private final AttributeKey<String> key;
+        private final String value;
+
+        private ResourceAttributeRule(final String key, final String value, final int route) {
+            super(route);
+            this.key = AttributeKey.stringKey(key);
+            this.value = value;
+        }
+
+        private boolean matches(final ReadableAttributes attributes) {
+            return attributes != null && value.equals(attributes.get(key));
+        }
+    }
+
+    private static final class KindRule extends Rule {
+        private final Span.Kind kind;
+
+        private KindRule(final Span.Kind kind, final int route) {
+            super(route);
+            this.kind = kind;
+        }
+    }
+
+    private static final class LibraryRule extends Rule {
+        private final String name;
+
+        private LibraryRule(final String name, final int route) {
+            super(route);
+            this.name = name;
+        }
+    }
+
+    /**
+     * The routing tables of one resource.
+     */
+    private final class ResourceRoutes {
+        private final Resource resource;
+        /**
+         * The span kind and library rules that come before the first matching resource rule.
+         */
+        private final List<Rule> remaining = new ArrayList<>();
+        private final int fallback;
+        private final int[] withoutLibrary;
+        private final ConcurrentMap<String, int[]> byLibrary;
+
+        private ResourceRoutes(final Resource resource) {
+            this.resource = resource;
+            final ReadableAttributes attributes = resource == null ? null : resource.getAttributes();
+            int fallback = defaultRoute;
+            for (Rule rule : rules) {
+                if (rule instanceof ResourceAttributeRule) {
+                    if (((ResourceAttributeRule) rule).matches(attributes)) {
+                        fallback = rule.route;
+                        break;
+                    }
+                } else {
+                    remaining.add(rule);
+                }
+            }
+            this.fallback = fallback;
+            this.withoutLibrary = kindTable(null);
+            this.byLibrary = matchesLibraries ? new ConcurrentHashMap<>() : null;
+        }
+
+        private int[] forLibrary(final InstrumentationLibraryInfo library) {
+            if (byLibrary == null || library == null) {
+                return withoutLibrary;
+            }
+            final int[] table = byLibrary.get(library.getName());
+            return table != null ? table : byLibrary.computeIfAbsent(library.getName(), this::kindTable);
+        }
+
+        /**
+         * Routes every span kind for the given library name, or for spans without a library if it is null.
+         */
+        private int[] kindTable(final String libraryName) {
+            final int[] table = new int[KINDS.length + 1];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = match(i == NO_KIND ? null : KINDS[i], libraryName);
+            }
+            return table;
+        }
+
+        private int match(final Span.Kind kind, final String libraryName) {
+            for (Rule rule : remaining) {
+                if (rule instanceof KindRule ? ((KindRule) rule).kind == kind
+                    : ((LibraryRule) rule).name.equals(libraryName)) {
+                    return rule.route;
+                }
+            }
+            return fallback;
+        }
+    }
+}
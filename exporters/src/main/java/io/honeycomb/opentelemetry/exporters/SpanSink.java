@@ -0,0 +1,31 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.Collection;
+
+/**
+ * Delivers exported spans to Honeycomb. {@link HoneycombSpanExporter} delegates to one of the implementations
+ * depending on how it was configured.
+ */
+interface SpanSink {
+
+    CompletableResultCode export(Collection<SpanData> spans);
+
+    /**
+     * Sends anything that is still buffered. The result completes once everything exported before the call has been
+     * delivered or has failed, as far as the implementation is able to track delivery.
+     */
+    CompletableResultCode flush();
+
+    CompletableResultCode shutdown();
+
+    /**
+     * @return the number of batch requests that have been sent, or are waiting to be retried, and have not completed
+     * yet. 0 for implementations that do not send batches themselves.
+     */
+    default int pendingBatches() {
+        return 0;
+    }
+}
@@ -0,0 +1,241 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends batches through another {@link BatchSender}, writing them to a {@link DiskSpool} instead while that sender is
+ * saturated or failing. A background thread replays spooled batches once requests succeed again, sending as many of
+ * the oldest batches at once as the delegate allows pending requests, so that the spool drains at the same rate as
+ * batches are sent directly.
+ * <p>
+ * While the spool holds any batches, new batches are appended to it rather than being sent directly, so that older
+ * batches are delivered first. Batches replayed together may arrive in any order, and a batch that fails while later
+ * ones in the same round are delivered is moved to the back of the spool. A batch that has been written to the spool
+ * is reported as delivered to the callback; its actual delivery is handled by the replay thread.
+ */
+final class SpoolingBatchSender implements BatchSender {
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolingBatchSender.class);
+    // spooled batches are reported as accepted, their delivery is taken care of by the replay thread
+    private static final BatchResponse SPOOLED = new BatchResponse(200, 0);
+
+    private final BatchSender delegate;
+    private final DiskSpool spool;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxConcurrentReplays;
+    private final Thread replayThread;
+    private final Object signal = new Object();
+    private volatile boolean closed;
+
+    /**
+     * @param delegate             the sender to deliver batches with.
+     * @param spool                the spool to write batches to while the delegate is saturated or failing, which
+     *                             must only hold batches for the delegate's dataset, write key and encoding.
+     * @param initialBackoffMillis how long to wait before replaying a batch again after it failed.
+     * @param maxBackoffMillis     upper bound for the wait, which doubles with each consecutive failure.
+     * @param maxConcurrentReplays how many spooled batches to send at once, e.g. the delegate's limit of pending
+     *                             requests.
+     */
+    SpoolingBatchSender(final BatchSender delegate, final DiskSpool spool, final long initialBackoffMillis,
+                        final long maxBackoffMillis, final int maxConcurrentReplays) {
+        this.delegate = delegate;
+        this.spool = spool;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxConcurrentReplays = maxConcurrentReplays;
+        this.replayThread = new Thread(this::replay, "honeycomb-spool-replay");
+        this.replayThread.setDaemon(true);
+        this.replayThread.start();
+    }
+
+    @Override
+    public void send(final Batch batch, final Callback callback) {
+        if (!offer(batch, callback)) {
+            callback.onFailure(batch, new IOException("Batch could not be sent and the spool is full"));
+        }
+    }
+
+    @Override
+    public boolean offer(final Batch batch, final Callback callback) {
+        if (closed) {
+            return delegate.offer(batch, callback);
+        }
+        if (spool.isEmpty() && delegate.offer(batch, new SpoolOnFailure(callback))) {
+            return true;
+        }
+        return spool(batch, callback);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // also wakes the replay thread up if it is waiting for a request slot
+        replayThread.interrupt();
+        try {
+            replayThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+        spool.close();
+    }
+
+    private boolean spool(final Batch batch, final Callback callback) {
+        if (!spool.append(batch.getBody(), batch.getEventCount())) {
+            return false;
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        callback.onResponse(batch, SPOOLED);
+        return true;
+    }
+
+    private void replay() {
+        long backoffMillis = initialBackoffMillis;
+        while (!closed) {
+            final List<DiskSpool.Record> records = spool.peek(maxConcurrentReplays);
+            if (records.isEmpty()) {
+                await(Long.MAX_VALUE);
+                continue;
+            }
+            final CountDownLatch done = new CountDownLatch(records.size());
+            final ReplayCallback[] callbacks = new ReplayCallback[records.size()];
+            for (int i = 0; i < records.size(); i++) {
+                final DiskSpool.Record record = records.get(i);
+                callbacks[i] = new ReplayCallback(done);
+                delegate.send(new Batch(record.getBody(), record.getEventCount(), new CompletableResultCode()),
+                    callbacks[i]);
+            }
+            if (!awaitOutcome(done)) {
+                // closed while requests are pending, the batches are replayed again by the next process
+                break;
+            }
+            if (settle(records, callbacks)) {
+                backoffMillis = initialBackoffMillis;
+            } else {
+                await(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * Removes the replayed batches from the spool up to the last one that was handled. Batches before that one which
+     * must be tried again are appended to the spool once more, whereas failed batches after it simply stay at the head.
+     *
+     * @return whether all batches were handled.
+     */
+    private boolean settle(final List<DiskSpool.Record> records, final ReplayCallback[] callbacks) {
+        int handled = 0;
+        for (int i = 0; i < callbacks.length; i++) {
+            if (!callbacks[i].retry) {
+                handled = i + 1;
+            }
+        }
+        for (int i = 0; i < handled; i++) {
+            final DiskSpool.Record record = records.get(i);
+            if (callbacks[i].retry && !spool.append(record.getBody(), record.getEventCount())) {
+                // the spool is full, so the batches from here on are replayed again, including those already handled
+                return false;
+            }
+            spool.remove();
+        }
+        return handled == callbacks.length;
+    }
+
+    /**
+     * Waits for the outcomes of replayed batches. This does not use {@link CompletableResultCode#join}, which fails the
+     * result when it times out or is interrupted, as that would be mistaken for the batch having been handled.
+     *
+     * @return whether all outcomes are known, false if the sender was closed before they were.
+     */
+    private boolean awaitOutcome(final CountDownLatch done) {
+        try {
+            while (!closed) {
+                if (done.await(100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return done.getCount() == 0;
+    }
+
+    private void await(final long millis) {
+        synchronized (signal) {
+            if (closed || (millis == Long.MAX_VALUE && !spool.isEmpty())) {
+                return;
+            }
+            try {
+                signal.wait(millis == Long.MAX_VALUE ? 0 : millis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+    }
+
+    /**
+     * Passes responses on, unless the batch should be tried again later, in which case it is spooled. This includes
+     * batches failing while the delegate is being closed, which are replayed by the next process.
+     */
+    private final class SpoolOnFailure implements Callback {
+        private final Callback callback;
+
+        private SpoolOnFailure(final Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onResponse(final Batch batch, final BatchResponse response) {
+            if (!response.isRetryable() || !spool(batch, callback)) {
+                callback.onResponse(batch, response);
+            }
+        }
+
+        @Override
+        public void onFailure(final Batch batch, final Exception cause) {
+            if (!spool(batch, callback)) {
+                callback.onFailure(batch, cause);
+            }
+        }
+    }
+
+    /**
+     * Records the outcome of replaying a batch from the spool.
+     */
+    private static final class ReplayCallback implements Callback {
+        private final CountDownLatch done;
+        private volatile boolean retry;
+
+        private ReplayCallback(final CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void onResponse(final Batch batch, final BatchResponse response) {
+            if (response.isRetryable()) {
+                retry = true;
+            } else if (!response.isSuccess()) {
+                LOG.warn("Dropping spooled batch of {} events: {}", batch.getEventCount(), response);
+            }
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(final Batch batch, final Exception cause) {
+            LOG.debug("Failed to replay spooled batch of {} events", batch.getEventCount(), cause);
+            retry = true;
+            done.countDown();
+        }
+    }
+}
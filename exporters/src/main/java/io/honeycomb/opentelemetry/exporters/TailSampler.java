@@ -0,0 +1,164 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.StatusCanonicalCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides on the sample rate of a complete trace, or as much of it as has been buffered, by matching its spans
+ * against a list of rules. Rules are tried in the order they were added and the first matching rule sets the rate;
+ * traces that match no rule are sampled at the default rate.
+ * <p>
+ * A rate of N keeps 1 in N traces, picked deterministically from the trace id, and a rate of 0 drops all matching
+ * traces. The pick hashes the random lower half of the trace id rather than using the SHA-1 based decision of
+ * {@code DeterministicTraceSampler}, so that it is independent of any sampling already applied at the head of the
+ * trace.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class TailSampler {
+    private final List<Rule> rules;
+    private final int defaultRate;
+
+    /**
+     * @param rules       the rules in the order they are tried.
+     * @param defaultRate the sample rate of traces that match no rule.
+     */
+    TailSampler(final List<Rule> rules, final int defaultRate) {
+        this.rules = new ArrayList<>(rules);
+        this.defaultRate = defaultRate;
+    }
+
+    /**
+     * @param traceId the id of the trace.
+     * @param spans   the spans of the trace that have ended so far.
+     * @return the rate the trace is kept at, or 0 if it is dropped.
+     */
+    int sample(final String traceId, final List<SpanData> spans) {
+        int rate = defaultRate;
+        for (Rule rule : rules) {
+            if (rule.matches(spans)) {
+                rate = rule.rate;
+                break;
+            }
+        }
+        return keeps(traceId, rate) ? rate : 0;
+    }
+
+    static Rule errors(final int rate) {
+        return new ErrorRule(rate);
+    }
+
+    static Rule minDuration(final long durationNanos, final int rate) {
+        return new DurationRule(durationNanos, rate);
+    }
+
+    static Rule attribute(final String key, final String value, final int rate) {
+        return new AttributeRule(key, value, rate);
+    }
+
+    static boolean keeps(final String traceId, final int rate) {
+        if (rate <= 1) {
+            return rate == 1;
+        }
+        return Long.remainderUnsigned(mix(lowerBits(traceId)), rate) == 0;
+    }
+
+    /**
+     * Parses the last 16 hex digits of the trace id without allocating, ignoring any invalid digits.
+     */
+    private static long lowerBits(final String traceId) {
+        long bits = 0;
+        for (int i = Math.max(0, traceId.length() - 16); i < traceId.length(); i++) {
+            bits = bits << 4 | (Character.digit(traceId.charAt(i), 16) & 0xf);
+        }
+        return bits;
+    }
+
+    /**
+     * The finalizer of SplitMix64, spreading trace ids that differ in a few bits across the whole range.
+     */
+    private static long mix(final long bits) {
+        long z = bits;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A condition on a trace, together with the sample rate of the traces that meet it.
+     */
+    abstract static class Rule {
+        private final int rate;
+
+        private Rule(final int rate) {
+            this.rate = rate;
+        }
+
+        abstract boolean matches(List<SpanData> spans);
+    }
+
+    private static final class ErrorRule extends Rule {
+        private ErrorRule(final int rate) {
+            super(rate);
+        }
+
+        @Override
+        boolean matches(final List<SpanData> spans) {
+            for (int i = 0; i < spans.size(); i++) {
+                final SpanData.Status status = spans.get(i).getStatus();
+                if (status != null && status.getCanonicalCode() == StatusCanonicalCode.ERROR) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches traces that took at least the given time, from the start of the earliest span to the end of the latest.
+     */
+    private static final class DurationRule extends Rule {
+        private final long durationNanos;
+
+        private DurationRule(final long durationNanos, final int rate) {
+            super(rate);
+            this.durationNanos = durationNanos;
+        }
+
+        @Override
+        boolean matches(final List<SpanData> spans) {
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            for (int i = 0; i < spans.size(); i++) {
+                start = Math.min(start, spans.get(i).getStartEpochNanos());
+                end = Math.max(end, spans.get(i).getEndEpochNanos());
+            }
+            return !spans.isEmpty() && end - start >= durationNanos;
+        }
+    }
+
+    private static final class AttributeRule extends Rule {
+        private final AttributeKey<String> key;
+        private final String value;
+
+        private AttributeRule(final String key, final String value, final int rate) {
+            super(rate);
+            this.key = AttributeKey.stringKey(key);
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(final List<SpanData> spans) {
+            for (int i = 0; i < spans.size(); i++) {
+                if (value.equals(spans.get(i).getAttributes().get(key))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.SpanId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds spans back per trace until a {@link TailSampler} has decided on the trace, and passes only the spans of kept
+ * traces on to another sink.
+ * <p>
+ * A trace is decided once its local root span, i.e. a span without a parent or with a remote parent, has ended, or
+ * once its first span has waited for {@code decisionWaitMillis}. The spans held back are capped by an estimate of
+ * their size in memory: once the cap is exceeded, the traces that arrived first are decided early with the spans
+ * they have so far. Decisions are remembered for a while, so that spans ending after their trace was decided are
+ * kept or dropped along with it.
+ * <p>
+ * Kept traces carry their tail sample rate on top of any {@code sample.rate} they were sampled at on start, see
+ * {@link SpanConverter#recordTailSampleRate(String, long)}. The spans of a kept trace are passed on with its local
+ * root first, so that child spans ending before their root still get the root's sample rate. The decisions hold the
+ * tail sample rates as well, and the rate is recorded again whenever a straggler is passed on, so that it is sent
+ * with its trace's tail rate even if the converter no longer remembers it.
+ */
+final class TailSamplingSpanSink implements SpanSink {
+    private static final int MAXIMUM_DECISIONS = 32 * 1024;
+    private static final long DECISION_EXPIRY_MINUTES = 5;
+    // rough per-object costs of a span snapshot, only used to bound the buffer
+    private static final int SPAN_BYTES = 256;
+    private static final int ATTRIBUTE_BYTES = 64;
+    private static final int EVENT_BYTES = 128;
+    private static final int LINK_BYTES = 96;
+
+    private final SpanSink delegate;
+    private final TailSampler sampler;
+    private final SpanConverter converter;
+    private final long maxBufferedBytes;
+    private final long decisionWaitNanos;
+    private final ScheduledExecutorService timer;
+    // ordered by the arrival of the first span of each trace
+    private final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>();
+    private final Cache<String, Integer> decisions = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_DECISIONS)
+        .expireAfterWrite(DECISION_EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+    private long bufferedBytes;
+    private boolean shutdown;
+
+    /**
+     * @param delegate           the sink to pass the spans of kept traces to, owned by this sink.
+     * @param sampler            decides on traces.
+     * @param converter          the converter used by the delegate, which the tail sample rates are recorded with.
+     * @param maxBufferedBytes   upper bound for the estimated size of the spans held back.
+     * @param decisionWaitMillis how long a trace waits for its local root span before it is decided regardless.
+     */
+    TailSamplingSpanSink(final SpanSink delegate, final TailSampler sampler, final SpanConverter converter,
+                         final long maxBufferedBytes, final long decisionWaitMillis) {
+        this.delegate = delegate;
+        this.sampler = sampler;
+        this.converter = converter;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.decisionWaitNanos = TimeUnit.MILLISECONDS.toNanos(decisionWaitMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-tail-sampling-%d").setDaemon(true).build());
+        final long checkMillis = Math.max(1, decisionWaitMillis / 4);
+        this.timer.scheduleWithFixedDelay(this::decideExpired, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Holds the spans back until their traces are decided, passing on spans of traces that have been decided and
+     * kept. The result covers the spans passed on by this call only.
+     */
+    @Override
+    public CompletableResultCode export(final Collection<SpanData> spans) {
+        final List<SpanData> kept = new ArrayList<>();
+        synchronized (this) {
+            if (shutdown) {
+                return CompletableResultCode.ofFailure();
+            }
+            for (SpanData span : spans) {
+                add(span, kept);
+            }
+            while (bufferedBytes > maxBufferedBytes && !pending.isEmpty()) {
+                decide(pending.keySet().iterator().next(), kept);
+            }
+        }
+        return kept.isEmpty() ? CompletableResultCode.ofSuccess() : delegate.export(kept);
+    }
+
+    /**
+     * Flushes the delegate. Traces that have not been decided yet keep waiting for their local root span.
+     */
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    /**
+     * Decides on all traces that are still waiting, with the spans they have so far, and shuts the delegate down.
+     */
+    @Override
+    public CompletableResultCode shutdown() {
+        final List<SpanData> kept = new ArrayList<>();
+        synchronized (this) {
+            if (shutdown) {
+                return CompletableResultCode.ofSuccess();
+            }
+            shutdown = true;
+            while (!pending.isEmpty()) {
+                decide(pending.keySet().iterator().next(), kept);
+            }
+        }
+        timer.shutdownNow();
+        if (!kept.isEmpty()) {
+            delegate.export(kept);
+        }
+        return delegate.shutdown();
+    }
+
+    @Override
+    public int pendingBatches() {
+        return delegate.pendingBatches();
+    }
+
+    /**
+     * @return the estimated size of the spans held back.
+     */
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private void add(final SpanData span, final List<SpanData> kept) {
+        final String traceId = span.getTraceId();
+        final Integer decision = decisions.getIfPresent(traceId);
+        if (decision != null) {
+            // a straggler of a decided trace
+            if (decision > 0) {
+                converter.recordTailSampleRate(traceId, decision);
+                kept.add(span);
+            }
+            return;
+        }
+        PendingTrace trace = pending.get(traceId);
+        if (trace == null) {
+            trace = new PendingTrace(System.nanoTime());
+            pending.put(traceId, trace);
+        }
+        final long bytes = estimateBytes(span);
+        trace.spans.add(span);
+        trace.bytes += bytes;
+        bufferedBytes += bytes;
+        if (isLocalRoot(span)) {
+            decide(traceId, kept);
+        }
+    }
+
+    private void decide(final String traceId, final List<SpanData> kept) {
+        final PendingTrace trace = pending.remove(traceId);
+        bufferedBytes -= trace.bytes;
+        final int rate = sampler.sample(traceId, trace.spans);
+        decisions.put(traceId, rate);
+        if (rate > 0) {
+            converter.recordTailSampleRate(traceId, rate);
+            // the local root goes first, so that the converter knows its sample rate when it reaches its children
+            final int firstChild = kept.size();
+            for (SpanData span : trace.spans) {
+                if (isLocalRoot(span)) {
+                    kept.add(firstChild, span);
+                } else {
+                    kept.add(span);
+                }
+            }
+        }
+    }
+
+    private static boolean isLocalRoot(final SpanData span) {
+        return !SpanId.isValid(span.getParentSpanId()) || span.getHasRemoteParent();
+    }
+
+    private void decideExpired() {
+        final List<SpanData> kept = new ArrayList<>();
+        synchronized (this) {
+            final long now = System.nanoTime();
+            while (!pending.isEmpty()) {
+                final Map.Entry<String, PendingTrace> oldest = pending.entrySet().iterator().next();
+                if (now - oldest.getValue().firstSpanNanos < decisionWaitNanos) {
+                    // the traces after it arrived later
+                    break;
+                }
+                decide(oldest.getKey(), kept);
+            }
+        }
+        if (!kept.isEmpty()) {
+            delegate.export(kept);
+        }
+    }
+
+    private static long estimateBytes(final SpanData span) {
+        final String name = span.getName();
+        return SPAN_BYTES + (name == null ? 0 : 2L * name.length())
+            + (long) ATTRIBUTE_BYTES * span.getAttributes().size()
+            + (long) EVENT_BYTES * span.getEvents().size()
+            + (long) LINK_BYTES * span.getLinks().size();
+    }
+
+    /**
+     * The spans of a trace that has not been decided yet.
+     */
+    private static final class PendingTrace {
+        private final long firstSpanNanos;
+        private final List<SpanData> spans = new ArrayList<>();
+        private long bytes;
+
+        private PendingTrace(final long firstSpanNanos) {
+            this.firstSpanNanos = firstSpanNanos;
+        }
+    }
+}
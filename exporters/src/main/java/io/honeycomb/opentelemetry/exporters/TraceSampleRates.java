@@ -0,0 +1,47 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers a sample rate per trace. The converter keeps the rate that the local root span of a trace was sampled
+ * at, so that child spans, which a parent-based sampler does not annotate with a {@code sample.rate} attribute, can be
+ * sent with the same rate, as well as the rate a tail sampler kept the trace at.
+ * <p>
+ * Entries for local roots are recorded when a root span carrying a rate is converted, so only child spans converted
+ * after their root benefit. Tail sampling passes the local root of a kept trace on first for this reason. The number
+ * of traces is bounded and entries expire, so long-running processes do not accumulate them.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class TraceSampleRates {
+    private static final int MAXIMUM_SIZE = 16 * 1024;
+    private static final long EXPIRY_MINUTES = 5;
+
+    private final Cache<String, Long> rates = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * Records the sample rate of a trace. Rates of 1 or less are not recorded, since they are the default.
+     */
+    void record(final String traceId, final long sampleRate) {
+        if (sampleRate > 1) {
+            rates.put(traceId, sampleRate);
+        }
+    }
+
+    /**
+     * @return the sample rate recorded for the trace, or 1 if none was recorded.
+     */
+    long get(final String traceId) {
+        if (rates.size() == 0) {
+            return 1;
+        }
+        final Long sampleRate = rates.getIfPresent(traceId);
+        return sampleRate == null ? 1 : sampleRate;
+    }
+}
@@ -0,0 +1,32 @@
+package io.honeycomb.opentelemetry.exporters;
+
+/**
+ * How the thread that batches spans waits for spans to arrive while its queue is empty. Threads that end spans never
+ * wait; the strategies trade the latency of picking up a span against the CPU time the batching thread burns while
+ * idle.
+ */
+public enum WaitStrategy {
+    /**
+     * Sleep until a span arrives. Idle batching threads use no CPU, but the thread ending a span has to wake the
+     * batching thread up, which costs a lock acquisition whenever the batching thread is asleep.
+     */
+    BLOCKING,
+
+    /**
+     * Poll the queue, sleeping for a short while between polls. Threads ending spans never have to wake the batching
+     * thread, at the cost of up to 100 microseconds of pickup latency and a few wakeups per millisecond while idle.
+     */
+    SLEEPING,
+
+    /**
+     * Poll the queue, yielding the CPU between polls. Low pickup latency while other threads can still be scheduled,
+     * but keeps a core busy when the machine is otherwise idle.
+     */
+    YIELDING,
+
+    /**
+     * Poll the queue in a tight loop. Lowest pickup latency, but permanently occupies a core, so only suitable when
+     * a core can be dedicated to the batching thread.
+     */
+    BUSY_SPIN
+}
@@ -0,0 +1,783 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import com.sun.net.httpserver.HttpServer;
+import io.honeycomb.libhoney.EventPostProcessor;
+import io.honeycomb.libhoney.ResponseObserver;
+import io.honeycomb.libhoney.ValueSupplier;
+import io.honeycomb.libhoney.transport.Transport;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.ImmutableEvent;
+import io.opentelemetry.sdk.trace.data.ImmutableLink;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Sends spans through the batch API path to a local stand-in for the Honeycomb API.
+ */
+public class BatchingSpanSinkTest {
+
+    private final String serviceName = "my-service";
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private volatile CountDownLatch responseGate = new CountDownLatch(0);
+    private volatile int responseStatus = 200;
+    private volatile String responseBody = "[{\"status\":202}]";
+    private final AtomicInteger throttledResponses = new AtomicInteger();
+    private HttpServer server;
+
+    @TempDir
+    Path spoolDirectory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        startServer(0);
+    }
+
+    private void startServer(final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/1/batch/", exchange -> {
+            requests.add(new Request(exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders().getFirst("X-Honeycomb-Team"),
+                exchange.getRequestHeaders().getFirst("Content-Type"),
+                readAll(exchange.getRequestBody())));
+            try {
+                responseGate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = responseBody.getBytes(StandardCharsets.UTF_8);
+            if (throttledResponses.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(429, response.length);
+            } else {
+                exchange.sendResponseHeaders(responseStatus, response.length);
+            }
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void sendsFullBatchesToBatchApi() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(2)
+            .batchTimeoutMillis(60_000)
+            .build();
+
+        CompletableResultCode result = exporter.export(Arrays.asList(span("a"), span("b"), span("c")));
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("/1/batch/my dataset", request.path);
+        assertEquals("write-key", request.writeKey);
+        assertTrue(request.contentType.startsWith("application/json"));
+        assertEquals("[{\"time\":\"1970-01-01T00:01:40.000000Z\",\"data\":{\"global\":\"value\","
+                + "\"service_name\":\"my-service\",\"trace.trace_id\":\"000000000063d76f0000000037fe0393\","
+                + "\"trace.span_id\":\"000000000012d685\",\"duration_ms\":200000.0,\"name\":\"a\","
+                + "\"trace.parent_id\":\"100000000012d685\",\"type\":\"SERVER\",\"sLong\":120,"
+                + "\"sString\":\"stringValue\"},\"samplerate\":1},",
+            request.body.substring(0, request.body.indexOf(",{\"time\"") + 1));
+        assertEquals(2, countEvents(request.body));
+        assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+
+        // the last span is still waiting in a partially filled batch
+        assertFalse(result.isDone());
+
+        exporter.shutdown();
+        Request remainder = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(remainder);
+        assertEquals(1, countEvents(remainder.body));
+        assertTrue(remainder.body.contains("\"name\":\"c\""));
+        assertTrue(result.join(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void exportCompletesOnceItsBatchesAreAcknowledged() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(2)
+            .batchTimeoutMillis(60_000)
+            .build();
+        responseGate = new CountDownLatch(1);
+
+        CompletableResultCode result = exporter.export(Arrays.asList(span("a"), span("b")));
+
+        assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        assertEquals(1, exporter.getPendingBatches());
+
+        responseGate.countDown();
+        assertTrue(result.join(5, TimeUnit.SECONDS).isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void exportFailsWhenItsBatchFails() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .build();
+        responseStatus = 500;
+        responseBody = "";
+
+        CompletableResultCode result = exporter.export(Arrays.asList(span("a"), span("b")));
+
+        assertTrue(result.join(5, TimeUnit.SECONDS).isDone());
+        assertFalse(result.isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void exportFailsWhenSpanCannotBeConverted() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .build();
+        SpanData broken = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setAttributes(null)
+            .build();
+
+        CompletableResultCode result = exporter.export(Arrays.asList(span("a"), broken));
+        exporter.flush();
+
+        assertTrue(result.join(5, TimeUnit.SECONDS).isDone());
+        assertFalse(result.isSuccess());
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(1, countEvents(request.body));
+        exporter.shutdown();
+    }
+
+    @Test
+    public void streamsSpanEventsAcrossBatches() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(2)
+            .batchTimeoutMillis(60_000)
+            .build();
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setName("a")
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(300))
+            .setEvents(Arrays.asList(
+                ImmutableEvent.create(TimeUnit.SECONDS.toNanos(150), "first", Attributes.empty()),
+                ImmutableEvent.create(TimeUnit.SECONDS.toNanos(160), "second",
+                    Attributes.of(AttributeKey.longKey("attempt"), 2L))))
+            .build();
+
+        CompletableResultCode result = exporter.export(Arrays.asList(span));
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(2, countEvents(request.body));
+        assertTrue(request.body.endsWith("{\"time\":\"1970-01-01T00:02:30.000000Z\",\"data\":{\"global\":\"value\","
+            + "\"service_name\":\"my-service\",\"trace.trace_id\":\"000000000063d76f0000000037fe0393\","
+            + "\"trace.parent_id\":\"000000000012d685\",\"name\":\"first\","
+            + "\"meta.annotation_type\":\"span_event\"},\"samplerate\":1}]"), request.body);
+        assertFalse(result.isDone());
+
+        exporter.flush();
+        Request remainder = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(remainder);
+        assertEquals(1, countEvents(remainder.body));
+        assertTrue(remainder.body.contains("\"name\":\"second\",\"meta.annotation_type\":\"span_event\",\"attempt\":2"),
+            remainder.body);
+        assertTrue(result.join(5, TimeUnit.SECONDS).isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void capsLinksPerSpan() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .maxLinksPerSpan(2)
+            .build();
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setName("a")
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(300))
+            .setLinks(Arrays.asList(link("0000000000000001"), link("0000000000000002"), link("0000000000000003")))
+            .build();
+
+        exporter.export(Arrays.asList(span));
+        exporter.flush();
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(3, countEvents(request.body));
+        assertTrue(request.body.endsWith("{\"time\":\"1970-01-01T00:01:40.000000Z\",\"data\":{\"global\":\"value\","
+            + "\"service_name\":\"my-service\",\"trace.trace_id\":\"000000000063d76f0000000037fe0393\","
+            + "\"trace.parent_id\":\"000000000012d685\","
+            + "\"trace.link.trace_id\":\"0000000000000000000000000000abcd\","
+            + "\"trace.link.span_id\":\"0000000000000002\",\"meta.annotation_type\":\"link\"},\"samplerate\":1}]"),
+            request.body);
+        exporter.shutdown();
+    }
+
+    @Test
+    public void sendsPartialBatchesAfterTimeout() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(100)
+            .batchTimeoutMillis(50)
+            .build();
+
+        exporter.export(Arrays.asList(span("a")));
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(1, countEvents(request.body));
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushSendsPartialBatch() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(100)
+            .batchTimeoutMillis(60_000)
+            .build();
+
+        exporter.export(Arrays.asList(span("a"), span("b")));
+        assertTrue(exporter.flush().join(5, TimeUnit.SECONDS).isSuccess());
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(2, countEvents(request.body));
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushCompletesOnceBatchesAreAcknowledged() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(2)
+            .batchTimeoutMillis(60_000)
+            .build();
+        responseGate = new CountDownLatch(1);
+
+        exporter.export(Arrays.asList(span("a"), span("b"), span("c")));
+        CompletableResultCode result = exporter.flush();
+
+        assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+
+        responseGate.countDown();
+        assertTrue(result.join(5, TimeUnit.SECONDS).isSuccess());
+        assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        assertTrue(exporter.flush().join(5, TimeUnit.SECONDS).isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushFailsWhenBatchIsRejected() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .build();
+        responseStatus = 400;
+        responseBody = "{\"error\":\"unknown API key\"}";
+
+        exporter.export(Arrays.asList(span("a")));
+        CompletableResultCode result = exporter.flush().join(5, TimeUnit.SECONDS);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushFailsWhenEventsAreRejected() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .build();
+        responseBody = "[{\"status\":202},{\"status\":400,\"error\":\"bad\"}]";
+
+        exporter.export(Arrays.asList(span("a"), span("b")));
+        CompletableResultCode result = exporter.flush().join(5, TimeUnit.SECONDS);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushFailsWhenServerIsUnreachable() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .build();
+        server.stop(0);
+
+        exporter.export(Arrays.asList(span("a")));
+        CompletableResultCode result = exporter.flush().join(5, TimeUnit.SECONDS);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void retriesThrottledBatches() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .maxRetryAttempts(3)
+            .retryBackoff(60_000, 60_000)
+            .build();
+        throttledResponses.set(2);
+
+        exporter.export(Arrays.asList(span("a")));
+        CompletableResultCode result = exporter.flush().join(5, TimeUnit.SECONDS);
+
+        // Retry-After takes precedence over the backoff
+        assertTrue(result.isSuccess());
+        for (int i = 0; i < 3; i++) {
+            Request request = requests.poll(1, TimeUnit.SECONDS);
+            assertNotNull(request);
+            assertEquals(1, countEvents(request.body));
+        }
+        exporter.shutdown();
+    }
+
+    @Test
+    public void flushFailsOnceRetriesAreUsedUp() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchTimeoutMillis(60_000)
+            .maxRetryAttempts(2)
+            .retryBackoff(1, 10)
+            .build();
+        responseStatus = 500;
+
+        exporter.export(Arrays.asList(span("a")));
+        CompletableResultCode result = exporter.flush().join(5, TimeUnit.SECONDS);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        assertEquals(2, requests.size());
+        exporter.shutdown();
+    }
+
+    @Test
+    public void spoolsBatchesWhileServerIsDownAndReplaysThem() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+        int port = server.getAddress().getPort();
+        server.stop(0);
+
+        for (String name : Arrays.asList("a", "b", "c")) {
+            // spooled batches count as delivered
+            assertTrue(exporter.export(Arrays.asList(span(name))).join(5, TimeUnit.SECONDS).isSuccess());
+        }
+        assertTrue(requests.isEmpty());
+
+        startServer(port);
+        assertReplayed("a", "b", "c");
+        assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+        exporter.shutdown();
+    }
+
+    @Test
+    public void replaysSpooledBatchesAfterRestart() throws Exception {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+        for (String name : Arrays.asList("a", "b")) {
+            assertTrue(exporter.export(Arrays.asList(span(name))).join(5, TimeUnit.SECONDS).isSuccess());
+        }
+        exporter.shutdown();
+
+        startServer(port);
+        HoneycombSpanExporter restarted = newBuilder()
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+
+        assertReplayed("a", "b");
+        restarted.shutdown();
+    }
+
+    @Test
+    public void replaysSpooledBatchesOnlyWithTheirEncoding() throws Exception {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+        assertTrue(exporter.export(Arrays.asList(span("a"))).join(5, TimeUnit.SECONDS).isSuccess());
+        exporter.shutdown();
+
+        startServer(port);
+        HoneycombSpanExporter msgPack = newBuilder()
+            .batchEncoding(BatchEncoding.MSGPACK)
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+        // the JSON batch must not go out with the MessagePack content type
+        assertNull(requests.poll(500, TimeUnit.MILLISECONDS));
+        msgPack.shutdown();
+
+        HoneycombSpanExporter json = newBuilder()
+            .spool(spoolDirectory, 1024 * 1024)
+            .build();
+        Request request = requests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertTrue(request.contentType.startsWith("application/json"));
+        assertTrue(request.body.contains("\"name\":\"a\""));
+        json.shutdown();
+    }
+
+    @Test
+    public void spoolAndRetriesRequireBatchEncoding() {
+        assertThrows(IllegalStateException.class,
+            () -> HoneycombSpanExporter.newBuilder(serviceName).writeKey("key").dataSet("set")
+                .spool(spoolDirectory, 1024 * 1024).build());
+        assertThrows(IllegalStateException.class,
+            () -> HoneycombSpanExporter.newBuilder(serviceName).writeKey("key").dataSet("set")
+                .maxRetryAttempts(2).build());
+        assertThrows(IllegalStateException.class,
+            () -> HoneycombSpanExporter.newBuilder(serviceName).writeKey("key").dataSet("set")
+                .routeBySpanKind(Kind.CLIENT, "clients", null).build());
+    }
+
+    @Test
+    public void libhoneyOptionsAreRejectedWithBatchEncoding() {
+        assertThrows(IllegalStateException.class,
+            () -> newBuilder().addGlobalDynamicFields("name", mock(ValueSupplier.class)).build());
+        assertThrows(IllegalStateException.class,
+            () -> newBuilder().addResponseObserver(mock(ResponseObserver.class)).build());
+        assertThrows(IllegalStateException.class,
+            () -> newBuilder().eventPostProcessor(mock(EventPostProcessor.class)).build());
+        assertThrows(IllegalStateException.class,
+            () -> newBuilder().transport(mock(Transport.class)).build());
+    }
+
+    @Test
+    public void splitsSpoolSizeBetweenRoutes() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .routeBySpanKind(Kind.CLIENT, "clients", null)
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .spool(spoolDirectory, 2 * 1024 * 1024)
+            .build();
+        server.stop(0);
+        SpanData client = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setName("client")
+            .setKind(Kind.CLIENT)
+            .build();
+
+        assertTrue(exporter.export(Arrays.asList(span("a"), client)).join(5, TimeUnit.SECONDS).isSuccess());
+
+        List<Path> directories;
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            directories = files.collect(Collectors.toList());
+        }
+        assertEquals(2, directories.size());
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.list(directory)) {
+                List<Path> segments = files.filter(file -> file.toString().endsWith(".seg"))
+                    .collect(Collectors.toList());
+                assertEquals(1, segments.size(), directory.toString());
+                assertEquals(1024 * 1024, Files.size(segments.get(0)));
+            }
+        }
+        exporter.shutdown();
+    }
+
+    @Test
+    public void replaysSpooledBatchesToTheirDatasetAfterRoutesAreReordered() throws Exception {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        SpanData client = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setName("client")
+            .setKind(Kind.CLIENT)
+            .build();
+        SpanData producer = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d687")
+            .setName("producer")
+            .setKind(Kind.PRODUCER)
+            .build();
+        HoneycombSpanExporter exporter = newBuilder()
+            .routeBySpanKind(Kind.CLIENT, "clients", null)
+            .routeBySpanKind(Kind.PRODUCER, "producers", "producer-key")
+            .batchSize(1)
+            .batchTimeoutMillis(60_000)
+            .spool(spoolDirectory, 3 * 1024 * 1024)
+            .build();
+        assertTrue(exporter.export(Arrays.asList(client, producer)).join(5, TimeUnit.SECONDS).isSuccess());
+        exporter.shutdown();
+
+        startServer(port);
+        HoneycombSpanExporter restarted = newBuilder()
+            .routeBySpanKind(Kind.PRODUCER, "producers", "producer-key")
+            .routeBySpanKind(Kind.CLIENT, "clients", null)
+            .spool(spoolDirectory, 3 * 1024 * 1024)
+            .build();
+
+        Map<String, Request> byPath = new LinkedHashMap<>();
+        for (int i = 0; i < 2; i++) {
+            Request request = requests.poll(10, TimeUnit.SECONDS);
+            assertNotNull(request);
+            byPath.put(request.path, request);
+        }
+        assertTrue(byPath.get("/1/batch/clients").body.contains("\"name\":\"client\""));
+        assertEquals("write-key", byPath.get("/1/batch/clients").writeKey);
+        assertTrue(byPath.get("/1/batch/producers").body.contains("\"name\":\"producer\""));
+        assertEquals("producer-key", byPath.get("/1/batch/producers").writeKey);
+        assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void routesSpansToDatasetsWithSeparateBatches() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .routeByResourceAttribute("service.name", "checkout", "checkout", "checkout-key")
+            .routeBySpanKind(Kind.CLIENT, "clients", null)
+            .routeByInstrumentationLibrary("jdbc", "clients", null)
+            .batchSize(10)
+            .batchTimeoutMillis(60_000)
+            .build();
+        Resource checkout = Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "checkout"));
+        SpanData client = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setName("client")
+            .setKind(Kind.CLIENT)
+            .build();
+        SpanData query = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d687")
+            .setName("query")
+            .setInstrumentationLibraryInfo(InstrumentationLibraryInfo.create("jdbc", null))
+            .build();
+        SpanData checkoutClient = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d688")
+            .setName("checkout")
+            .setKind(Kind.CLIENT)
+            .setResource(checkout)
+            .build();
+
+        exporter.export(Arrays.asList(span("a"), client, query, checkoutClient, span("b")));
+        assertTrue(exporter.flush().join(5, TimeUnit.SECONDS).isSuccess());
+
+        Map<String, Request> byPath = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            Request request = requests.poll(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            byPath.put(request.path, request);
+        }
+        assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, countEvents(byPath.get("/1/batch/my dataset").body));
+        assertEquals("write-key", byPath.get("/1/batch/my dataset").writeKey);
+        assertEquals(2, countEvents(byPath.get("/1/batch/clients").body));
+        assertEquals("write-key", byPath.get("/1/batch/clients").writeKey);
+        assertTrue(byPath.get("/1/batch/clients").body.contains("\"name\":\"query\""));
+        assertEquals(1, countEvents(byPath.get("/1/batch/checkout").body));
+        assertEquals("checkout-key", byPath.get("/1/batch/checkout").writeKey);
+        assertTrue(exporter.shutdown().join(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void sendsMsgPackBatches() throws Exception {
+        HoneycombSpanExporter exporter = newBuilder()
+            .batchEncoding(BatchEncoding.MSGPACK)
+            .batchSize(2)
+            .batchTimeoutMillis(60_000)
+            .build();
+
+        exporter.export(Arrays.asList(span("a"), span("b")));
+
+        Request request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("/1/batch/my dataset", request.path);
+        assertEquals("write-key", request.writeKey);
+        assertEquals("application/msgpack", request.contentType);
+
+        List<MsgPackBatch.Event> events = MsgPackBatch.decode(request.bytes);
+        assertEquals(2, events.size());
+        MsgPackBatch.Event event = events.get(0);
+        assertEquals(Instant.ofEpochSecond(100), event.time);
+        assertEquals(1, event.sampleRate);
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("global", "value");
+        expected.put(AttributeNames.SERVICE_NAME_FIELD, serviceName);
+        expected.put(AttributeNames.TRACE_ID_FIELD, "000000000063d76f0000000037fe0393");
+        expected.put(AttributeNames.SPAN_ID_FIELD, "000000000012d685");
+        expected.put(AttributeNames.DURATION_FIELD, 200000.0);
+        expected.put(AttributeNames.SPAN_NAME_FIELD, "a");
+        expected.put(AttributeNames.PARENT_ID_FIELD, "100000000012d685");
+        expected.put(AttributeNames.TYPE_FIELD, "SERVER");
+        expected.put("sLong", 120L);
+        expected.put("sString", "stringValue");
+        assertEquals(expected, event.data);
+        assertEquals("b", events.get(1).data.get(AttributeNames.SPAN_NAME_FIELD));
+        exporter.shutdown();
+    }
+
+    @Test
+    public void exportAfterShutdownFails() {
+        HoneycombSpanExporter exporter = newBuilder().build();
+        exporter.shutdown();
+
+        assertFalse(exporter.export(Arrays.asList(span("a"))).isSuccess());
+    }
+
+    @Test
+    public void requiresWriteKeyAndDataSet() {
+        assertThrows(IllegalArgumentException.class,
+            () -> HoneycombSpanExporter.newBuilder(serviceName).dataSet("set").batchEncoding(BatchEncoding.JSON).build());
+        assertThrows(IllegalArgumentException.class,
+            () -> HoneycombSpanExporter.newBuilder(serviceName).writeKey("key").batchEncoding(BatchEncoding.JSON).build());
+    }
+
+    @Test
+    public void rejectsSpoolAndRetryBufferWithoutSpace() {
+        assertThrows(IllegalArgumentException.class, () -> newBuilder().spool(spoolDirectory, 0));
+        assertThrows(IllegalArgumentException.class, () -> newBuilder().spool(spoolDirectory, -1));
+        assertThrows(IllegalArgumentException.class, () -> newBuilder().spool(null, 1024));
+        assertThrows(IllegalArgumentException.class, () -> newBuilder().retryBufferBytes(0));
+        assertThrows(IllegalArgumentException.class, () -> newBuilder().retryBufferBytes(-1));
+    }
+
+    /**
+     * Expects a batch holding a single span for each of the given names. Spooled batches are replayed concurrently, so
+     * they may arrive in any order.
+     */
+    private void assertReplayed(final String... names) throws InterruptedException {
+        Set<String> replayed = new HashSet<>();
+        for (int i = 0; i < names.length; i++) {
+            Request request = requests.poll(10, TimeUnit.SECONDS);
+            assertNotNull(request);
+            assertEquals(1, countEvents(request.body));
+            for (String name : names) {
+                if (request.body.contains("\"name\":\"" + name + "\"")) {
+                    replayed.add(name);
+                }
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList(names)), replayed);
+    }
+
+    private HoneycombSpanExporterBuilder newBuilder() {
+        try {
+            return HoneycombSpanExporter.newBuilder(serviceName)
+                .batchEncoding(BatchEncoding.JSON)
+                .apiHost("http://localhost:" + server.getAddress().getPort())
+                .writeKey("write-key")
+                .dataSet("my dataset")
+                .addGlobalField("global", "value");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SpanData span(final String name) {
+        return TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setParentSpanId("100000000012d685")
+            .setAttributes(Attributes.of(
+                AttributeKey.stringKey("sString"), "stringValue",
+                AttributeKey.longKey("sLong"), 120L))
+            .setName(name)
+            .setKind(Kind.SERVER)
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(300))
+            .setHasEnded(true)
+            .build();
+    }
+
+    private static SpanData.Link link(final String spanId) {
+        return ImmutableLink.create(SpanContext.create("0000000000000000000000000000abcd", spanId,
+            TraceFlags.getSampled(), TraceState.getDefault()));
+    }
+
+    private static int countEvents(final String body) {
+        int count = 0;
+        for (int i = body.indexOf("\"samplerate\""); i >= 0; i = body.indexOf("\"samplerate\"", i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Request {
+        private final String path;
+        private final String writeKey;
+        private final String contentType;
+        private final byte[] bytes;
+        private final String body;
+
+        private Request(final String path, final String writeKey, final String contentType, final byte[] bytes) {
+            this.path = path;
+            this.writeKey = writeKey;
+            this.contentType = contentType;
+            this.bytes = bytes;
+            this.body = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskSpoolTest {
+
+    private static final int SEGMENT_BYTES = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void returnsBatchesInOrder() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        assertTrue(spool.isEmpty());
+        assertNull(spool.peek());
+
+        assertTrue(spool.append(bytes("first"), 1));
+        assertTrue(spool.append(bytes("second"), 2));
+
+        assertFalse(spool.isEmpty());
+        assertRecord(spool.peek(), "first", 1);
+        assertRecord(spool.peek(), "first", 1);
+        spool.remove();
+        assertRecord(spool.peek(), "second", 2);
+        spool.remove();
+        assertTrue(spool.isEmpty());
+        spool.close();
+    }
+
+    @Test
+    public void peeksSeveralBatchesAcrossSegments() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        for (String body : new String[]{"first", "second", "third", "fourth", "fifth"}) {
+            assertTrue(spool.append(bytes(body), 1));
+        }
+        spool.remove();
+        assertTrue(segmentFiles().size() > 1);
+
+        List<DiskSpool.Record> records = spool.peek(3);
+
+        assertEquals(3, records.size());
+        assertRecord(records.get(0), "second", 1);
+        assertRecord(records.get(1), "third", 1);
+        assertRecord(records.get(2), "fourth", 1);
+        assertEquals(4, spool.peek(10).size());
+        assertRecord(spool.peek(), "second", 1);
+        spool.close();
+    }
+
+    @Test
+    public void recoversUnconsumedBatchesWhenReopened() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(spool.append(bytes("batch-" + i), i));
+        }
+        spool.remove();
+        spool.remove();
+        spool.close();
+
+        DiskSpool reopened = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        for (int i = 2; i < 6; i++) {
+            assertRecord(reopened.peek(), "batch-" + i, i);
+            reopened.remove();
+        }
+        assertTrue(reopened.isEmpty());
+
+        // appends continue after the recovered records
+        assertTrue(reopened.append(bytes("batch-6"), 6));
+        assertRecord(reopened.peek(), "batch-6", 6);
+        reopened.close();
+    }
+
+    @Test
+    public void acceptsBatchesAgainOnceFullSpoolHasBeenDrained() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES);
+        int appended = 0;
+        while (spool.append(bytes("batch-" + appended), appended)) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+        for (int i = 0; i < appended; i++) {
+            assertRecord(spool.peek(), "batch-" + i, i);
+            spool.remove();
+        }
+        assertTrue(spool.isEmpty());
+
+        assertTrue(spool.append(bytes("after"), 1));
+        assertRecord(spool.peek(), "after", 1);
+        assertEquals(1, segmentFiles().size());
+        spool.close();
+    }
+
+    @Test
+    public void rotatesSegmentsAndDeletesConsumedOnes() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        for (int i = 0; i < 6; i++) {
+            // 12 byte header and 16 byte body, so 2 records per segment
+            assertTrue(spool.append(bytes("0123456789abcde" + i), i));
+        }
+        assertEquals(3, segmentFiles().size());
+        assertEquals(3 * SEGMENT_BYTES, spool.sizeBytes());
+
+        for (int i = 0; i < 4; i++) {
+            spool.remove();
+        }
+        assertRecord(spool.peek(), "0123456789abcde4", 4);
+        assertEquals(1, segmentFiles().size());
+        spool.close();
+    }
+
+    @Test
+    public void refusesBatchesOnceFull() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 2 * SEGMENT_BYTES, SEGMENT_BYTES);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(spool.append(bytes("0123456789abcde" + i), i));
+        }
+        assertFalse(spool.append(bytes("0123456789abcdef"), 4));
+        assertFalse(spool.append(new byte[SEGMENT_BYTES], 1), "larger than a segment");
+
+        spool.remove();
+        spool.remove();
+        assertTrue(spool.append(bytes("0123456789abcdef"), 4));
+        spool.close();
+    }
+
+    @Test
+    public void ignoresTornRecords() throws IOException {
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        assertTrue(spool.append(bytes("complete"), 1));
+        assertTrue(spool.append(bytes("torn"), 2));
+        spool.close();
+
+        // corrupt the body of the second record, as if the process died while writing it
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes("XX")), 4 + 12 + 8 + 12);
+        }
+
+        DiskSpool reopened = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        assertRecord(reopened.peek(), "complete", 1);
+        reopened.remove();
+        assertTrue(reopened.isEmpty());
+
+        assertTrue(reopened.append(bytes("next"), 3));
+        reopened.close();
+        DiskSpool again = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+        assertRecord(again.peek(), "next", 3);
+        again.close();
+    }
+
+    @Test
+    public void deletesLeftoversOfInterruptedRotation() throws IOException {
+        Files.write(directory.resolve("spool-7.tmp"), new byte[SEGMENT_BYTES]);
+        Files.write(directory.resolve("spool-00000000000000000003.seg"), new byte[10]);
+
+        DiskSpool spool = new DiskSpool(directory, 1024, SEGMENT_BYTES);
+
+        assertTrue(spool.isEmpty());
+        assertFalse(Files.exists(directory.resolve("spool-7.tmp")));
+        assertFalse(Files.exists(directory.resolve("spool-00000000000000000003.seg")));
+        assertTrue(spool.append(bytes("batch"), 1));
+        assertTrue(Files.exists(directory.resolve("spool-00000000000000000004.seg")));
+        spool.close();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static void assertRecord(final DiskSpool.Record record, final String body, final int eventCount) {
+        assertNotNull(record);
+        assertEquals(body, new String(record.getBody(), StandardCharsets.UTF_8));
+        assertEquals(eventCount, record.getEventCount());
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -4,6 +4,7 @@ import io.honeycomb.libhoney.builders.HoneyClientBuilder;
 import io.honeycomb.libhoney.EventPostProcessor;
 import io.honeycomb.libhoney.ResponseObserver;
 import io.honeycomb.libhoney.ValueSupplier;
+import io.honeycomb.libhoney.responses.ResponseObservable;
 import io.honeycomb.libhoney.transport.Transport;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -210,9 +211,14 @@ public class HoneycombSpanExporterBuilderTest {
     @Test
     public void transport() {
         final Transport mockTransport = mock(Transport.class);
+        final ResponseObservable mockObservable = mock(ResponseObservable.class);
+        when(mockTransport.getResponseObservable()).thenReturn(mockObservable);
         builder.transport(mockTransport).build();
 
         verify(mockBuilder, times(1)).transport(mockTransport);
+        // the exporter observes responses to tell libhoney's backlog
+        verify(mockObservable, times(1)).add(any(ResponseObserver.class));
+        verify(mockTransport, times(1)).getResponseObservable();
         verifyNoMoreInteractions(mockTransport);
         completeNegativeVerification();
     }
@@ -2,16 +2,29 @@ package io.honeycomb.opentelemetry.exporters;
 
 import io.honeycomb.libhoney.Event;
 import io.honeycomb.libhoney.HoneyClient;
+import io.honeycomb.libhoney.ResponseObserver;
+import io.honeycomb.libhoney.responses.ClientRejected;
+import io.honeycomb.libhoney.responses.ServerAccepted;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.common.Attributes;
 import io.opentelemetry.common.AttributeKey;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.ImmutableEvent;
+import io.opentelemetry.sdk.trace.data.ImmutableLink;
+import io.opentelemetry.sdk.trace.data.ImmutableStatus;
 import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
 import java.util.concurrent.TimeUnit;
 import java.util.Arrays;
+import java.util.Collections;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -41,6 +54,7 @@ public class HoneycombSpanExporterTest {
 
         assertTrue(result.isSuccess());
         verify(mockClient, times(1)).close();
+        verify(mockClient).addResponseObserver(any(ResponseObserver.class));
         verifyNoMoreInteractions(mockClient);
     }
 
@@ -49,6 +63,7 @@ public class HoneycombSpanExporterTest {
         CompletableResultCode result = exporter.flush();
 
         assertTrue(result.isSuccess());
+        verify(mockClient).addResponseObserver(any(ResponseObserver.class));
         verifyNoMoreInteractions(mockClient);
     }
 
@@ -87,7 +102,8 @@ public class HoneycombSpanExporterTest {
         HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
         CompletableResultCode result = exporter.export(Arrays.asList(span));
 
-        assertTrue(result.isSuccess());
+        // completes once libhoney responds to the event
+        assertFalse(result.isDone());
         verify(mockClient, times(1)).createEvent();
         verify(mockEvent, times(1)).addField(AttributeNames.SERVICE_NAME_FIELD, serviceName);
         verify(mockEvent, times(1)).addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
@@ -95,7 +111,7 @@ public class HoneycombSpanExporterTest {
         verify(mockEvent, times(1)).addField(AttributeNames.SPAN_NAME_FIELD, span.getName());
         verify(mockEvent, times(1)).addField(AttributeNames.PARENT_ID_FIELD, span.getParentSpanId());
         verify(mockEvent, times(1)).addField(AttributeNames.TYPE_FIELD, span.getKind().toString());
-        verify(mockEvent, times(1)).addField(AttributeNames.DURATION_FIELD, 200000L);
+        verify(mockEvent, times(1)).addField(AttributeNames.DURATION_FIELD, 200000.0);
         verify(mockEvent, times(1)).setTimestamp(100000L);
         verify(mockEvent, times(1)).sendPresampled();
         // verify(mockEvent, times(1)).addField("sString", "stringValue");
@@ -104,9 +120,345 @@ public class HoneycombSpanExporterTest {
         // verify(mockEvent, times(1)).addField("rString", "stringValue");
         // verify(mockEvent, times(1)).addField("rLong", 200L);
         // verify(mockEvent, times(1)).addField("rBoolean", false);
+        verify(mockClient).addResponseObserver(any(ResponseObserver.class));
         verifyNoMoreInteractions(mockClient);
     }
 
+    @Test
+    public void testDurationKeepsSubMillisecondPrecision() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(100) + 250_000)
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(span));
+
+        verify(mockEvent, times(1)).addField(AttributeNames.DURATION_FIELD, 0.25);
+    }
+
+    @Test
+    public void testSpanEventsCreateLinkedEvents() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setName("spanName")
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(300))
+            .setEvents(Arrays.asList(
+                ImmutableEvent.create(TimeUnit.SECONDS.toNanos(150), "exception",
+                    Attributes.of(AttributeKey.stringKey("exception.message"), "boom")),
+                ImmutableEvent.create(TimeUnit.SECONDS.toNanos(250), "retry", Attributes.empty())))
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(span));
+
+        verify(mockClient, times(3)).createEvent();
+        InOrder inOrder = inOrder(mockEvent);
+        inOrder.verify(mockEvent).setTimestamp(100000L);
+        inOrder.verify(mockEvent).addField(AttributeNames.SPAN_NAME_FIELD, "spanName");
+        inOrder.verify(mockEvent).sendPresampled();
+        inOrder.verify(mockEvent).setTimestamp(150000L);
+        inOrder.verify(mockEvent).addField(AttributeNames.PARENT_ID_FIELD, span.getSpanId());
+        inOrder.verify(mockEvent).addField(AttributeNames.SPAN_NAME_FIELD, "exception");
+        inOrder.verify(mockEvent).addField(AttributeNames.ANNOTATION_TYPE_FIELD, "span_event");
+        inOrder.verify(mockEvent).addField("exception.message", "boom");
+        inOrder.verify(mockEvent).sendPresampled();
+        inOrder.verify(mockEvent).setTimestamp(250000L);
+        inOrder.verify(mockEvent).addField(AttributeNames.SPAN_NAME_FIELD, "retry");
+        inOrder.verify(mockEvent).sendPresampled();
+        verify(mockEvent, times(3)).addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
+        // only the span itself has a span id
+        verify(mockEvent, times(1)).addField(AttributeNames.SPAN_ID_FIELD, span.getSpanId());
+    }
+
+    @Test
+    public void testSpanLinksCreateLinkEvents() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanContext linked = SpanContext.create("0000000000000000000000000000abcd", "000000000000beef",
+            TraceFlags.getSampled(), TraceState.getDefault());
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setName("spanName")
+            .setStartEpochNanos(TimeUnit.SECONDS.toNanos(100))
+            .setEndEpochNanos(TimeUnit.SECONDS.toNanos(300))
+            .setLinks(Arrays.asList(
+                ImmutableLink.create(linked, Attributes.of(AttributeKey.stringKey("messaging.operation"), "process"))))
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(span));
+
+        verify(mockClient, times(2)).createEvent();
+        InOrder inOrder = inOrder(mockEvent);
+        inOrder.verify(mockEvent).sendPresampled();
+        inOrder.verify(mockEvent).setTimestamp(100000L);
+        inOrder.verify(mockEvent).addField(AttributeNames.TRACE_ID_FIELD, span.getTraceId());
+        inOrder.verify(mockEvent).addField(AttributeNames.PARENT_ID_FIELD, span.getSpanId());
+        inOrder.verify(mockEvent).addField(AttributeNames.LINK_TRACE_ID_FIELD, "0000000000000000000000000000abcd");
+        inOrder.verify(mockEvent).addField(AttributeNames.LINK_SPAN_ID_FIELD, "000000000000beef");
+        inOrder.verify(mockEvent).addField(AttributeNames.ANNOTATION_TYPE_FIELD, "link");
+        inOrder.verify(mockEvent).addField("messaging.operation", "process");
+        inOrder.verify(mockEvent).sendPresampled();
+    }
+
+    @Test
+    public void testArrayAttributesAreAddedAsLists() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setAttributes(Attributes.of(
+                AttributeKey.stringArrayKey("http.request.header.accept"), Arrays.asList("text/html", "*/*"),
+                AttributeKey.longArrayKey("sizes"), Arrays.asList(1L, 2L, 3L)))
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(new LibhoneySpanSink(mockClient,
+            new SpanConverter(serviceName, SpanConverter.DEFAULT_MAX_LINKS_PER_SPAN, 2), 50));
+        exporter.export(Arrays.asList(span));
+
+        verify(mockEvent, times(1)).addField("http.request.header.accept", Arrays.asList("text/html", "*/*"));
+        verify(mockEvent, times(1)).addField("sizes", Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void testPendingBatchesCountEventsUntilLibhoneyResponds() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(new LibhoneySpanSink(mockClient,
+            new SpanConverter(serviceName), 2));
+        ArgumentCaptor<ResponseObserver> observer = ArgumentCaptor.forClass(ResponseObserver.class);
+        verify(mockClient).addResponseObserver(observer.capture());
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .build();
+        exporter.export(Arrays.asList(span, span, span));
+
+        assertEquals(2, exporter.getPendingBatches());
+        ArgumentCaptor<String> key = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object> tag = ArgumentCaptor.forClass(Object.class);
+        verify(mockEvent, times(3)).addMetadata(key.capture(), tag.capture());
+        ServerAccepted accepted = mock(ServerAccepted.class);
+        when(accepted.getEventMetadata()).thenReturn(Collections.singletonMap(key.getValue(), tag.getValue()));
+        ClientRejected foreign = mock(ClientRejected.class);
+        when(foreign.getEventMetadata()).thenReturn(Collections.emptyMap());
+
+        observer.getValue().onServerAccepted(accepted);
+        observer.getValue().onClientRejected(foreign);
+        assertEquals(1, exporter.getPendingBatches());
+        observer.getValue().onServerAccepted(accepted);
+        observer.getValue().onServerAccepted(accepted);
+        assertEquals(0, exporter.getPendingBatches());
+    }
+
+    @Test
+    public void testExportResultCompletesWithLibhoneyResponses() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(new LibhoneySpanSink(mockClient,
+            new SpanConverter(serviceName), 2));
+        ArgumentCaptor<ResponseObserver> observer = ArgumentCaptor.forClass(ResponseObserver.class);
+        verify(mockClient).addResponseObserver(observer.capture());
+        ArgumentCaptor<String> key = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object> tag = ArgumentCaptor.forClass(Object.class);
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .build();
+        CompletableResultCode accepted = exporter.export(Arrays.asList(span, span));
+        verify(mockEvent, times(2)).addMetadata(key.capture(), tag.capture());
+        ServerAccepted acceptedResponse = mock(ServerAccepted.class);
+        when(acceptedResponse.getEventMetadata())
+            .thenReturn(Collections.singletonMap(key.getValue(), tag.getValue()));
+
+        observer.getValue().onServerAccepted(acceptedResponse);
+        assertFalse(accepted.isDone());
+        observer.getValue().onServerAccepted(acceptedResponse);
+        assertTrue(accepted.isSuccess());
+
+        CompletableResultCode rejected = exporter.export(Arrays.asList(span, span));
+        verify(mockEvent, times(4)).addMetadata(key.capture(), tag.capture());
+        assertNotSame(tag.getAllValues().get(0), tag.getValue());
+        ClientRejected rejectedResponse = mock(ClientRejected.class);
+        when(rejectedResponse.getEventMetadata())
+            .thenReturn(Collections.singletonMap(key.getValue(), tag.getValue()));
+        when(acceptedResponse.getEventMetadata())
+            .thenReturn(Collections.singletonMap(key.getValue(), tag.getValue()));
+
+        observer.getValue().onClientRejected(rejectedResponse);
+        assertTrue(rejected.isDone());
+        assertFalse(rejected.isSuccess());
+        observer.getValue().onServerAccepted(acceptedResponse);
+        assertFalse(rejected.isSuccess());
+        assertEquals(0, exporter.getPendingBatches());
+    }
+
+    @Test
+    public void testFlushWaitsForLibhoneyToAnswerPendingEvents() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(new LibhoneySpanSink(mockClient,
+            new SpanConverter(serviceName), 2, 100));
+        ArgumentCaptor<ResponseObserver> observer = ArgumentCaptor.forClass(ResponseObserver.class);
+        verify(mockClient).addResponseObserver(observer.capture());
+
+        assertTrue(exporter.flush().isSuccess());
+
+        SpanData span = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .build();
+        exporter.export(Arrays.asList(span, span));
+        ArgumentCaptor<String> key = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object> tag = ArgumentCaptor.forClass(Object.class);
+        verify(mockEvent, times(2)).addMetadata(key.capture(), tag.capture());
+        ServerAccepted accepted = mock(ServerAccepted.class);
+        when(accepted.getEventMetadata()).thenReturn(Collections.singletonMap(key.getValue(), tag.getValue()));
+
+        CompletableResultCode flushed = exporter.flush();
+        observer.getValue().onServerAccepted(accepted);
+        assertFalse(flushed.isDone());
+        observer.getValue().onServerAccepted(accepted);
+        assertTrue(flushed.isSuccess());
+
+        exporter.export(Arrays.asList(span));
+        CompletableResultCode timedOut = exporter.flush().join(5, TimeUnit.SECONDS);
+        assertTrue(timedOut.isDone());
+        assertFalse(timedOut.isSuccess());
+    }
+
+    @Test
+    public void testStatusFields() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData failed = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setStatus(ImmutableStatus.create(StatusCanonicalCode.ERROR, "connection reset"))
+            .build();
+        SpanData succeeded = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setStatus(ImmutableStatus.OK)
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(failed, succeeded));
+
+        verify(mockEvent, times(1)).addField(AttributeNames.STATUS_CODE_FIELD, 2L);
+        verify(mockEvent, times(1)).addField(AttributeNames.STATUS_MESSAGE_FIELD, "connection reset");
+        verify(mockEvent, times(1)).addField(AttributeNames.ERROR_FIELD, true);
+        verify(mockEvent, times(1)).addField(AttributeNames.STATUS_CODE_FIELD, 1L);
+    }
+
+    @Test
+    public void testSampleRateAttributeSetsSampleRate() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData root = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setAttributes(Attributes.of(AttributeKey.longKey("sample.rate"), 17L))
+            .build();
+        SpanData child = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setParentSpanId("000000000012d685")
+            .build();
+        SpanData otherTrace = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0394")
+            .setSpanId("000000000012d687")
+            .setParentSpanId("000000000012d685")
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(root, child, otherTrace));
+
+        // the child inherits the rate of its root
+        verify(mockEvent, times(2)).setSampleRate(17);
+        verify(mockEvent, times(1)).setSampleRate(1);
+        verify(mockEvent, never()).addField(eq("sample.rate"), any(Object.class));
+    }
+
+    @Test
+    public void testChildExportedBeforeItsRootKeepsTheRateRecordedOnStart() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        // children end before their root, and the samplers record the root's rate on them when they start
+        SpanData child = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setParentSpanId("000000000012d685")
+            .setAttributes(Attributes.of(AttributeKey.longKey("sample.rate"), 17L))
+            .build();
+        SpanData root = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setAttributes(Attributes.of(AttributeKey.longKey("sample.rate"), 17L))
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Collections.singletonList(child));
+        exporter.export(Collections.singletonList(root));
+
+        verify(mockEvent, times(2)).setSampleRate(17);
+        verify(mockEvent, never()).setSampleRate(1);
+    }
+
+    @Test
+    public void testServiceNameIsTakenFromResource() {
+        when(mockClient.createEvent()).thenReturn(mockEvent);
+        when(mockEvent.addField(any(String.class), any(Object.class))).thenReturn(mockEvent);
+        when(mockEvent.setTimestamp(any(Long.class))).thenReturn(mockEvent);
+
+        SpanData checkout = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setResource(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "checkout")))
+            .build();
+        SpanData unnamed = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d686")
+            .setResource(Resource.create(Attributes.of(AttributeKey.stringKey("host.name"), "worker-1")))
+            .build();
+
+        HoneycombSpanExporter exporter = new HoneycombSpanExporter(mockClient, serviceName);
+        exporter.export(Arrays.asList(checkout, unnamed));
+
+        verify(mockEvent, times(1)).addField(AttributeNames.SERVICE_NAME_FIELD, "checkout");
+        verify(mockEvent, times(1)).addField(AttributeNames.SERVICE_NAME_FIELD, serviceName);
+    }
+
     @Test
     public void testSpanWithoutParentShouldNotSetParentIdAttribute() {
         when(mockClient.createEvent()).thenReturn(mockEvent);
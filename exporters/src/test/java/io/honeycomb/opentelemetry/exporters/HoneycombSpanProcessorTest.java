@@ -0,0 +1,161 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class HoneycombSpanProcessorTest {
+
+    private final RecordingSink sink = new RecordingSink();
+
+    @Test
+    public void exportsSampledSpansBeforeFlushing() {
+        HoneycombSpanProcessor processor = new HoneycombSpanProcessor(sink, 16, WaitStrategy.BLOCKING);
+
+        processor.onEnd(span("a", true));
+        processor.onEnd(span("b", false));
+        processor.onEnd(span("c", true));
+
+        assertTrue(processor.forceFlush().join(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(1, sink.flushes);
+        assertEquals(names("a", "c"), sink.exportedNames());
+
+        assertTrue(processor.shutdown().join(5, TimeUnit.SECONDS).isSuccess());
+        assertTrue(sink.shutdown);
+    }
+
+    @Test
+    public void shutdownExportsQueuedSpans() {
+        HoneycombSpanProcessor processor = new HoneycombSpanProcessor(sink, 16, WaitStrategy.SLEEPING);
+        processor.onEnd(span("a", true));
+
+        assertTrue(processor.shutdown().join(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(names("a"), sink.exportedNames());
+        assertTrue(sink.shutdown);
+
+        // ignored once shut down
+        processor.onEnd(span("b", true));
+        assertTrue(processor.forceFlush().join(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(names("a"), sink.exportedNames());
+    }
+
+    @Test
+    public void takesSpanDataOnWorkerThread() {
+        HoneycombSpanProcessor processor = new HoneycombSpanProcessor(sink, 16, WaitStrategy.BLOCKING);
+        ReadableSpan span = span("a", true);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        SpanData data = span.toSpanData();
+        when(span.toSpanData()).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return data;
+        });
+
+        processor.onEnd(span);
+
+        assertTrue(processor.forceFlush().join(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(names("a"), sink.exportedNames());
+        assertEquals(names("honeycomb-span-processor"), threads);
+        processor.shutdown();
+    }
+
+    @Test
+    public void dropsSpansWhileQueueIsFull() throws Exception {
+        HoneycombSpanProcessor processor = new HoneycombSpanProcessor(sink, 2, WaitStrategy.BLOCKING);
+        sink.gate = new CountDownLatch(1);
+        processor.onEnd(span("blocking", true));
+        assertTrue(sink.exporting.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 5; i++) {
+            processor.onEnd(span("queued" + i, true));
+        }
+        assertEquals(3, processor.getDroppedSpans());
+        assertEquals(2, processor.getQueueDepth());
+        assertEquals(2, processor.getQueueCapacity());
+
+        sink.gate.countDown();
+        assertTrue(processor.forceFlush().join(5, TimeUnit.SECONDS).isSuccess());
+        assertEquals(0, processor.getQueueDepth());
+        assertEquals(names("blocking", "queued0", "queued1"), sink.exportedNames());
+        processor.shutdown();
+    }
+
+    private static List<String> names(final String... names) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, names);
+        return list;
+    }
+
+    private static ReadableSpan span(final String name, final boolean sampled) {
+        ReadableSpan span = mock(ReadableSpan.class);
+        when(span.getSpanContext()).thenReturn(SpanContext.create("000000000063d76f0000000037fe0393",
+            "000000000012d685", sampled ? TraceFlags.getSampled() : TraceFlags.getDefault(),
+            TraceState.getDefault()));
+        if (sampled) {
+            when(span.toSpanData()).thenReturn(TestSpanData.newBuilder()
+                .setTraceId("000000000063d76f0000000037fe0393")
+                .setSpanId("000000000012d685")
+                .setName(name)
+                .build());
+        }
+        return span;
+    }
+
+    /**
+     * Records spans, optionally holding up the first export until the gate opens.
+     */
+    private static final class RecordingSink implements SpanSink {
+        private final List<SpanData> exported = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch exporting = new CountDownLatch(1);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile int flushes;
+        private volatile boolean shutdown;
+
+        @Override
+        public CompletableResultCode export(final Collection<SpanData> spans) {
+            exporting.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exported.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            flushes++;
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            shutdown = true;
+            return CompletableResultCode.ofSuccess();
+        }
+
+        private List<String> exportedNames() {
+            List<String> names = new ArrayList<>();
+            synchronized (exported) {
+                for (SpanData span : exported) {
+                    names.add(span.getName());
+                }
+            }
+            return names;
+        }
+    }
+}
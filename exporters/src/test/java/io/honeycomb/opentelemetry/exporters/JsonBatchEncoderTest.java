@@ -0,0 +1,153 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonBatchEncoderTest {
+
+    private static final long TIMESTAMP = TimeUnit.MILLISECONDS.toNanos(1601553600123L) + 456_789L;
+
+    @Test
+    public void encodesEventsInBatchFormat() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("string", "value");
+        encoder.addField("long", 42L);
+        encoder.addField("double", 1.5);
+        encoder.addField("boolean", true);
+        encoder.endEvent();
+        encoder.beginEvent(0);
+        encoder.endEvent();
+
+        assertEquals(2, encoder.eventCount());
+        assertEquals("[{\"time\":\"2020-10-01T12:00:00.123456Z\",\"data\":{\"string\":\"value\",\"long\":42,"
+                + "\"double\":1.5,\"boolean\":true},\"samplerate\":1},"
+                + "{\"time\":\"1970-01-01T00:00:00.000000Z\",\"data\":{},\"samplerate\":1}]",
+            finish(encoder));
+        assertEquals(0, encoder.eventCount());
+        assertEquals("[]", finish(encoder));
+    }
+
+    @Test
+    public void prependsGlobalFieldsToEveryEvent() {
+        Map<String, Object> globalFields = new LinkedHashMap<>();
+        globalFields.put("global", "value");
+        globalFields.put("count", 7);
+        JsonBatchEncoder encoder = new JsonBatchEncoder(globalFields);
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("name", "span");
+        encoder.endEvent();
+
+        assertTrue(finish(encoder).contains("\"data\":{\"global\":\"value\",\"count\":7,\"name\":\"span\"}"));
+    }
+
+    @Test
+    public void escapesStrings() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("quote\"d", "back\\slash\nnew\tline\u0001 caf\u00e9 \u20ac \uD83D\uDE00 \uD83D");
+        encoder.endEvent();
+
+        assertTrue(finish(encoder).contains(
+            "{\"quote\\\"d\":\"back\\\\slash\\nnew\\tline\\u0001 caf\u00e9 \u20ac \uD83D\uDE00 ?\"}"));
+    }
+
+    @Test
+    public void encodesArrays() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("strings", Arrays.asList("a", "b\"c"), 10);
+        encoder.addField("longs", Arrays.asList(1L, -2L), 10);
+        encoder.addField("doubles", Arrays.asList(1.5, Double.NaN), 10);
+        encoder.addField("booleans", Arrays.asList(true, false), 10);
+        encoder.addField("truncated", Arrays.asList(1L, 2L, 3L), 2);
+        encoder.addField("empty", Collections.emptyList(), 10);
+        encoder.endEvent();
+
+        assertTrue(finish(encoder).contains("{\"strings\":[\"a\",\"b\\\"c\"],\"longs\":[1,-2],"
+            + "\"doubles\":[1.5,null],\"booleans\":[true,false],\"truncated\":[1,2],\"empty\":[]}"));
+    }
+
+    @Test
+    public void encodesNumbers() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("min", Long.MIN_VALUE);
+        encoder.addField("max", Long.MAX_VALUE);
+        encoder.addField("negative", -120L);
+        encoder.addField("whole", 3.0);
+        encoder.addField("small", 1.0E-7);
+        encoder.addField("nan", Double.NaN);
+        encoder.endEvent();
+
+        assertTrue(finish(encoder).contains("{\"min\":-9223372036854775808,\"max\":9223372036854775807,"
+            + "\"negative\":-120,\"whole\":3.0,\"small\":1.0E-7,\"nan\":null}"));
+    }
+
+    @Test
+    public void encodesSampleRatePerEvent() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        encoder.setSampleRate(20);
+        encoder.endEvent();
+        encoder.beginEvent(0);
+        encoder.endEvent();
+
+        assertEquals("[{\"time\":\"1970-01-01T00:00:00.000000Z\",\"data\":{},\"samplerate\":20},"
+                + "{\"time\":\"1970-01-01T00:00:00.000000Z\",\"data\":{},\"samplerate\":1}]",
+            finish(encoder));
+    }
+
+    @Test
+    public void encodesDurationsAsExactMilliseconds() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addDurationField("zero", 0);
+        encoder.addDurationField("micros", 250_000);
+        encoder.addDurationField("nanos", 1);
+        encoder.addDurationField("whole", 3_000_000);
+        encoder.addDurationField("long", 123_456_789_012L);
+        encoder.addDurationField("negative", -1_500_000);
+        encoder.endEvent();
+
+        assertTrue(finish(encoder).contains("{\"zero\":0.0,\"micros\":0.25,\"nanos\":0.000001,\"whole\":3.0,"
+            + "\"long\":123456.789012,\"negative\":-1.5}"));
+    }
+
+    @Test
+    public void discardsIncompleteEvent() {
+        JsonBatchEncoder encoder = new JsonBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("kept", true);
+        encoder.endEvent();
+        encoder.beginEvent(TIMESTAMP);
+        encoder.addField("dropped", true);
+        encoder.discardEvent();
+
+        assertEquals(1, encoder.eventCount());
+        String body = finish(encoder);
+        assertTrue(body.contains("\"kept\""));
+        assertFalse(body.contains("\"dropped\""));
+        assertTrue(body.endsWith("\"samplerate\":1}]"));
+    }
+
+    private static String finish(final JsonBatchEncoder encoder) {
+        return new String(encoder.finish(), StandardCharsets.UTF_8);
+    }
+}
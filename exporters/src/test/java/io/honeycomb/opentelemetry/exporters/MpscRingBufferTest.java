@@ -0,0 +1,145 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(2, new MpscRingBuffer<String>(1, WaitStrategy.BLOCKING).capacity());
+        assertEquals(8, new MpscRingBuffer<String>(8, WaitStrategy.BLOCKING).capacity());
+        assertEquals(16, new MpscRingBuffer<String>(9, WaitStrategy.BLOCKING).capacity());
+    }
+
+    @Test
+    public void returnsElementsInOrderAndRejectsWhenFull() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4, WaitStrategy.BLOCKING);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        // wraps around the ring several times
+        int next = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(next + i));
+            }
+            assertFalse(buffer.offer(-1));
+            assertEquals(4, buffer.size());
+            assertEquals(next, buffer.poll());
+            assertTrue(buffer.offer(next + 4));
+
+            List<Integer> drained = new ArrayList<>();
+            assertEquals(3, buffer.drain(drained::add, 3));
+            assertEquals(next + 1, drained.get(0));
+            assertEquals(next + 4, buffer.poll());
+            assertTrue(buffer.isEmpty());
+            next += 5;
+        }
+    }
+
+    @Test
+    public void keepsOrderOfEachProducer() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100_000;
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(1024, WaitStrategy.BLOCKING);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final long producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    long[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        long[] expected = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            assertTrue(buffer.await(5, TimeUnit.SECONDS), "timed out after " + received + " elements");
+            received += buffer.drain(element -> {
+                assertEquals(expected[(int) element[0]]++, element[1]);
+            }, 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long count : expected) {
+            assertEquals(perProducer, count);
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void awaitReturnsOnceElementArrives() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            awaitReturnsOnceElementArrives(waitStrategy);
+        }
+    }
+
+    @Test
+    public void wakeUpEndsWait() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            wakeUpEndsWait(waitStrategy);
+        }
+    }
+
+    private static void awaitReturnsOnceElementArrives(final WaitStrategy waitStrategy) throws Exception {
+        MpscRingBuffer<String> buffer = new MpscRingBuffer<>(4, waitStrategy);
+        assertFalse(buffer.await(10, TimeUnit.MILLISECONDS));
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.offer("span");
+        });
+        producer.start();
+        long start = System.nanoTime();
+        assertTrue(buffer.await(5, TimeUnit.SECONDS), waitStrategy.name());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals("span", buffer.poll());
+        producer.join();
+    }
+
+    private static void wakeUpEndsWait(final WaitStrategy waitStrategy) throws Exception {
+        MpscRingBuffer<String> buffer = new MpscRingBuffer<>(4, waitStrategy);
+
+        Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.wakeUp();
+        });
+        waker.start();
+        long start = System.nanoTime();
+        assertFalse(buffer.await(5, TimeUnit.SECONDS), waitStrategy.name());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        waker.join();
+
+        // the request is consumed by the wait it ended
+        assertFalse(buffer.await(10, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,85 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes MessagePack batch bodies with an independent MessagePack implementation, for use in assertions.
+ */
+public class MsgPackBatch {
+
+    public static List<Event> decode(final byte[] body) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(body)) {
+            final int eventCount = unpacker.unpackArrayHeader();
+            final List<Event> events = new ArrayList<>();
+            for (int i = 0; i < eventCount; i++) {
+                final Event event = new Event();
+                final int keyCount = unpacker.unpackMapHeader();
+                for (int j = 0; j < keyCount; j++) {
+                    final String key = unpacker.unpackString();
+                    switch (key) {
+                        case "time":
+                            event.time = unpacker.unpackTimestamp();
+                            break;
+                        case "samplerate":
+                            event.sampleRate = unpacker.unpackLong();
+                            break;
+                        case "data":
+                            final int fieldCount = unpacker.unpackMapHeader();
+                            for (int k = 0; k < fieldCount; k++) {
+                                event.data.put(unpacker.unpackString(), unpackScalar(unpacker));
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("Unexpected key " + key);
+                    }
+                }
+                events.add(event);
+            }
+            if (unpacker.hasNext()) {
+                throw new IllegalStateException("Trailing bytes after batch");
+            }
+            return events;
+        }
+    }
+
+    private static Object unpackScalar(final MessageUnpacker unpacker) throws IOException {
+        final ValueType type = unpacker.getNextFormat().getValueType();
+        switch (type) {
+            case STRING:
+                return unpacker.unpackString();
+            case INTEGER:
+                return unpacker.unpackLong();
+            case FLOAT:
+                return unpacker.unpackDouble();
+            case BOOLEAN:
+                return unpacker.unpackBoolean();
+            case NIL:
+                unpacker.unpackNil();
+                return null;
+            case ARRAY:
+                final int size = unpacker.unpackArrayHeader();
+                final List<Object> elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(unpackScalar(unpacker));
+                }
+                return elements;
+            default:
+                throw new IllegalStateException("Unexpected value type " + type);
+        }
+    }
+
+    public static class Event {
+        public Instant time;
+        public long sampleRate;
+        public final Map<String, Object> data = new LinkedHashMap<>();
+    }
+}
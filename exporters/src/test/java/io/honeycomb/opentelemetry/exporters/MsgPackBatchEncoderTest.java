@@ -0,0 +1,199 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.resources.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MsgPackBatchEncoderTest {
+
+    @Test
+    public void encodesEventsInBatchFormat() throws IOException {
+        Map<String, Object> globalFields = new LinkedHashMap<>();
+        globalFields.put("global", "value");
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(globalFields);
+        ResourceFields resourceFields = ResourceFields.of(Resource.create(Attributes.newBuilder()
+            .setAttribute("rString", "resource")
+            .setAttribute("rDouble", 0.5)
+            .build()), SpanConverter.DEFAULT_MAX_ARRAY_ELEMENTS);
+
+        encoder.beginEvent(1601553600_123456789L);
+        encoder.addField("string", "value");
+        encoder.addField("long", 42L);
+        encoder.addField("double", 1.5);
+        encoder.addField("boolean", true);
+        encoder.addField("object", (Object) null);
+        encoder.addFields(resourceFields);
+        encoder.endEvent();
+        encoder.beginEvent(0);
+        encoder.endEvent();
+
+        assertEquals(2, encoder.eventCount());
+        assertEquals("application/msgpack", encoder.contentType());
+        List<MsgPackBatch.Event> events = MsgPackBatch.decode(encoder.finish());
+        assertEquals(2, events.size());
+
+        MsgPackBatch.Event first = events.get(0);
+        assertEquals(Instant.ofEpochSecond(1601553600, 123456789), first.time);
+        assertEquals(1, first.sampleRate);
+        assertEquals(Arrays.asList("global", "string", "long", "double", "boolean", "object", "rDouble", "rString"),
+            Arrays.asList(first.data.keySet().toArray()));
+        assertEquals("value", first.data.get("global"));
+        assertEquals("value", first.data.get("string"));
+        assertEquals(42L, first.data.get("long"));
+        assertEquals(1.5, first.data.get("double"));
+        assertEquals(true, first.data.get("boolean"));
+        assertNull(first.data.get("object"));
+        assertEquals(0.5, first.data.get("rDouble"));
+        assertEquals("resource", first.data.get("rString"));
+
+        MsgPackBatch.Event second = events.get(1);
+        assertEquals(Instant.EPOCH, second.time);
+        assertEquals(Collections.singletonMap("global", "value"), second.data);
+
+        assertEquals(0, encoder.eventCount());
+        assertTrue(MsgPackBatch.decode(encoder.finish()).isEmpty());
+    }
+
+    @Test
+    public void encodesIntegersOfAllSizes() throws IOException {
+        long[] values = {0, 1, 127, 128, 255, 256, 65535, 65536, 4294967295L, 4294967296L, Long.MAX_VALUE,
+            -1, -32, -33, -128, -129, -32768, -32769, Integer.MIN_VALUE, Integer.MIN_VALUE - 1L, Long.MIN_VALUE};
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        for (long value : values) {
+            encoder.addField(Long.toString(value), value);
+        }
+        encoder.endEvent();
+
+        Map<String, Object> data = MsgPackBatch.decode(encoder.finish()).get(0).data;
+        for (long value : values) {
+            assertEquals(value, data.get(Long.toString(value)));
+        }
+    }
+
+    @Test
+    public void encodesArrays() throws IOException {
+        List<Long> large = new ArrayList<>();
+        for (long i = 0; i < 70_000; i++) {
+            large.add(i);
+        }
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        encoder.addField("strings", Arrays.asList("a", "b\"c"), 10);
+        encoder.addField("mixed", Arrays.asList(1L, 2.5, true), 10);
+        encoder.addField("truncated", Arrays.asList(1L, 2L, 3L), 2);
+        encoder.addField("empty", Collections.emptyList(), 10);
+        encoder.addField("array16", large, 20);
+        encoder.addField("array32", large, 70_000);
+        encoder.endEvent();
+
+        Map<String, Object> data = MsgPackBatch.decode(encoder.finish()).get(0).data;
+        assertEquals(Arrays.asList("a", "b\"c"), data.get("strings"));
+        assertEquals(Arrays.asList(1L, 2.5, true), data.get("mixed"));
+        assertEquals(Arrays.asList(1L, 2L), data.get("truncated"));
+        assertEquals(Collections.emptyList(), data.get("empty"));
+        assertEquals(large.subList(0, 20), data.get("array16"));
+        assertEquals(large, data.get("array32"));
+    }
+
+    @Test
+    public void encodesDurationsAsFractionalMilliseconds() throws IOException {
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        encoder.addDurationField("micros", 250_000);
+        encoder.addDurationField("whole", 3_000_000);
+        encoder.endEvent();
+
+        Map<String, Object> data = MsgPackBatch.decode(encoder.finish()).get(0).data;
+        assertEquals(0.25, data.get("micros"));
+        assertEquals(3.0, data.get("whole"));
+    }
+
+    @Test
+    public void encodesSampleRatePerEvent() throws IOException {
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        encoder.setSampleRate(20);
+        encoder.endEvent();
+        encoder.beginEvent(0);
+        encoder.endEvent();
+
+        List<MsgPackBatch.Event> events = MsgPackBatch.decode(encoder.finish());
+        assertEquals(20, events.get(0).sampleRate);
+        assertEquals(1, events.get(1).sampleRate);
+    }
+
+    @Test
+    public void encodesStringsOfAllSizes() throws IOException {
+        String[] values = {"", repeat('a', 31), repeat('b', 32), repeat('c', 255), repeat('d', 256),
+            repeat('e', 65535), repeat('f', 65536), "caf\u00e9 \u20ac \uD83D\uDE00", repeat('\u00e9', 16)};
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        for (int i = 0; i < values.length; i++) {
+            encoder.addField("field" + i, values[i]);
+        }
+        encoder.addField("unpaired", "\uD83D!");
+        encoder.endEvent();
+
+        Map<String, Object> data = MsgPackBatch.decode(encoder.finish()).get(0).data;
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], data.get("field" + i));
+        }
+        assertEquals("?!", data.get("unpaired"));
+    }
+
+    @Test
+    public void encodesTimestampsOfAllSizes() throws IOException {
+        Instant[] times = {Instant.ofEpochSecond(1601553600), Instant.ofEpochSecond(1601553600, 1),
+            Instant.ofEpochSecond(1L << 33, 5), Instant.ofEpochSecond(9_000_000_000L, 999_999_999), Instant.ofEpochSecond(-1, 5)};
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        for (Instant time : times) {
+            encoder.beginEvent(time.getEpochSecond() * 1_000_000_000L + time.getNano());
+            encoder.endEvent();
+        }
+
+        List<MsgPackBatch.Event> events = MsgPackBatch.decode(encoder.finish());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], events.get(i).time);
+        }
+    }
+
+    @Test
+    public void discardsIncompleteEvent() throws IOException {
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+
+        encoder.beginEvent(0);
+        encoder.addField("kept", true);
+        encoder.endEvent();
+        encoder.beginEvent(0);
+        encoder.addField("dropped", true);
+        encoder.discardEvent();
+
+        List<MsgPackBatch.Event> events = MsgPackBatch.decode(encoder.finish());
+        assertEquals(1, events.size());
+        assertEquals(Collections.singletonMap("kept", true), events.get(0).data);
+    }
+
+    private static String repeat(final char c, final int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,132 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.resources.Resource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ResourceFieldsTest {
+    private static final int MAX_ARRAY_ELEMENTS = 2;
+
+    @Mock private EventWriter mockWriter;
+    @Mock private Resource mockResource;
+
+    @Test
+    public void convertsSupportedAttributeTypes() {
+        Resource resource = Resource.create(Attributes.newBuilder()
+            .setAttribute("rString", "stringValue")
+            .setAttribute("rLong", 200L)
+            .setAttribute("rBool", false)
+            .setAttribute("rDouble", 1.5)
+            .build());
+
+        ResourceFields fields = ResourceFields.of(resource, MAX_ARRAY_ELEMENTS);
+        fields.writeTo(mockWriter);
+
+        assertEquals(4, fields.size());
+        verify(mockWriter, times(1)).addField("rString", (Object) "stringValue");
+        verify(mockWriter, times(1)).addField("rLong", (Object) 200L);
+        verify(mockWriter, times(1)).addField("rBool", (Object) false);
+        verify(mockWriter, times(1)).addField("rDouble", (Object) 1.5);
+        verifyNoMoreInteractions(mockWriter);
+    }
+
+    @Test
+    public void convertsArrayAttributesUpToMaxElements() throws IOException {
+        Resource resource = Resource.create(Attributes.newBuilder()
+            .setAttribute("rStrings", "a", "b", "c")
+            .setAttribute("rLongs", 1L, 2L)
+            .setAttribute("rBools", true, false, true)
+            .setAttribute("rDoubles", 0.5, 1.5, 2.5)
+            .build());
+
+        ResourceFields fields = ResourceFields.of(resource, MAX_ARRAY_ELEMENTS);
+        fields.writeTo(mockWriter);
+
+        assertEquals(4, fields.size());
+        verify(mockWriter, times(1)).addField("rStrings", Arrays.asList("a", "b"), 2);
+        verify(mockWriter, times(1)).addField("rLongs", Arrays.asList(1L, 2L), 2);
+        verify(mockWriter, times(1)).addField("rBools", Arrays.asList(true, false), 2);
+        verify(mockWriter, times(1)).addField("rDoubles", Arrays.asList(0.5, 1.5), 2);
+        verifyNoMoreInteractions(mockWriter);
+
+        assertEquals(",\"rBools\":[true,false],\"rDoubles\":[0.5,1.5],\"rLongs\":[1,2],\"rStrings\":[\"a\",\"b\"]",
+            new String(fields.json(), StandardCharsets.UTF_8));
+
+        MsgPackBatchEncoder encoder = new MsgPackBatchEncoder(Collections.emptyMap());
+        encoder.beginEvent(0);
+        encoder.addFields(fields);
+        encoder.endEvent();
+        Map<String, Object> data = MsgPackBatch.decode(encoder.finish()).get(0).data;
+        assertEquals(Arrays.asList("a", "b"), data.get("rStrings"));
+        assertEquals(Arrays.asList(1L, 2L), data.get("rLongs"));
+        assertEquals(Arrays.asList(true, false), data.get("rBools"));
+        assertEquals(Arrays.asList(0.5, 1.5), data.get("rDoubles"));
+    }
+
+    @Test
+    public void extractsServiceName() {
+        assertEquals("checkout", ResourceFields.of(
+            Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "checkout")), MAX_ARRAY_ELEMENTS).getServiceName());
+        assertNull(ResourceFields.of(
+            Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "")), MAX_ARRAY_ELEMENTS).getServiceName());
+        assertNull(ResourceFields.of(Resource.create(Attributes.empty()), MAX_ARRAY_ELEMENTS).getServiceName());
+        assertNull(ResourceFields.EMPTY.getServiceName());
+    }
+
+    @Test
+    public void cacheConvertsEachResourceOnce() {
+        when(mockResource.getAttributes()).thenReturn(Attributes.of(AttributeKey.stringKey("name"), "value"));
+        ResourceFields.Cache cache = new ResourceFields.Cache(MAX_ARRAY_ELEMENTS);
+
+        ResourceFields first = cache.get(mockResource);
+        assertSame(first, cache.get(mockResource));
+        verify(mockResource, times(1)).getAttributes();
+    }
+
+    @Test
+    public void cacheIsKeyedByIdentity() {
+        Resource first = Resource.create(Attributes.of(AttributeKey.stringKey("name"), "first"));
+        Resource second = Resource.create(Attributes.of(AttributeKey.stringKey("name"), "second"));
+        ResourceFields.Cache cache = new ResourceFields.Cache(MAX_ARRAY_ELEMENTS);
+
+        for (Resource resource : Arrays.asList(first, second, first, second)) {
+            cache.get(resource).writeTo(mockWriter);
+        }
+
+        verify(mockWriter, times(2)).addField("name", (Object) "first");
+        verify(mockWriter, times(2)).addField("name", (Object) "second");
+    }
+
+    @Test
+    public void encodesFieldsAsJsonFragment() {
+        Resource resource = Resource.create(Attributes.newBuilder()
+            .setAttribute("rString", "stringValue")
+            .setAttribute("rLong", 200L)
+            .build());
+
+        ResourceFields fields = ResourceFields.of(resource, MAX_ARRAY_ELEMENTS);
+
+        assertEquals(",\"rLong\":200,\"rString\":\"stringValue\"", new String(fields.json(), StandardCharsets.UTF_8));
+        assertSame(fields.json(), fields.json());
+        assertEquals(0, ResourceFields.EMPTY.json().length);
+    }
+
+    @Test
+    public void nullResourceHasNoFields() {
+        assertSame(ResourceFields.EMPTY, new ResourceFields.Cache(MAX_ARRAY_ELEMENTS).get(null));
+    }
+}
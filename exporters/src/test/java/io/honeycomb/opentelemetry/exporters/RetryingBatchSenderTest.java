@@ -0,0 +1,207 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryingBatchSenderTest {
+
+    private final FakeSender delegate = new FakeSender();
+    private final RecordingCallback callback = new RecordingCallback();
+    private RetryingBatchSender sender;
+
+    @AfterEach
+    public void tearDown() {
+        if (sender != null) {
+            sender.close();
+        }
+    }
+
+    @Test
+    public void retriesUntilBatchIsAccepted() throws Exception {
+        sender = new RetryingBatchSender(delegate, 3, 1, 10, 1024);
+        delegate.respond(new BatchResponse(500, 0), null, new BatchResponse(200, 0));
+
+        sender.send(batch(10), callback);
+
+        assertEquals(200, callback.awaitResponse().getStatusCode());
+        assertEquals(3, delegate.attempts.size());
+        assertEquals(0, sender.getBufferedBytes());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        sender = new RetryingBatchSender(delegate, 3, 1, 10, 1024);
+        delegate.respond(null, null, null, new BatchResponse(200, 0));
+
+        sender.send(batch(10), callback);
+
+        assertTrue(callback.awaitOutcome() instanceof IOException);
+        assertEquals(3, delegate.attempts.size());
+    }
+
+    @Test
+    public void doesNotRetryPermanentErrors() throws Exception {
+        sender = new RetryingBatchSender(delegate, 3, 1, 10, 1024);
+        delegate.respond(new BatchResponse(400, 0));
+
+        sender.send(batch(10), callback);
+
+        assertEquals(400, callback.awaitResponse().getStatusCode());
+        assertEquals(1, delegate.attempts.size());
+    }
+
+    @Test
+    public void waitsAsLongAsRetryAfterAsks() throws Exception {
+        sender = new RetryingBatchSender(delegate, 2, 1, 1_000, 1024);
+        delegate.respond(new BatchResponse(429, 0, 300), new BatchResponse(200, 0));
+
+        sender.send(batch(10), callback);
+
+        assertEquals(200, callback.awaitResponse().getStatusCode());
+        long delay = delegate.attempts.get(1) - delegate.attempts.get(0);
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(300), "retried after " + delay + "ns");
+    }
+
+    @Test
+    public void capsRetryAfterAtMaxBackoff() throws Exception {
+        sender = new RetryingBatchSender(delegate, 2, 1, 10, 1024);
+        delegate.respond(new BatchResponse(429, 0, 60_000), new BatchResponse(200, 0));
+
+        sender.send(batch(10), callback);
+
+        assertEquals(200, callback.awaitResponse().getStatusCode());
+        long delay = delegate.attempts.get(1) - delegate.attempts.get(0);
+        assertTrue(delay < TimeUnit.SECONDS.toNanos(5), "retried after " + delay + "ns");
+    }
+
+    @Test
+    public void doesNotRetryWhenBufferIsFull() throws Exception {
+        sender = new RetryingBatchSender(delegate, 3, 1, 10, 15);
+        delegate.respond(new BatchResponse(503, 0), new BatchResponse(200, 0));
+
+        sender.send(batch(20), callback);
+
+        assertEquals(503, callback.awaitResponse().getStatusCode());
+        assertEquals(1, delegate.attempts.size());
+    }
+
+    @Test
+    public void closeReportsBatchesWaitingForRetry() throws Exception {
+        sender = new RetryingBatchSender(delegate, 3, 60_000, 60_000, 1024);
+        delegate.respond(new BatchResponse(502, 0));
+
+        sender.send(batch(10), callback);
+        assertNull(callback.outcomes.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(10, sender.getBufferedBytes());
+
+        sender.close();
+        assertEquals(502, callback.awaitResponse().getStatusCode());
+        assertEquals(0, sender.getBufferedBytes());
+        assertTrue(delegate.closed);
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyWithJitter() {
+        sender = new RetryingBatchSender(delegate, 10, 100, 1000, 1024);
+        for (int i = 0; i < 100; i++) {
+            long first = sender.backoffMillis(1);
+            assertTrue(first >= 50 && first <= 100, Long.toString(first));
+            long third = sender.backoffMillis(3);
+            assertTrue(third >= 200 && third <= 400, Long.toString(third));
+            long capped = sender.backoffMillis(30);
+            assertTrue(capped >= 500 && capped <= 1000, Long.toString(capped));
+        }
+    }
+
+    @Test
+    public void parsesRetryAfterHeader() {
+        long now = System.currentTimeMillis();
+        assertEquals(-1, HttpBatchSender.retryAfterMillis(null, now));
+        assertEquals(-1, HttpBatchSender.retryAfterMillis(new BasicHeader("Retry-After", "soon"), now));
+        assertEquals(120_000, HttpBatchSender.retryAfterMillis(new BasicHeader("Retry-After", " 120 "), now));
+        long inTenSeconds = HttpBatchSender.retryAfterMillis(
+            new BasicHeader("Retry-After", DateUtils.formatDate(new Date(now + 10_000))), now);
+        assertTrue(inTenSeconds > 9_000 && inTenSeconds <= 10_000, Long.toString(inTenSeconds));
+    }
+
+    private static Batch batch(final int bytes) {
+        return new Batch(new byte[bytes], 1, new CompletableResultCode());
+    }
+
+    /**
+     * Completes each attempt with the next of the given outcomes, where null stands for a failed request.
+     */
+    private static final class FakeSender implements BatchSender {
+        private final List<Long> attempts = Collections.synchronizedList(new ArrayList<>());
+        private final List<BatchResponse> outcomes = new ArrayList<>();
+        private volatile boolean closed;
+
+        private void respond(final BatchResponse... responses) {
+            Collections.addAll(outcomes, responses);
+        }
+
+        @Override
+        public void send(final Batch batch, final Callback callback) {
+            offer(batch, callback);
+        }
+
+        @Override
+        public boolean offer(final Batch batch, final Callback callback) {
+            final BatchResponse response;
+            synchronized (attempts) {
+                response = outcomes.get(attempts.size());
+                attempts.add(System.nanoTime());
+            }
+            if (response == null) {
+                callback.onFailure(batch, new IOException("Connection refused"));
+            } else {
+                callback.onResponse(batch, response);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static final class RecordingCallback implements BatchSender.Callback {
+        private final BlockingQueue<Object> outcomes = new ArrayBlockingQueue<>(10);
+
+        @Override
+        public void onResponse(final Batch batch, final BatchResponse response) {
+            outcomes.add(response);
+        }
+
+        @Override
+        public void onFailure(final Batch batch, final Exception cause) {
+            outcomes.add(cause);
+        }
+
+        private Object awaitOutcome() throws InterruptedException {
+            final Object outcome = outcomes.poll(5, TimeUnit.SECONDS);
+            assertNotNull(outcome);
+            assertNull(outcomes.poll(50, TimeUnit.MILLISECONDS), "reported more than once");
+            return outcome;
+        }
+
+        private BatchResponse awaitResponse() throws InterruptedException {
+            return (BatchResponse) awaitOutcome();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SpanRouterTest {
+
+    private static final Resource CHECKOUT = Resource.create(
+        Attributes.of(AttributeKey.stringKey("service.name"), "checkout"));
+    private static final Resource BILLING = Resource.create(
+        Attributes.of(AttributeKey.stringKey("service.name"), "billing"));
+
+    @Mock private Resource mockResource;
+
+    @Test
+    public void routesToDefaultWithoutRules() {
+        SpanRouter router = new SpanRouter(Collections.emptyList(), 0);
+
+        assertEquals(0, router.route(span(CHECKOUT, Kind.SERVER, "http")));
+        assertEquals(0, router.route(span(null, null, null)));
+    }
+
+    @Test
+    public void firstMatchingRuleWins() {
+        SpanRouter router = new SpanRouter(Arrays.asList(
+            SpanRouter.spanKind(Kind.CONSUMER, 1),
+            SpanRouter.resourceAttribute("service.name", "checkout", 2),
+            SpanRouter.instrumentationLibrary("jdbc", 3),
+            SpanRouter.spanKind(Kind.CLIENT, 4)), 0);
+
+        assertEquals(1, router.route(span(CHECKOUT, Kind.CONSUMER, "jdbc")));
+        assertEquals(2, router.route(span(CHECKOUT, Kind.CLIENT, "jdbc")));
+        assertEquals(3, router.route(span(BILLING, Kind.CLIENT, "jdbc")));
+        assertEquals(4, router.route(span(BILLING, Kind.CLIENT, "http")));
+        assertEquals(0, router.route(span(BILLING, Kind.SERVER, "http")));
+        assertEquals(0, router.route(span(BILLING, null, null)));
+        assertEquals(4, router.route(span(null, Kind.CLIENT, null)));
+    }
+
+    @Test
+    public void evaluatesResourceRulesOncePerResource() {
+        when(mockResource.getAttributes()).thenReturn(CHECKOUT.getAttributes());
+        SpanRouter router = new SpanRouter(Arrays.asList(
+            SpanRouter.resourceAttribute("service.name", "billing", 1),
+            SpanRouter.resourceAttribute("service.name", "checkout", 2)), 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, router.route(span(mockResource, Kind.SERVER, "http")));
+            assertEquals(1, router.route(span(BILLING, Kind.SERVER, "http")));
+        }
+        verify(mockResource, times(1)).getAttributes();
+    }
+
+    private static SpanData span(final Resource resource, final Kind kind, final String library) {
+        TestSpanData.Builder builder = TestSpanData.newBuilder()
+            .setTraceId("000000000063d76f0000000037fe0393")
+            .setSpanId("000000000012d685")
+            .setKind(kind);
+        if (resource != null) {
+            builder.setResource(resource);
+        }
+        if (library != null) {
+            builder.setInstrumentationLibraryInfo(InstrumentationLibraryInfo.create(library, null));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,143 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpoolingBatchSenderTest {
+
+    @TempDir
+    Path directory;
+
+    private final HoldingSender delegate = new HoldingSender();
+    private DiskSpool spool;
+    private SpoolingBatchSender sender;
+
+    @AfterEach
+    public void tearDown() {
+        if (sender != null) {
+            sender.close();
+        }
+    }
+
+    @Test
+    public void replaysUpToTheLimitOfPendingRequestsAtOnce() throws Exception {
+        spool = new DiskSpool(directory, 4096, 1024);
+        for (String body : new String[]{"a", "b", "c", "d", "e"}) {
+            assertTrue(spool.append(bytes(body), 1));
+        }
+        sender = new SpoolingBatchSender(delegate, spool, 1, 10, 3);
+
+        List<Pending> first = delegate.awaitSends(3);
+        assertEquals("a", first.get(0).body());
+        assertEquals("c", first.get(2).body());
+        assertNull(delegate.sends.poll(100, TimeUnit.MILLISECONDS), "sent more than the limit at once");
+        for (Pending pending : first) {
+            pending.respond(200);
+        }
+
+        List<Pending> second = delegate.awaitSends(2);
+        assertEquals("d", second.get(0).body());
+        assertEquals("e", second.get(1).body());
+        for (Pending pending : second) {
+            pending.respond(200);
+        }
+        awaitEmpty();
+    }
+
+    @Test
+    public void movesFailedBatchBehindLaterOnesThatWereDelivered() throws Exception {
+        spool = new DiskSpool(directory, 4096, 1024);
+        for (String body : new String[]{"a", "b", "c"}) {
+            assertTrue(spool.append(bytes(body), 1));
+        }
+        sender = new SpoolingBatchSender(delegate, spool, 1, 10, 3);
+
+        List<Pending> first = delegate.awaitSends(3);
+        first.get(0).respond(503);
+        first.get(1).respond(200);
+        first.get(2).respond(503);
+
+        // c stayed at the head, a was appended behind it, b is not sent again
+        List<Pending> second = delegate.awaitSends(2);
+        assertEquals("c", second.get(0).body());
+        assertEquals("a", second.get(1).body());
+        for (Pending pending : second) {
+            pending.respond(200);
+        }
+        awaitEmpty();
+        assertNull(delegate.sends.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private void awaitEmpty() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!spool.isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "spool was not drained");
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Pending {
+        private final Batch batch;
+        private final BatchSender.Callback callback;
+
+        private Pending(final Batch batch, final BatchSender.Callback callback) {
+            this.batch = batch;
+            this.callback = callback;
+        }
+
+        private String body() {
+            return new String(batch.getBody(), StandardCharsets.UTF_8);
+        }
+
+        private void respond(final int statusCode) {
+            callback.onResponse(batch, new BatchResponse(statusCode, 0));
+        }
+    }
+
+    /**
+     * Holds on to every batch until the test responds to it.
+     */
+    private static final class HoldingSender implements BatchSender {
+        private final BlockingQueue<Pending> sends = new LinkedBlockingQueue<>();
+
+        private List<Pending> awaitSends(final int count) throws InterruptedException {
+            final List<Pending> pending = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final Pending send = sends.poll(5, TimeUnit.SECONDS);
+                assertNotNull(send);
+                pending.add(send);
+            }
+            return pending;
+        }
+
+        @Override
+        public void send(final Batch batch, final Callback callback) {
+            sends.add(new Pending(batch, callback));
+        }
+
+        @Override
+        public boolean offer(final Batch batch, final Callback callback) {
+            send(batch, callback);
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
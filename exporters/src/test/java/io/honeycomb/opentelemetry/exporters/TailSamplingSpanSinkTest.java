@@ -0,0 +1,236 @@
+package io.honeycomb.opentelemetry.exporters;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.ImmutableStatus;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.SpanId;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TailSamplingSpanSinkTest {
+
+    private static final String TRACE_A = "000000000063d76f0000000037fe0393";
+    private static final String TRACE_B = "000000000063d76f0000000037fe0394";
+
+    private final RecordingSink delegate = new RecordingSink();
+    private final SpanConverter converter = new SpanConverter("my-service");
+    private TailSamplingSpanSink sink;
+
+    @AfterEach
+    public void tearDown() {
+        if (sink != null) {
+            sink.shutdown();
+        }
+    }
+
+    @Test
+    public void decidesWholeTracesOnceLocalRootEnds() {
+        sink = new TailSamplingSpanSink(delegate,
+            new TailSampler(Collections.singletonList(TailSampler.errors(1)), 0), converter, 1024 * 1024, 60_000);
+
+        sink.export(Arrays.asList(span(TRACE_A, "a-child", "0000000000000002", true),
+            span(TRACE_B, "b-child", "0000000000000002", false)));
+        assertTrue(delegate.names().isEmpty());
+        assertTrue(sink.getBufferedBytes() > 0);
+
+        sink.export(Arrays.asList(span(TRACE_A, "a-root", null, false), span(TRACE_B, "b-root", null, false)));
+        assertEquals(Arrays.asList("a-root", "a-child"), delegate.names());
+        assertEquals(0, sink.getBufferedBytes());
+
+        // stragglers follow the decision on their trace
+        sink.export(Arrays.asList(span(TRACE_A, "a-late", "0000000000000003", false),
+            span(TRACE_B, "b-late", "0000000000000003", true)));
+        assertEquals(Arrays.asList("a-root", "a-child", "a-late"), delegate.names());
+        assertEquals(0, sink.getBufferedBytes());
+    }
+
+    @Test
+    public void decidesOldestTracesEarlyOnceBufferIsFull() {
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 1), converter, 600,
+            60_000);
+
+        sink.export(Collections.singletonList(span(TRACE_A, "a-child", "0000000000000002", false)));
+        sink.export(Collections.singletonList(span(TRACE_B, "b-child", "0000000000000002", false)));
+        assertTrue(delegate.names().isEmpty());
+
+        sink.export(Collections.singletonList(span(TRACE_B, "b-child-2", "0000000000000003", false)));
+        assertEquals(Collections.singletonList("a-child"), delegate.names());
+        assertTrue(sink.getBufferedBytes() <= 600);
+    }
+
+    @Test
+    public void decidesTracesWithoutRootAfterDecisionWait() throws Exception {
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 1), converter,
+            1024 * 1024, 50);
+
+        sink.export(Collections.singletonList(span(TRACE_A, "a-child", "0000000000000002", false)));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delegate.names().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList("a-child"), delegate.names());
+    }
+
+    @Test
+    public void shutdownDecidesPendingTraces() {
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 1), converter,
+            1024 * 1024, 60_000);
+        sink.export(Collections.singletonList(span(TRACE_A, "a-child", "0000000000000002", false)));
+
+        assertTrue(sink.shutdown().isSuccess());
+        assertEquals(Collections.singletonList("a-child"), delegate.names());
+        assertTrue(delegate.shutdown);
+    }
+
+    @Test
+    public void keptTracesCarryTailSampleRate() {
+        String traceId = null;
+        for (long i = 1; traceId == null; i++) {
+            String candidate = String.format("%032x", i);
+            if (TailSampler.keeps(candidate, 5)) {
+                traceId = candidate;
+            }
+        }
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 5), converter,
+            1024 * 1024, 60_000);
+        SpanData root = TestSpanData.newBuilder()
+            .setTraceId(traceId)
+            .setSpanId("0000000000000001")
+            .setName("root")
+            .setAttributes(Attributes.of(AttributeKey.longKey("sample.rate"), 3L))
+            .build();
+
+        sink.export(Collections.singletonList(root));
+
+        assertEquals(Collections.singletonList("root"), delegate.names());
+        EventWriter writer = mock(EventWriter.class);
+        converter.write(root, writer);
+        verify(writer).setSampleRate(15);
+    }
+
+    @Test
+    public void stragglersKeepTheTailSampleRateOfTheirDecision() {
+        String traceId = null;
+        for (long i = 1; traceId == null; i++) {
+            String candidate = String.format("%032x", i);
+            if (TailSampler.keeps(candidate, 2)) {
+                traceId = candidate;
+            }
+        }
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 2), converter,
+            1024 * 1024, 60_000);
+        sink.export(Collections.singletonList(span(traceId, "root", null, false)));
+
+        // enough kept traces to push the first one's rate out of the converter, while its decision stays in use
+        for (int i = 0; i < 80_000; i++) {
+            sink.export(Collections.singletonList(span(String.format("%016x%016x", 1, i), "other", null, false)));
+            if (i % 1000 == 0) {
+                sink.export(Collections.singletonList(span(traceId, "late", "0000000000000001", false)));
+            }
+        }
+        SpanData straggler = span(traceId, "last", "0000000000000001", false);
+        sink.export(Collections.singletonList(straggler));
+
+        assertEquals("last", delegate.exported.get(delegate.exported.size() - 1).getName());
+        EventWriter writer = mock(EventWriter.class);
+        converter.write(straggler, writer);
+        verify(writer).setSampleRate(2);
+    }
+
+    @Test
+    public void childrenEndingBeforeRootGetRootSampleRate() {
+        sink = new TailSamplingSpanSink(delegate, new TailSampler(Collections.emptyList(), 1), converter,
+            1024 * 1024, 60_000);
+        SpanData child = span(TRACE_A, "child", "0000000000000001", false);
+        SpanData root = TestSpanData.newBuilder()
+            .setTraceId(TRACE_A)
+            .setSpanId("0000000000000001")
+            .setName("root")
+            .setAttributes(Attributes.of(AttributeKey.longKey("sample.rate"), 3L))
+            .build();
+
+        sink.export(Collections.singletonList(child));
+        sink.export(Collections.singletonList(root));
+
+        assertEquals(Arrays.asList("root", "child"), delegate.names());
+        EventWriter writer = mock(EventWriter.class);
+        for (SpanData span : delegate.exported) {
+            converter.write(span, writer);
+        }
+        verify(writer, times(2)).setSampleRate(3);
+    }
+
+    @Test
+    public void keepsOneInRateOfTraces() {
+        Random random = new Random(42);
+        int kept = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (TailSampler.keeps(String.format("%016x%016x", random.nextLong(), random.nextLong()), 10)) {
+                kept++;
+            }
+        }
+        assertTrue(kept > 9_500 && kept < 10_500, "kept " + kept);
+        assertTrue(TailSampler.keeps(TRACE_A, 1));
+        assertFalse(TailSampler.keeps(TRACE_A, 0));
+    }
+
+    private static SpanData span(final String traceId, final String name, final String parentSpanId,
+                                 final boolean error) {
+        TestSpanData.Builder builder = TestSpanData.newBuilder()
+            .setTraceId(traceId)
+            .setSpanId(parentSpanId == null ? "0000000000000001" : "00000000000000f" + parentSpanId.charAt(15))
+            .setName(name)
+            .setParentSpanId(parentSpanId == null ? SpanId.getInvalid() : parentSpanId);
+        if (error) {
+            builder.setStatus(ImmutableStatus.create(StatusCanonicalCode.ERROR, "failed"));
+        }
+        return builder.build();
+    }
+
+    private static final class RecordingSink implements SpanSink {
+        private final List<SpanData> exported = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean shutdown;
+
+        @Override
+        public CompletableResultCode export(final Collection<SpanData> spans) {
+            exported.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            shutdown = true;
+            return CompletableResultCode.ofSuccess();
+        }
+
+        private List<String> names() {
+            List<String> names = new ArrayList<>();
+            synchronized (exported) {
+                for (SpanData span : exported) {
+                    names.add(span.getName());
+                }
+            }
+            return names;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.trace.Span;
 import io.opentelemetry.trace.SpanId;
 import io.opentelemetry.trace.TraceState;
+import java.util.Collections;
 import java.util.List;
 
 public class TestSpanData implements SpanData {
@@ -24,6 +25,8 @@ public class TestSpanData implements SpanData {
   private final InstrumentationLibraryInfo instrumentationLibraryInfo;
   private final boolean hasEnded;
   private final Attributes attributes;
+  private final List<Event> events;
+  private final List<Link> links;
 
   public TestSpanData(Builder builder) {
     this.traceId = builder.traceId;
@@ -39,6 +42,8 @@ public class TestSpanData implements SpanData {
     this.instrumentationLibraryInfo = builder.instrumentationLibraryInfo;
     this.hasEnded = builder.hasEnded;
     this.attributes = builder.attributes;
+    this.events = builder.events;
+    this.links = builder.links;
   }
 
   public static Builder newBuilder() {
@@ -102,12 +107,12 @@ public class TestSpanData implements SpanData {
 
   @Override
   public List<Event> getEvents() {
-    return null;
+    return events;
   }
 
   @Override
   public List<Link> getLinks() {
-    return null;
+    return links;
   }
 
   @Override
@@ -132,12 +137,12 @@ public class TestSpanData implements SpanData {
 
   @Override
   public int getTotalRecordedEvents() {
-    return 0;
+    return events.size();
   }
 
   @Override
   public int getTotalRecordedLinks() {
-    return 0;
+    return links.size();
   }
 
   @Override
@@ -160,6 +165,8 @@ public class TestSpanData implements SpanData {
     private Span.Kind kind;
     private boolean hasEnded;
     private Attributes attributes = Attributes.empty();
+    private List<Event> events = Collections.emptyList();
+    private List<Link> links = Collections.emptyList();
 
     public Builder setTraceId(String traceId) {
       this.traceId = traceId;
@@ -222,6 +229,16 @@ public class TestSpanData implements SpanData {
       return this;
     }
 
+    public Builder setEvents(List<Event> events) {
+      this.events = events;
+      return this;
+    }
+
+    public Builder setLinks(List<Link> links) {
+      this.links = links;
+      return this;
+    }
+
     public Builder setIsSampled(boolean isSampled) {
       this.isSampled = isSampled;
       return this;
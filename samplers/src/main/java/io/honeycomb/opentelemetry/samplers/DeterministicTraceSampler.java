@@ -9,12 +9,7 @@ import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.trace.Span.Kind;
 import io.opentelemetry.trace.SpanContext;
 import java.util.List;
-
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This TraceSampler allows for distributed sampling based on a common field
@@ -43,9 +38,15 @@ public class DeterministicTraceSampler implements Sampler {
     private static final int MAX_U_INT = 0xffffffff;
     private static final int ALWAYS_SAMPLE = 1;
     private static final int NEVER_SAMPLE = 0;
+    private static final AttributeKey<Long> SAMPLE_RATE_KEY = AttributeKey.longKey("sample.rate");
+    private static final int RESULT_CACHE_SIZE = 64;
 
     private final int sampleRate;
     private final int upperBound;
+    private final SamplingResult sampledResult;
+    private final SamplingResult droppedResult;
+    private final AtomicReferenceArray<HoneycombSamplingResult> resultCache =
+        new AtomicReferenceArray<>(RESULT_CACHE_SIZE);
 
     public final static String DESCRIPTION = "HoneycombDeterministicSampler";
 
@@ -54,18 +55,21 @@ public class DeterministicTraceSampler implements Sampler {
      *
      * @param sampleRate to use - must not be negative.
      * @throws IllegalArgumentException if sampleRate is negative.
-     * @throws IllegalStateException    if SHA-1 is not supported.
      */
     public DeterministicTraceSampler(final int sampleRate) {
         Assert.isTrue(sampleRate >= 0, "Sample rate must not be negative");
         this.sampleRate = sampleRate;
-        getSha(); // quick check that SHA-1 is available
         upperBound = sampleRate == 0 ? 0 : Integer.divideUnsigned(MAX_U_INT, sampleRate);
+        sampledResult = newResult(sampleRate);
+        droppedResult = newResult(NEVER_SAMPLE);
     }
 
     /**
      * Decides, based on the given traceId, whether to sample the current trace. 0
      * if not, otherwise it returns the configured {@code sampleRate}.
+     * <p>
+     * The decision is taken from the first 4 bytes of the SHA-1 digest of the traceId, which is computed
+     * without allocating so that this is safe to call on the span start hot path.
      *
      * @param traceId to use as input to the sampling algorithm.
      * @return a decision of whether the trace is to be sampled.
@@ -78,22 +82,11 @@ public class DeterministicTraceSampler implements Sampler {
         if (sampleRate == NEVER_SAMPLE) {
             return 0;
         }
-        final MessageDigest sha = getSha();
-        sha.update(traceId.getBytes(StandardCharsets.UTF_8));
-        final byte[] digest = sha.digest();
-        final int first4Bytes = ByteBuffer.wrap(digest).order(ByteOrder.BIG_ENDIAN).getInt(0);
+        final int first4Bytes = Sha1.first32Bits(traceId);
         final boolean shouldSample = Integer.compareUnsigned(first4Bytes, upperBound) <= 0;
         return shouldSample ? sampleRate : 0;
     }
 
-    private MessageDigest getSha() {
-        try {
-            return MessageDigest.getInstance("SHA-1");
-        } catch (final NoSuchAlgorithmException e) { // very unlikely to happen!
-            throw new IllegalStateException("Failed to load SHA-1 algorithm", e);
-        }
-    }
-
     @Override
     public String getDescription() {
         return DESCRIPTION;
@@ -112,18 +105,44 @@ public class DeterministicTraceSampler implements Sampler {
         return createResult(sampleRate);
     }
 
+    /**
+     * Returns the sampling result for the given sample rate. Results are immutable and shared: the
+     * configured rate and the dropped result are precomputed, and any other rate (as supplied by subclasses)
+     * is kept in a small bounded cache so that repeated rates do not create garbage on every span.
+     *
+     * @param sampleRate the rate the span was sampled at, or 0 if it was dropped.
+     * @return the sampling result.
+     */
     protected SamplingResult createResult(int sampleRate) {
-        Attributes attrs = Attributes.of(AttributeKey.longKey("sample.rate"), (long) sampleRate);
+        if (sampleRate == this.sampleRate) {
+            return sampledResult;
+        }
+        if (sampleRate == NEVER_SAMPLE) {
+            return droppedResult;
+        }
+        final int index = sampleRate & (RESULT_CACHE_SIZE - 1);
+        HoneycombSamplingResult result = resultCache.get(index);
+        if (result == null || result.sampleRate != sampleRate) {
+            result = newResult(sampleRate);
+            resultCache.set(index, result);
+        }
+        return result;
+    }
+
+    private static HoneycombSamplingResult newResult(final int sampleRate) {
+        Attributes attrs = Attributes.of(SAMPLE_RATE_KEY, (long) sampleRate);
         Decision decision = sampleRate > 0 ? Decision.RECORD_AND_SAMPLE : Decision.DROP;
 
-        return new HoneycombSamplingResult(decision, attrs);
+        return new HoneycombSamplingResult(sampleRate, decision, attrs);
     }
 
-    class HoneycombSamplingResult implements SamplingResult {
+    static class HoneycombSamplingResult implements SamplingResult {
+        private final int sampleRate;
         private final Decision decision;
         private final Attributes attributes;
 
-        public HoneycombSamplingResult(final Decision decision, final Attributes attributes) {
+        public HoneycombSamplingResult(final int sampleRate, final Decision decision, final Attributes attributes) {
+            this.sampleRate = sampleRate;
             this.decision = decision;
             this.attributes = attributes;
         }
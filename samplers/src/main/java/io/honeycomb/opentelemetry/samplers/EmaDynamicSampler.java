@@ -0,0 +1,267 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This TraceSampler picks a sample rate per key, so that rare kinds of spans are kept while frequent ones are sampled
+ * down, aiming for the given average sample rate overall. The key of a span is its name together with the values of
+ * the given attributes at the start of the span, e.g. {@code http.method}. As samplers run when a span starts, only
+ * attributes passed to the span builder can be keys; attributes set afterwards, such as {@code http.status_code},
+ * are always missing from the key.
+ * <p>
+ * Spans are counted per key as they start, and the sample rates are recomputed on a background thread at a fixed
+ * interval from an exponential moving average of the counts. The rates are spread logarithmically across the keys,
+ * the same way as the EMA dynamic sampler of the Honeycomb Go dynsampler: keys seen only a few times are sampled at
+ * 1, while the most frequent keys take the highest rates. Keys seen for the first time are sampled at 1 until the
+ * next recomputation. Each rate is applied deterministically based on the trace id, like
+ * {@link DeterministicTraceSampler}, and the chosen rate is recorded as {@code sample.rate}.
+ * <p>
+ * Rates are only picked for root spans and spans with a remote parent. Spans with a local parent follow the decision
+ * taken for their parent and record the rate their local root was kept at, so that traces are kept or dropped as a
+ * whole; only the spans that are decided count towards the rates of their keys. Install the sampler directly rather
+ * than wrapped in {@code Samplers.parentBased}, which would leave child spans without a {@code sample.rate}.
+ * <p>
+ * Counting is a lookup in a concurrent map and an increment of a striped {@link LongAdder}, so it is cheap to call from
+ * many threads at once. Keys that have not been seen for a while are aged out, and once the maximum number of keys is
+ * reached any further keys share a single rate.
+ *
+ * <h1>Thread-safety</h1> Instances of this class are thread-safe and can be
+ * shared. Call {@link #shutdown()} to stop the background thread.
+ *
+ * @see <a href="https://github.com/honeycombio/dynsampler-go/blob/main/emasamplerate.go">Go EMA sampler</a>
+ */
+public class EmaDynamicSampler implements Sampler {
+    private static final long DEFAULT_ADJUSTMENT_INTERVAL_MILLIS = 15_000;
+    private static final double DEFAULT_WEIGHT = 0.5;
+    private static final double AGE_OUT_VALUE = 0.5;
+    private static final int DEFAULT_MAX_KEYS = 500;
+
+    public final static String DESCRIPTION = "HoneycombEmaDynamicSampler";
+
+    private final int goalSampleRate;
+    private final List<AttributeKey<?>> keyAttributes;
+    private final double weight;
+    private final int maxKeys;
+    private final Map<Object, KeyState> keys = new ConcurrentHashMap<>();
+    // shared by the keys that arrive once maxKeys is reached
+    private final KeyState overflow = new KeyState();
+    private final TraceDecisions decisions = new TraceDecisions();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Creates a sampler that keys spans by name only and recomputes its rates every 15 seconds.
+     *
+     * @param goalSampleRate the average sample rate to aim for - must be at least 1.
+     * @throws IllegalArgumentException if goalSampleRate is less than 1.
+     */
+    public EmaDynamicSampler(final int goalSampleRate) {
+        this(goalSampleRate, Collections.emptyList(), DEFAULT_ADJUSTMENT_INTERVAL_MILLIS, DEFAULT_WEIGHT,
+            DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param goalSampleRate           the average sample rate to aim for - must be at least 1.
+     * @param keyAttributes            the attributes that make up the key of a span, together with its name. Only
+     *                                 attributes present when the span starts are seen.
+     * @param adjustmentIntervalMillis how often the rates are recomputed - must be positive.
+     * @param weight                   the weight of the latest interval in the moving average, between 0 and 1.
+     *                                 Higher weights adapt to changes in traffic more quickly.
+     * @param maxKeys                  the maximum number of keys to track - must be positive.
+     * @throws IllegalArgumentException if any of the arguments is out of range.
+     */
+    public EmaDynamicSampler(final int goalSampleRate, final List<AttributeKey<?>> keyAttributes,
+                             final long adjustmentIntervalMillis, final double weight, final int maxKeys) {
+        Assert.isTrue(goalSampleRate >= 1, "Goal sample rate must be at least 1");
+        Assert.notNull(keyAttributes, "Key attributes must not be null");
+        Assert.isTrue(adjustmentIntervalMillis > 0, "Adjustment interval must be positive");
+        Assert.isTrue(weight > 0 && weight <= 1, "Weight must be greater than 0 and at most 1");
+        Assert.isTrue(maxKeys > 0, "Max keys must be positive");
+        this.goalSampleRate = goalSampleRate;
+        this.keyAttributes = new ArrayList<>(keyAttributes);
+        this.weight = weight;
+        this.maxKeys = maxKeys;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-ema-sampler-%d").setDaemon(true).build());
+        timer.scheduleAtFixedRate(this::updateRates, adjustmentIntervalMillis, adjustmentIntervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    public SamplingResult shouldSample(
+        SpanContext parentContext,
+        String traceId,
+        String name,
+        Kind spanKind,
+        ReadableAttributes attributes,
+        List<SpanData.Link> parentLinks) {
+
+        final SamplingResult inherited = decisions.inherit(parentContext, traceId);
+        if (inherited != null) {
+            return inherited;
+        }
+        final KeyState state = stateFor(key(name, attributes));
+        state.count.increment();
+        return decisions.record(traceId,
+            state.sampler.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks));
+    }
+
+    /**
+     * Stops recomputing the sample rates. Spans are sampled at the last rates from then on.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Folds the counts since the last call into the moving averages, ages out keys that are no longer seen and
+     * recomputes the rate of each key.
+     */
+    synchronized void updateRates() {
+        final List<KeyState> states = new ArrayList<>(keys.size() + 1);
+        final Iterator<KeyState> it = keys.values().iterator();
+        while (it.hasNext()) {
+            final KeyState state = it.next();
+            state.updateEma(weight);
+            if (state.ema < AGE_OUT_VALUE) {
+                it.remove();
+            } else {
+                states.add(state);
+            }
+        }
+        overflow.updateEma(weight);
+        if (overflow.ema >= AGE_OUT_VALUE) {
+            states.add(overflow);
+        }
+        if (states.isEmpty()) {
+            return;
+        }
+        states.sort((a, b) -> Double.compare(a.ema, b.ema));
+
+        double sumEvents = 0;
+        double logSum = 0;
+        for (KeyState state : states) {
+            sumEvents += state.ema;
+            logSum += Math.log10(Math.max(1, state.ema));
+        }
+        if (logSum == 0) {
+            // every key was seen about once per interval, which is rare enough to keep them all
+            for (KeyState state : states) {
+                state.setRate(1);
+            }
+            return;
+        }
+        final double goalRatio = sumEvents / goalSampleRate / logSum;
+
+        // keys that are sampled at less than their share pass the remainder on to the more frequent keys
+        double extra = 0;
+        int keysRemaining = states.size();
+        for (KeyState state : states) {
+            final double count = Math.max(1, state.ema);
+            double goalForKey = Math.max(1, Math.log10(count) * goalRatio);
+            final double extraForKey = extra / keysRemaining;
+            goalForKey += extraForKey;
+            extra -= extraForKey;
+            keysRemaining--;
+            if (count <= goalForKey) {
+                state.setRate(1);
+                extra += goalForKey - count;
+            } else {
+                final int rate = (int) Math.min(Integer.MAX_VALUE, Math.ceil(count / goalForKey));
+                state.setRate(rate);
+                extra += goalForKey - count / rate;
+            }
+        }
+    }
+
+    private Object key(final String name, final ReadableAttributes attributes) {
+        if (keyAttributes.isEmpty()) {
+            return name;
+        }
+        final Object[] key = new Object[keyAttributes.size() + 1];
+        key[0] = name;
+        for (int i = 0; i < keyAttributes.size(); i++) {
+            key[i + 1] = attributes == null ? null : attributes.get(keyAttributes.get(i));
+        }
+        return new CompositeKey(key);
+    }
+
+    private KeyState stateFor(final Object key) {
+        final KeyState state = keys.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (keys.size() >= maxKeys) {
+            return overflow;
+        }
+        return keys.computeIfAbsent(key, k -> new KeyState());
+    }
+
+    /**
+     * The count, moving average and current rate of a key.
+     */
+    private static final class KeyState {
+        private final LongAdder count = new LongAdder();
+        // only accessed by the thread updating the rates
+        private double ema;
+        private boolean seen;
+        private int rate = 1;
+        private volatile DeterministicTraceSampler sampler = new DeterministicTraceSampler(1);
+
+        private void updateEma(final double weight) {
+            final long latest = count.sumThenReset();
+            ema = seen ? weight * latest + (1 - weight) * ema : latest;
+            seen = true;
+        }
+
+        private void setRate(final int rate) {
+            if (rate != this.rate) {
+                this.rate = rate;
+                sampler = new DeterministicTraceSampler(rate);
+            }
+        }
+    }
+
+    private static final class CompositeKey {
+        private final Object[] values;
+        private final int hash;
+
+        private CompositeKey(final Object[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof CompositeKey && Arrays.equals(values, ((CompositeKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * This TraceSampler sheds load at the start of traces when spans are piling up on their way to Honeycomb, so that
+ * whole traces are dropped rather than arbitrary spans once a queue overflows.
+ * <p>
+ * It polls the backlog of the exporter, e.g. the queue depth of the Honeycomb span processor or the pending batch
+ * requests of the Honeycomb span exporter, at a fixed interval. While the backlog is at least half of its capacity the
+ * sample rate is doubled at every check, up to the given maximum, and once the backlog has fallen to a quarter of its
+ * capacity or less the rate is halved at every check, back down to the given sample rate. In between, the rate is
+ * held. If the backlog cannot be read, the rate is held until the next check. Each rate is applied deterministically
+ * based on the trace id, like {@link DeterministicTraceSampler}, and as the bound for a higher rate lies within the
+ * bound for any lower one, the traces sampled at a higher rate are a subset of those sampled at a lower one, whether
+ * or not the rates are multiples of each other.
+ * <p>
+ * The rate is only applied to root spans and spans with a remote parent. Spans with a local parent follow the
+ * decision taken for their parent and record the rate their local root was kept at, so that a rate change never cuts
+ * a trace that is already under way short.
+ *
+ * <h1>Thread-safety</h1> Instances of this class are thread-safe and can be
+ * shared. Call {@link #shutdown()} to stop the background thread.
+ */
+public class QueuePressureSampler extends DeterministicTraceSampler {
+    private static final Logger LOG = LoggerFactory.getLogger(QueuePressureSampler.class);
+    private static final int MAX_U_INT = 0xffffffff;
+    private static final long DEFAULT_CHECK_INTERVAL_MILLIS = 100;
+    private static final double RAISE_AT = 0.5;
+    private static final double LOWER_AT = 0.25;
+
+    public final static String DESCRIPTION = "HoneycombQueuePressureSampler";
+
+    private final int baseSampleRate;
+    private final int maxSampleRate;
+    private final IntSupplier backlog;
+    private final int capacity;
+    private final ScheduledExecutorService timer;
+    private final TraceDecisions decisions = new TraceDecisions();
+    private volatile Rate rate;
+
+    /**
+     * Creates a sampler that checks the backlog every 100 milliseconds.
+     *
+     * @param sampleRate    the rate to sample at while there is no pressure - must be at least 1.
+     * @param maxSampleRate the highest rate to raise the sample rate to - must be at least sampleRate.
+     * @param backlog       supplies the current backlog, e.g. the number of spans in a queue.
+     * @param capacity      the backlog at which the exporter starts to drop spans - must be positive.
+     * @throws IllegalArgumentException if any of the arguments is out of range.
+     */
+    public QueuePressureSampler(final int sampleRate, final int maxSampleRate, final IntSupplier backlog,
+                                final int capacity) {
+        this(sampleRate, maxSampleRate, backlog, capacity, DEFAULT_CHECK_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param sampleRate          the rate to sample at while there is no pressure - must be at least 1.
+     * @param maxSampleRate       the highest rate to raise the sample rate to - must be at least sampleRate.
+     * @param backlog             supplies the current backlog, e.g. the number of spans in a queue.
+     * @param capacity            the backlog at which the exporter starts to drop spans - must be positive.
+     * @param checkIntervalMillis how often the backlog is checked - must be positive.
+     * @throws IllegalArgumentException if any of the arguments is out of range.
+     */
+    public QueuePressureSampler(final int sampleRate, final int maxSampleRate, final IntSupplier backlog,
+                                final int capacity, final long checkIntervalMillis) {
+        super(sampleRate);
+        Assert.isTrue(sampleRate >= 1, "Sample rate must be at least 1");
+        Assert.isTrue(maxSampleRate >= sampleRate, "Max sample rate must be at least the sample rate");
+        Assert.notNull(backlog, "Backlog must not be null");
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+        Assert.isTrue(checkIntervalMillis > 0, "Check interval must be positive");
+        this.baseSampleRate = sampleRate;
+        this.maxSampleRate = maxSampleRate;
+        this.backlog = backlog;
+        this.capacity = capacity;
+        this.rate = new Rate(sampleRate);
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-queue-pressure-sampler-%d").setDaemon(true).build());
+        timer.scheduleWithFixedDelay(this::checkBacklog, checkIntervalMillis, checkIntervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decides, based on the given traceId, whether to sample the current trace at the current rate.
+     *
+     * @param traceId to use as input to the sampling algorithm.
+     * @return the current rate if the trace is sampled, otherwise 0.
+     */
+    @Override
+    public int sample(final String traceId) {
+        final Rate current = rate;
+        if (current.sampleRate == 1) {
+            return 1;
+        }
+        final int first4Bytes = Sha1.first32Bits(traceId);
+        return Integer.compareUnsigned(first4Bytes, current.upperBound) <= 0 ? current.sampleRate : 0;
+    }
+
+    @Override
+    public SamplingResult shouldSample(
+        SpanContext parentContext,
+        String traceId,
+        String name,
+        Kind spanKind,
+        ReadableAttributes attributes,
+        List<SpanData.Link> parentLinks) {
+
+        final SamplingResult inherited = decisions.inherit(parentContext, traceId);
+        if (inherited != null) {
+            return inherited;
+        }
+        return decisions.record(traceId,
+            super.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks));
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    /**
+     * @return the rate spans are currently sampled at.
+     */
+    public int getCurrentSampleRate() {
+        return rate.sampleRate;
+    }
+
+    /**
+     * Stops checking the backlog. Spans are sampled at the last rate from then on.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Raises or lowers the rate according to the current backlog. Failures to read the backlog are logged rather than
+     * thrown, as they would cancel all further checks.
+     */
+    synchronized void checkBacklog() {
+        final int current = rate.sampleRate;
+        final double pressure;
+        try {
+            pressure = (double) backlog.getAsInt() / capacity;
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to read the backlog, holding the sample rate at {}", current, e);
+            return;
+        }
+        int next = current;
+        if (pressure >= RAISE_AT) {
+            next = (int) Math.min(maxSampleRate, 2L * current);
+        } else if (pressure <= LOWER_AT) {
+            next = Math.max(baseSampleRate, current / 2);
+        }
+        if (next != current) {
+            rate = new Rate(next);
+        }
+    }
+
+    /**
+     * A rate together with the bound it samples below.
+     */
+    private static final class Rate {
+        private final int sampleRate;
+        private final int upperBound;
+
+        private Rate(final int sampleRate) {
+            this.sampleRate = sampleRate;
+            this.upperBound = Integer.divideUnsigned(MAX_U_INT, sampleRate);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This TraceSampler samples spans at the rate of the first {@link SamplingRule} they meet, and at a default rate if
+ * they meet none, e.g. to drop health checks, keep all requests to a specific route and sample everything else at 1
+ * in 20. Each rate is applied deterministically based on the trace id, like {@link DeterministicTraceSampler}, and
+ * recorded as {@code sample.rate}.
+ * <p>
+ * Rules are only applied to root spans and spans with a remote parent. Spans with a local parent follow the decision
+ * taken for their parent and record the rate their local root was kept at, so that traces are kept or dropped as a
+ * whole: a rule dropping health checks drops the traces they are the root of, not health check spans inside other
+ * traces. Install the sampler directly rather than wrapped in {@code Samplers.parentBased}, which would leave child
+ * spans without a {@code sample.rate}.
+ * <p>
+ * The rules are not evaluated one after the other for every span. The conditions on span name and kind are only
+ * evaluated the first time a name is seen with a kind, which yields the rules that can still apply to spans of this
+ * name and kind. Runs of these rules that each have a single condition on the same attribute look the attribute up
+ * once, and those comparing it to different values are merged into a single hash lookup, so that a span is typically
+ * decided with a map lookup for its name and a few attribute lookups.
+ * Regular expressions on attributes are only run on values that contain the literal text the expression requires.
+ * Up to 1024 names are remembered per span kind; spans with further names are still sampled correctly, but have the
+ * conditions on their name evaluated every time.
+ *
+ * <h1>Thread-safety</h1> Instances of this class are thread-safe and can be
+ * shared.
+ */
+public class RuleBasedSampler implements Sampler {
+    private static final int MAX_CACHED_NAMES = 1024;
+    private static final int NO_RULE = -1;
+
+    public final static String DESCRIPTION = "HoneycombRuleBasedSampler";
+
+    private final List<SamplingRule> rules;
+    private final DeterministicTraceSampler[] samplers;
+    private final DeterministicTraceSampler defaultSampler;
+    // the compiled rules by span kind and name
+    private final List<Map<String, Step[]>> compiled = new ArrayList<>();
+    private final TraceDecisions decisions = new TraceDecisions();
+
+    /**
+     * @param rules             the rules, in the order they are tried.
+     * @param defaultSampleRate the rate to sample spans that meet no rule at - must not be negative.
+     * @throws IllegalArgumentException if defaultSampleRate is negative.
+     */
+    public RuleBasedSampler(final List<SamplingRule> rules, final int defaultSampleRate) {
+        Assert.notNull(rules, "Rules must not be null");
+        this.rules = new ArrayList<>(rules);
+        this.samplers = new DeterministicTraceSampler[this.rules.size()];
+        for (int i = 0; i < samplers.length; i++) {
+            samplers[i] = new DeterministicTraceSampler(this.rules.get(i).getSampleRate());
+        }
+        this.defaultSampler = new DeterministicTraceSampler(defaultSampleRate);
+        for (int i = 0; i < Kind.values().length; i++) {
+            compiled.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    public SamplingResult shouldSample(
+        SpanContext parentContext,
+        String traceId,
+        String name,
+        Kind spanKind,
+        ReadableAttributes attributes,
+        List<SpanData.Link> parentLinks) {
+
+        final SamplingResult inherited = decisions.inherit(parentContext, traceId);
+        if (inherited != null) {
+            return inherited;
+        }
+        final int rule = firstMatchingRule(name == null ? "" : name, spanKind == null ? Kind.INTERNAL : spanKind,
+            attributes);
+        final DeterministicTraceSampler sampler = rule == NO_RULE ? defaultSampler : samplers[rule];
+        return decisions.record(traceId,
+            sampler.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks));
+    }
+
+    private int firstMatchingRule(final String name, final Kind spanKind, final ReadableAttributes attributes) {
+        final Map<String, Step[]> byName = compiled.get(spanKind.ordinal());
+        Step[] steps = byName.get(name);
+        if (steps == null) {
+            steps = compile(name, spanKind);
+            if (byName.size() < MAX_CACHED_NAMES) {
+                byName.put(name, steps);
+            }
+        }
+        for (Step step : steps) {
+            final int rule = step.match(attributes);
+            if (rule != NO_RULE) {
+                return rule;
+            }
+        }
+        return NO_RULE;
+    }
+
+    /**
+     * Turns the rules that apply to spans of the given name and kind into the steps to take for their attributes.
+     */
+    private Step[] compile(final String name, final Kind spanKind) {
+        final List<Step> steps = new ArrayList<>();
+        AttributeRun run = null;
+        for (int i = 0; i < rules.size(); i++) {
+            final SamplingRule rule = rules.get(i);
+            if (!rule.appliesTo(name, spanKind)) {
+                continue;
+            }
+            final List<SamplingRule.AttributeCondition> conditions = rule.getAttributeConditions();
+            if (conditions.size() == 1) {
+                final SamplingRule.AttributeCondition condition = conditions.get(0);
+                if (run == null || !run.key.equals(condition.getKey())) {
+                    run = new AttributeRun(condition.getKey());
+                    steps.add(run);
+                }
+                run.add(condition.getCondition(), i);
+                continue;
+            }
+            run = null;
+            steps.add(new RuleMatch(i, conditions.toArray(new SamplingRule.AttributeCondition[0])));
+            if (conditions.isEmpty()) {
+                // no later rule can apply
+                break;
+            }
+        }
+        return steps.toArray(new Step[0]);
+    }
+
+    /**
+     * A step towards finding the first rule a span meets.
+     */
+    private interface Step {
+        /**
+         * @return the index of the rule the span meets, or {@link #NO_RULE} to move on to the next step.
+         */
+        int match(ReadableAttributes attributes);
+    }
+
+    private static final class RuleMatch implements Step {
+        private final int rule;
+        private final SamplingRule.AttributeCondition[] conditions;
+
+        private RuleMatch(final int rule, final SamplingRule.AttributeCondition[] conditions) {
+            this.rule = rule;
+            this.conditions = conditions;
+        }
+
+        @Override
+        public int match(final ReadableAttributes attributes) {
+            for (SamplingRule.AttributeCondition condition : conditions) {
+                if (!condition.matches(attributes)) {
+                    return NO_RULE;
+                }
+            }
+            return rule;
+        }
+    }
+
+    /**
+     * Consecutive rules that each have a single condition on the same attribute. The attribute is looked up once, the
+     * rules comparing it to a value are merged into a single hash lookup, and only the other rules that come before
+     * the rule found by the lookup are evaluated.
+     */
+    private static final class AttributeRun implements Step {
+        private final AttributeKey<?> key;
+        private final Map<Object, Integer> exactRules = new HashMap<>();
+        private final List<SamplingRule.Condition> otherConditions = new ArrayList<>();
+        private final List<Integer> otherRules = new ArrayList<>();
+
+        private AttributeRun(final AttributeKey<?> key) {
+            this.key = key;
+        }
+
+        private void add(final SamplingRule.Condition condition, final int rule) {
+            if (condition instanceof SamplingRule.Equals) {
+                // an earlier rule for the same value wins
+                exactRules.putIfAbsent(((SamplingRule.Equals) condition).getExpected(), rule);
+            } else {
+                otherConditions.add(condition);
+                otherRules.add(rule);
+            }
+        }
+
+        @Override
+        public int match(final ReadableAttributes attributes) {
+            final Object value = attributes == null ? null : attributes.get(key);
+            if (value == null) {
+                return NO_RULE;
+            }
+            final Integer exactRule = exactRules.isEmpty() ? null : exactRules.get(value);
+            final int limit = exactRule == null ? Integer.MAX_VALUE : exactRule;
+            for (int i = 0; i < otherRules.size() && otherRules.get(i) < limit; i++) {
+                if (otherConditions.get(i).matches(value)) {
+                    return otherRules.get(i);
+                }
+            }
+            return exactRule == null ? NO_RULE : exactRule;
+        }
+    }
+}
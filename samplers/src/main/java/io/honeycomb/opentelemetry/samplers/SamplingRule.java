@@ -0,0 +1,370 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.trace.Span.Kind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A rule of a {@link RuleBasedSampler}: the conditions a span must meet at its start, together with the rate the
+ * spans that meet them are sampled at. A rule has at most one condition on the span name, optionally restricts the
+ * span kinds it applies to, and may have any number of conditions on attributes, all of which must hold.
+ * <p>
+ * Names and attribute values can be matched exactly, by prefix or by a regular expression, which must match the whole
+ * value. Prefixes and regular expressions apply to string attributes only, while exact matches apply to attributes of
+ * any type.
+ *
+ * <h1>Thread-safety</h1> Instances of this class are immutable and can be
+ * shared.
+ */
+public final class SamplingRule {
+    // predefined character classes, boundaries and control characters
+    private static final String SINGLE_CHARACTER_ESCAPES = "dDsSwWbBhHvVRXAzZGntrfae";
+
+    private final int sampleRate;
+    private final Condition nameCondition;
+    private final Set<Kind> spanKinds;
+    private final List<AttributeCondition> attributeConditions;
+
+    private SamplingRule(final Builder builder) {
+        this.sampleRate = builder.sampleRate;
+        this.nameCondition = builder.nameCondition;
+        this.spanKinds = builder.spanKinds == null ? EnumSet.allOf(Kind.class) : EnumSet.copyOf(builder.spanKinds);
+        this.attributeConditions = Collections.unmodifiableList(new ArrayList<>(builder.attributeConditions));
+    }
+
+    /**
+     * @param sampleRate the rate to sample the spans that meet the rule at - must not be negative.
+     * @return a builder for a rule that matches every span until conditions are added.
+     * @throws IllegalArgumentException if sampleRate is negative.
+     */
+    public static Builder newBuilder(final int sampleRate) {
+        return new Builder(sampleRate);
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    boolean appliesTo(final String name, final Kind spanKind) {
+        return spanKinds.contains(spanKind) && (nameCondition == null || nameCondition.matches(name));
+    }
+
+    List<AttributeCondition> getAttributeConditions() {
+        return attributeConditions;
+    }
+
+    /**
+     * A condition on a name or attribute value.
+     */
+    abstract static class Condition {
+        abstract boolean matches(Object value);
+    }
+
+    static final class Equals extends Condition {
+        private final Object expected;
+
+        private Equals(final Object expected) {
+            this.expected = expected;
+        }
+
+        Object getExpected() {
+            return expected;
+        }
+
+        @Override
+        boolean matches(final Object value) {
+            return expected.equals(value);
+        }
+    }
+
+    private static final class StartsWith extends Condition {
+        private final String prefix;
+
+        private StartsWith(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(final Object value) {
+            return value instanceof String && ((String) value).startsWith(prefix);
+        }
+    }
+
+    /**
+     * Matches the whole value against a regular expression. Where the expression is a plain sequence without groups or
+     * alternatives, the longest run of literal characters it requires is looked up in the value first, so that most
+     * values that do not match are rejected without running the expression.
+     */
+    private static final class Matches extends Condition {
+        private final Pattern pattern;
+        private final String requiredLiteral;
+
+        private Matches(final String regex) {
+            this.pattern = Pattern.compile(regex);
+            this.requiredLiteral = requiredLiteral(regex);
+        }
+
+        @Override
+        boolean matches(final Object value) {
+            if (!(value instanceof String)) {
+                return false;
+            }
+            final String string = (String) value;
+            if (requiredLiteral != null && !string.contains(requiredLiteral)) {
+                return false;
+            }
+            return pattern.matcher(string).matches();
+        }
+    }
+
+    /**
+     * @return the longest run of literal characters that every match of the expression contains, or null if there is
+     * none or the expression is too complex to tell.
+     */
+    static String requiredLiteral(final String regex) {
+        if (regex.indexOf('(') >= 0 || regex.indexOf('|') >= 0 || regex.contains("\\Q")) {
+            return null;
+        }
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        boolean lastWasLiteral = false;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                // an escaped punctuation character
+                run.append(regex.charAt(i + 1));
+                lastWasLiteral = true;
+                i += 2;
+                continue;
+            }
+            if (c == '*' || c == '?' || c == '{' || c == '+') {
+                if (lastWasLiteral && c != '+') {
+                    // the quantified character may not be there at all
+                    run.setLength(run.length() - 1);
+                }
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+                i++;
+                if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    // a reluctant or possessive quantifier
+                    i++;
+                }
+            } else if (c == '[') {
+                i = endOfCharacterClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '\\') {
+                if (i + 1 >= regex.length() || SINGLE_CHARACTER_ESCAPES.indexOf(regex.charAt(i + 1)) < 0) {
+                    // e.g. a code point or a property, which take more than one character
+                    return null;
+                }
+                i += 2;
+            } else if (c == '.' || c == '^' || c == '$') {
+                i++;
+            } else {
+                run.append(c);
+                lastWasLiteral = true;
+                i++;
+                continue;
+            }
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+            lastWasLiteral = false;
+        }
+        if (run.length() > longest.length()) {
+            longest = run.toString();
+        }
+        return longest.isEmpty() ? null : longest;
+    }
+
+    /**
+     * @return the index after the character class starting at the given index, or -1 if it is nested or not closed.
+     */
+    private static int endOfCharacterClass(final String regex, final int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A condition on the value of an attribute.
+     */
+    static final class AttributeCondition {
+        private final AttributeKey<?> key;
+        private final Condition condition;
+
+        private AttributeCondition(final AttributeKey<?> key, final Condition condition) {
+            this.key = key;
+            this.condition = condition;
+        }
+
+        AttributeKey<?> getKey() {
+            return key;
+        }
+
+        Condition getCondition() {
+            return condition;
+        }
+
+        boolean matches(final ReadableAttributes attributes) {
+            final Object value = attributes == null ? null : attributes.get(key);
+            return value != null && condition.matches(value);
+        }
+    }
+
+    public static final class Builder {
+        private final int sampleRate;
+        private Condition nameCondition;
+        private Set<Kind> spanKinds;
+        private final List<AttributeCondition> attributeConditions = new ArrayList<>();
+
+        private Builder(final int sampleRate) {
+            Assert.isTrue(sampleRate >= 0, "Sample rate must not be negative");
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Match spans with exactly the given name. Replaces any other condition on the name.
+         *
+         * @param name the span name.
+         * @return this.
+         */
+        public Builder nameEquals(final String name) {
+            Assert.notNull(name, "The name must not be null");
+            this.nameCondition = new Equals(name);
+            return this;
+        }
+
+        /**
+         * Match spans whose name starts with the given prefix. Replaces any other condition on the name.
+         *
+         * @param prefix the start of the span name.
+         * @return this.
+         */
+        public Builder nameStartsWith(final String prefix) {
+            Assert.notNull(prefix, "The prefix must not be null");
+            this.nameCondition = new StartsWith(prefix);
+            return this;
+        }
+
+        /**
+         * Match spans whose whole name matches the given regular expression. Replaces any other condition on the name.
+         *
+         * @param regex the regular expression.
+         * @return this.
+         * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+         */
+        public Builder nameMatches(final String regex) {
+            Assert.notNull(regex, "The regular expression must not be null");
+            this.nameCondition = new Matches(regex);
+            return this;
+        }
+
+        /**
+         * Match spans of the given kinds only.
+         * <p>
+         * Default: All kinds
+         *
+         * @param spanKind  a span kind.
+         * @param spanKinds further span kinds.
+         * @return this.
+         */
+        public Builder spanKinds(final Kind spanKind, final Kind... spanKinds) {
+            Assert.notNull(spanKind, "The span kind must not be null");
+            this.spanKinds = EnumSet.of(spanKind, spanKinds);
+            return this;
+        }
+
+        /**
+         * Match spans whose attribute has the given value, e.g. a {@code http.status_code} of 200.
+         *
+         * @param key   the attribute.
+         * @param value the value it must have.
+         * @param <T>   the type of the attribute.
+         * @return this.
+         */
+        public <T> Builder attributeEquals(final AttributeKey<T> key, final T value) {
+            Assert.notNull(key, "The attribute key must not be null");
+            Assert.notNull(value, "The attribute value must not be null");
+            attributeConditions.add(new AttributeCondition(key, new Equals(value)));
+            return this;
+        }
+
+        /**
+         * Match spans whose string attribute has the given value.
+         *
+         * @param key   the string attribute.
+         * @param value the value it must have.
+         * @return this.
+         */
+        public Builder attributeEquals(final String key, final String value) {
+            return attributeEquals(AttributeKey.stringKey(key), value);
+        }
+
+        /**
+         * Match spans whose string attribute starts with the given prefix.
+         *
+         * @param key    the string attribute.
+         * @param prefix the start of its value.
+         * @return this.
+         */
+        public Builder attributeStartsWith(final String key, final String prefix) {
+            Assert.notNull(key, "The attribute key must not be null");
+            Assert.notNull(prefix, "The prefix must not be null");
+            attributeConditions.add(new AttributeCondition(AttributeKey.stringKey(key), new StartsWith(prefix)));
+            return this;
+        }
+
+        /**
+         * Match spans whose whole string attribute value matches the given regular expression.
+         *
+         * @param key   the string attribute.
+         * @param regex the regular expression.
+         * @return this.
+         * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+         */
+        public Builder attributeMatches(final String key, final String regex) {
+            Assert.notNull(key, "The attribute key must not be null");
+            Assert.notNull(regex, "The regular expression must not be null");
+            attributeConditions.add(new AttributeCondition(AttributeKey.stringKey(key), new Matches(regex)));
+            return this;
+        }
+
+        public SamplingRule build() {
+            return new SamplingRule(this);
+        }
+    }
+}
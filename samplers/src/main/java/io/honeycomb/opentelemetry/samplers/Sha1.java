@@ -0,0 +1,136 @@
+package io.honeycomb.opentelemetry.samplers;
+
+/**
+ * A minimal SHA-1 implementation used by the deterministic samplers to hash trace IDs.
+ * <p>
+ * The input string is UTF-8 encoded on the fly (matching {@code String.getBytes(StandardCharsets.UTF_8)},
+ * including the replacement of unpaired surrogates with {@code '?'}) and fed straight into the compression
+ * function, so no intermediate byte arrays, digests or buffers are created. Only the first 32 bits of the
+ * digest are returned as that is all the samplers need.
+ * <p>
+ * Working state is kept per thread and reused across calls, making hashing allocation free after the first
+ * call on a given thread.
+ */
+final class Sha1 {
+    private static final ThreadLocal<Sha1> STATE = ThreadLocal.withInitial(Sha1::new);
+
+    private final int[] w = new int[80];
+    private int h0, h1, h2, h3, h4;
+    private int position;
+    private long length;
+
+    private Sha1() {
+    }
+
+    /**
+     * Returns the first four bytes of the SHA-1 digest of the UTF-8 encoding of {@code input}, interpreted
+     * as a big-endian int.
+     *
+     * @param input to hash.
+     * @return the first 32 bits of the digest.
+     */
+    static int first32Bits(final String input) {
+        return STATE.get().hash(input);
+    }
+
+    private int hash(final String input) {
+        reset();
+        final int n = input.length();
+        for (int i = 0; i < n; i++) {
+            final char c = input.charAt(i);
+            if (c < 0x80) {
+                update(c);
+            } else if (c < 0x800) {
+                update(0xc0 | (c >> 6));
+                update(0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(input.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, input.charAt(++i));
+                    update(0xf0 | (codePoint >> 18));
+                    update(0x80 | ((codePoint >> 12) & 0x3f));
+                    update(0x80 | ((codePoint >> 6) & 0x3f));
+                    update(0x80 | (codePoint & 0x3f));
+                } else {
+                    update('?');
+                }
+            } else {
+                update(0xe0 | (c >> 12));
+                update(0x80 | ((c >> 6) & 0x3f));
+                update(0x80 | (c & 0x3f));
+            }
+        }
+        return finish();
+    }
+
+    private void reset() {
+        h0 = 0x67452301;
+        h1 = 0xefcdab89;
+        h2 = 0x98badcfe;
+        h3 = 0x10325476;
+        h4 = 0xc3d2e1f0;
+        position = 0;
+        length = 0;
+        clearBlock();
+    }
+
+    private void clearBlock() {
+        for (int i = 0; i < 16; i++) {
+            w[i] = 0;
+        }
+    }
+
+    private void update(final int b) {
+        w[position >> 2] |= (b & 0xff) << (24 - ((position & 3) << 3));
+        length++;
+        if (++position == 64) {
+            compress();
+        }
+    }
+
+    private int finish() {
+        final long bitLength = length << 3;
+        w[position >> 2] |= 0x80 << (24 - ((position & 3) << 3));
+        if (++position > 56) {
+            compress();
+        }
+        w[14] = (int) (bitLength >>> 32);
+        w[15] = (int) bitLength;
+        compress();
+        return h0;
+    }
+
+    private void compress() {
+        final int[] w = this.w;
+        for (int i = 16; i < 80; i++) {
+            w[i] = Integer.rotateLeft(w[i - 3] ^ w[i - 8] ^ w[i - 14] ^ w[i - 16], 1);
+        }
+
+        int a = h0, b = h1, c = h2, d = h3, e = h4;
+        for (int i = 0; i < 80; i++) {
+            final int f;
+            if (i < 20) {
+                f = ((b & c) | (~b & d)) + 0x5a827999;
+            } else if (i < 40) {
+                f = (b ^ c ^ d) + 0x6ed9eba1;
+            } else if (i < 60) {
+                f = ((b & c) | (b & d) | (c & d)) + 0x8f1bbcdc;
+            } else {
+                f = (b ^ c ^ d) + 0xca62c1d6;
+            }
+            final int temp = Integer.rotateLeft(a, 5) + f + e + w[i];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+
+        h0 += a;
+        h1 += b;
+        h2 += c;
+        h3 += d;
+        h4 += e;
+        position = 0;
+        clearBlock();
+    }
+}
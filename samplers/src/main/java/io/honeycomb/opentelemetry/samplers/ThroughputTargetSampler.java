@@ -0,0 +1,165 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.honeycomb.libhoney.utils.Assert;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This TraceSampler aims for a fixed number of sampled spans per second in this process, whatever the traffic. It
+ * counts the spans it is asked about and, at a fixed interval, derives the sample rate from an exponential moving
+ * average of the spans per second: the rate is the measured throughput divided by the target, and never less than 1.
+ * <p>
+ * Like {@link DeterministicTraceSampler}, the decision is taken from the first 4 bytes of the SHA-1 digest of the
+ * trace id, compared against a bound derived from the rate. The rate is rounded to the nearest integer, and both the
+ * bound and {@code sample.rate} use the rounded rate, so that exactly 1 in {@code sample.rate} traces is kept and
+ * Honeycomb's counts stay accurate; the sampled volume follows the target within this rounding. As the bounds for
+ * lower rates contain the bounds for higher ones, processes that currently sample at different rates still agree on
+ * the traces sampled by the higher rate.
+ * <p>
+ * The rate is only applied to root spans and spans with a remote parent. Spans with a local parent follow the
+ * decision taken for their parent and record the rate their local root was kept at, so that traces running across a
+ * change of rate are kept or dropped as a whole. All spans count towards the throughput.
+ *
+ * <h1>Thread-safety</h1> Instances of this class are thread-safe and can be
+ * shared. Call {@link #shutdown()} to stop the background thread.
+ */
+public class ThroughputTargetSampler extends DeterministicTraceSampler {
+    private static final long MAX_U_INT = 0xffffffffL;
+    private static final long DEFAULT_ADJUSTMENT_INTERVAL_MILLIS = 1_000;
+    private static final double DEFAULT_WEIGHT = 0.5;
+
+    public final static String DESCRIPTION = "HoneycombThroughputTargetSampler";
+
+    private final double targetPerSecond;
+    private final long adjustmentIntervalMillis;
+    private final double weight;
+    private final LongAdder count = new LongAdder();
+    private final ScheduledExecutorService timer;
+    // only accessed by the thread updating the rate
+    private double emaPerSecond = -1;
+    private final TraceDecisions decisions = new TraceDecisions();
+    private volatile Rate rate = new Rate(1);
+
+    /**
+     * Creates a sampler that recomputes its rate every second, weighing the latest second and the average so far
+     * equally.
+     *
+     * @param targetPerSecond the number of spans per second to sample - must be positive.
+     * @throws IllegalArgumentException if targetPerSecond is not positive.
+     */
+    public ThroughputTargetSampler(final double targetPerSecond) {
+        this(targetPerSecond, DEFAULT_ADJUSTMENT_INTERVAL_MILLIS, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @param targetPerSecond          the number of spans per second to sample - must be positive.
+     * @param adjustmentIntervalMillis how often the rate is recomputed - must be positive.
+     * @param weight                   the weight of the latest interval in the moving average, between 0 and 1.
+     *                                 Higher weights follow spikes in traffic more quickly.
+     * @throws IllegalArgumentException if any of the arguments is out of range.
+     */
+    public ThroughputTargetSampler(final double targetPerSecond, final long adjustmentIntervalMillis,
+                                   final double weight) {
+        super(1);
+        Assert.isTrue(targetPerSecond > 0, "Target throughput must be positive");
+        Assert.isTrue(adjustmentIntervalMillis > 0, "Adjustment interval must be positive");
+        Assert.isTrue(weight > 0 && weight <= 1, "Weight must be greater than 0 and at most 1");
+        this.targetPerSecond = targetPerSecond;
+        this.adjustmentIntervalMillis = adjustmentIntervalMillis;
+        this.weight = weight;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("honeycomb-throughput-sampler-%d").setDaemon(true).build());
+        timer.scheduleAtFixedRate(this::updateRate, adjustmentIntervalMillis, adjustmentIntervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts the span and decides, based on the given traceId, whether to sample it at the current rate.
+     *
+     * @param traceId to use as input to the sampling algorithm.
+     * @return the current rate, rounded, if the trace is sampled, otherwise 0.
+     */
+    @Override
+    public int sample(final String traceId) {
+        count.increment();
+        final Rate current = rate;
+        if (current.sampleRate == 1) {
+            return 1;
+        }
+        final int first4Bytes = Sha1.first32Bits(traceId);
+        return Integer.compareUnsigned(first4Bytes, current.upperBound) <= 0 ? current.sampleRate : 0;
+    }
+
+    @Override
+    public SamplingResult shouldSample(
+        SpanContext parentContext,
+        String traceId,
+        String name,
+        Kind spanKind,
+        ReadableAttributes attributes,
+        List<SpanData.Link> parentLinks) {
+
+        final SamplingResult inherited = decisions.inherit(parentContext, traceId);
+        if (inherited != null) {
+            count.increment();
+            return inherited;
+        }
+        return decisions.record(traceId,
+            super.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks));
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    /**
+     * @return the rate spans are currently sampled at, 1 while the traffic is below the target.
+     */
+    public double getEffectiveSampleRate() {
+        return rate.effectiveRate;
+    }
+
+    /**
+     * Stops adjusting the rate. Spans are sampled at the last rate from then on.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Folds the spans counted since the last call into the moving average and recomputes the rate.
+     */
+    synchronized void updateRate() {
+        final double perSecond = count.sumThenReset() * 1000d / adjustmentIntervalMillis;
+        emaPerSecond = emaPerSecond < 0 ? perSecond : weight * perSecond + (1 - weight) * emaPerSecond;
+        final double effectiveRate = Math.max(1, emaPerSecond / targetPerSecond);
+        if (effectiveRate != rate.effectiveRate) {
+            rate = new Rate(effectiveRate);
+        }
+    }
+
+    /**
+     * A rate, rounded to the rate that is sampled at and recorded, together with the bound it samples below.
+     */
+    private static final class Rate {
+        private final double effectiveRate;
+        private final int sampleRate;
+        private final int upperBound;
+
+        private Rate(final double effectiveRate) {
+            this.effectiveRate = effectiveRate;
+            this.sampleRate = (int) Math.min(Integer.MAX_VALUE, Math.round(effectiveRate));
+            this.upperBound = (int) (MAX_U_INT / sampleRate);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.sdk.trace.Samplers;
+import io.opentelemetry.trace.SpanContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries the decision taken for the local root of a trace over to the rest of the trace, for samplers whose rate
+ * differs from span to span. Deciding each span at a rate of its own would keep children of dropped roots and drop
+ * children of kept ones, leaving orphaned spans and traces with holes.
+ * <p>
+ * Spans with a valid local parent follow the parent's sampled flag. The result a root was kept with is remembered by
+ * trace id when the root starts and handed to the sampled spans below it, so that every span of a kept trace records
+ * the root's {@code sample.rate} however the spans end and are exported. Roots and spans with a remote parent are
+ * decided by the sampler itself. The number of traces is bounded and entries expire, so children of traces that have
+ * been evicted are still sampled with their parent but without a {@code sample.rate}.
+ * <p>
+ * Instances are thread-safe.
+ */
+final class TraceDecisions {
+    private static final int MAXIMUM_SIZE = 16 * 1024;
+    private static final long EXPIRY_MINUTES = 5;
+    private static final SamplingResult SAMPLED = Samplers.emptySamplingResult(Decision.RECORD_AND_SAMPLE);
+    private static final SamplingResult DROPPED = Samplers.emptySamplingResult(Decision.DROP);
+
+    private final Cache<String, SamplingResult> kept = CacheBuilder.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .expireAfterWrite(EXPIRY_MINUTES, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * @return the result for a span with a valid local parent, or null if the span is a root or has a remote parent,
+     *         which leaves the decision to the sampler.
+     */
+    SamplingResult inherit(final SpanContext parentContext, final String traceId) {
+        if (parentContext == null || !parentContext.isValid() || parentContext.isRemote()) {
+            return null;
+        }
+        if (!parentContext.isSampled()) {
+            return DROPPED;
+        }
+        final SamplingResult result = kept.getIfPresent(traceId);
+        return result != null ? result : SAMPLED;
+    }
+
+    /**
+     * Remembers the result a root or a span with a remote parent was sampled with, for the spans below it.
+     *
+     * @return the result.
+     */
+    SamplingResult record(final String traceId, final SamplingResult result) {
+        if (result.getDecision() == Decision.RECORD_AND_SAMPLE) {
+            kept.put(traceId, result);
+        }
+        return result;
+    }
+}
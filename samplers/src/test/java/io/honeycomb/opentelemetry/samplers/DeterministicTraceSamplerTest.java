@@ -150,6 +150,32 @@ public class DeterministicTraceSamplerTest {
         }
     }
 
+    @Test
+    public void checkThatSamplingResultsAreShared() {
+        sampler = new DeterministicTraceSampler(17);
+
+        SamplingResult dropped = sampler.shouldSample(null, "hello", SPAN_NAME, SPAN_KIND, Attributes.empty(), Collections.emptyList());
+        SamplingResult sampled = sampler.shouldSample(null, "this5", SPAN_NAME, SPAN_KIND, Attributes.empty(), Collections.emptyList());
+
+        assertSame(dropped, sampler.shouldSample(null, "world", SPAN_NAME, SPAN_KIND, Attributes.empty(), Collections.emptyList()));
+        assertSame(sampled, sampler.shouldSample(null, "this5", SPAN_NAME, SPAN_KIND, Attributes.empty(), Collections.emptyList()));
+    }
+
+    @Test
+    public void checkThatSubclassRatesAreCached() {
+        final DeterministicTraceSampler sampler = new DeterministicTraceSampler(10);
+
+        SamplingResult result = sampler.createResult(5);
+        assertEquals(Decision.RECORD_AND_SAMPLE, result.getDecision());
+        assertEquals(Attributes.of(AttributeKey.longKey("sample.rate"), 5L), result.getAttributes());
+        assertSame(result, sampler.createResult(5));
+
+        // a rate sharing the same cache slot replaces the cached entry rather than returning the wrong rate
+        SamplingResult collision = sampler.createResult(69);
+        assertEquals(Attributes.of(AttributeKey.longKey("sample.rate"), 69L), collision.getAttributes());
+        assertEquals(Attributes.of(AttributeKey.longKey("sample.rate"), 5L), sampler.createResult(5).getAttributes());
+    }
+
     private static final String requestIDBytes = "abcdef0123456789";
 
     /**
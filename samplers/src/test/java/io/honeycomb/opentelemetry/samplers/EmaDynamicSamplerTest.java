@@ -0,0 +1,181 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmaDynamicSamplerTest {
+
+    private static final AttributeKey<Long> SAMPLE_RATE = AttributeKey.longKey("sample.rate");
+    private static final AttributeKey<Long> STATUS_CODE = AttributeKey.longKey("http.status_code");
+
+    private EmaDynamicSampler sampler;
+
+    @AfterEach
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    @Test
+    public void samplerShouldRejectInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new EmaDynamicSampler(0));
+        assertThrows(IllegalArgumentException.class,
+            () -> new EmaDynamicSampler(10, Collections.emptyList(), 1000, 0, 100));
+        assertThrows(IllegalArgumentException.class,
+            () -> new EmaDynamicSampler(10, Collections.emptyList(), 1000, 0.5, 0));
+    }
+
+    @Test
+    public void newKeysAreSampledAtOne() {
+        sampler = new EmaDynamicSampler(10);
+
+        final SamplingResult result = sample("GET /", 200L, UUID.randomUUID().toString());
+
+        assertEquals(Decision.RECORD_AND_SAMPLE, result.getDecision());
+        assertEquals(1L, result.getAttributes().get(SAMPLE_RATE));
+        assertEquals(EmaDynamicSampler.DESCRIPTION, sampler.getDescription());
+    }
+
+    @Test
+    public void rareKeysAreKeptWhileFrequentKeysAreSampledDown() {
+        sampler = new EmaDynamicSampler(10, Collections.singletonList(STATUS_CODE), 60_000, 0.5, 100);
+        for (int i = 0; i < 10_000; i++) {
+            sample("GET /", 200L, UUID.randomUUID().toString());
+        }
+        for (int i = 0; i < 5; i++) {
+            sample("GET /", 500L, UUID.randomUUID().toString());
+        }
+        sampler.updateRates();
+
+        for (int i = 0; i < 20; i++) {
+            final SamplingResult rare = sample("GET /", 500L, UUID.randomUUID().toString());
+            assertEquals(Decision.RECORD_AND_SAMPLE, rare.getDecision());
+            assertEquals(1L, rare.getAttributes().get(SAMPLE_RATE));
+        }
+
+        int sampled = 0;
+        long rate = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final SamplingResult frequent = sample("GET /", 200L, UUID.randomUUID().toString());
+            if (frequent.getDecision() == Decision.RECORD_AND_SAMPLE) {
+                sampled++;
+                rate = frequent.getAttributes().get(SAMPLE_RATE);
+            } else {
+                assertEquals(0L, frequent.getAttributes().get(SAMPLE_RATE));
+            }
+        }
+        assertTrue(rate > 10, "rate " + rate);
+        assertEquals(10_000 / rate, sampled, 10_000 / rate * 0.2 + 5);
+    }
+
+    @Test
+    public void decisionsAreDeterministicPerTrace() {
+        sampler = new EmaDynamicSampler(10, Collections.emptyList(), 60_000, 0.5, 100);
+        for (int i = 0; i < 1000; i++) {
+            sample("span", null, UUID.randomUUID().toString());
+        }
+        sampler.updateRates();
+
+        for (int i = 0; i < 100; i++) {
+            final String traceId = UUID.randomUUID().toString();
+            assertEquals(sample("span", null, traceId).getDecision(), sample("span", null, traceId).getDecision());
+        }
+    }
+
+    @Test
+    public void childSpansFollowTheDecisionOfTheirLocalParent() {
+        sampler = new EmaDynamicSampler(10, Collections.emptyList(), 60_000, 0.5, 100);
+        for (int i = 0; i < 1000; i++) {
+            sample("root", null, UUID.randomUUID().toString());
+        }
+        sampler.updateRates();
+
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String traceId = UUID.randomUUID().toString().replace("-", "");
+            final SamplingResult root = sample("root", null, traceId);
+            final boolean kept = root.getDecision() == Decision.RECORD_AND_SAMPLE;
+            final SpanContext parent = SpanContext.create(traceId, "000000000012d685",
+                kept ? TraceFlags.getSampled() : TraceFlags.getDefault(), TraceState.getDefault());
+
+            // the child's own key is rare enough to be sampled at 1, yet it follows its root
+            final SamplingResult child = sampler.shouldSample(parent, traceId, "child", Span.Kind.INTERNAL,
+                Attributes.empty(), Collections.emptyList());
+            assertEquals(root.getDecision(), child.getDecision());
+            if (kept) {
+                sampled++;
+                assertEquals(root.getAttributes().get(SAMPLE_RATE), child.getAttributes().get(SAMPLE_RATE));
+            }
+        }
+        assertTrue(sampled > 0 && sampled < 1000, "sampled " + sampled);
+    }
+
+    @Test
+    public void spansWithRemoteParentsAreDecidedByTheirKey() {
+        sampler = new EmaDynamicSampler(10, Collections.emptyList(), 60_000, 0.5, 100);
+        final String traceId = UUID.randomUUID().toString().replace("-", "");
+        final SpanContext parent = SpanContext.createFromRemoteParent(traceId, "000000000012d685",
+            TraceFlags.getDefault(), TraceState.getDefault());
+
+        final SamplingResult result = sampler.shouldSample(parent, traceId, "GET /", Span.Kind.SERVER,
+            Attributes.empty(), Collections.emptyList());
+
+        assertEquals(Decision.RECORD_AND_SAMPLE, result.getDecision());
+        assertEquals(1L, result.getAttributes().get(SAMPLE_RATE));
+    }
+
+    @Test
+    public void keysBeyondTheMaximumShareARate() {
+        sampler = new EmaDynamicSampler(10, Collections.emptyList(), 60_000, 0.5, 2);
+        sample("a", null, "trace");
+        sample("b", null, "trace");
+        for (int i = 0; i < 1000; i++) {
+            sample("overflow-" + (i % 2), null, UUID.randomUUID().toString());
+        }
+        sampler.updateRates();
+
+        assertEquals(1L, sample("a", null, "trace").getAttributes().get(SAMPLE_RATE));
+        long rate = 0;
+        for (int i = 0; i < 100 && rate == 0; i++) {
+            rate = sample("overflow-2", null, UUID.randomUUID().toString()).getAttributes().get(SAMPLE_RATE);
+        }
+        assertTrue(rate > 1, "rate " + rate);
+    }
+
+    @Test
+    public void unusedKeysAreAgedOut() {
+        sampler = new EmaDynamicSampler(10, Collections.emptyList(), 60_000, 0.5, 1);
+        sample("old", null, "trace");
+        sampler.updateRates();
+        sampler.updateRates();
+
+        // the only slot has been freed for a new key
+        sample("new", null, "trace");
+        for (int i = 0; i < 1000; i++) {
+            sample("overflow", null, UUID.randomUUID().toString());
+        }
+        sampler.updateRates();
+
+        assertEquals(1L, sample("new", null, "trace").getAttributes().get(SAMPLE_RATE));
+    }
+
+    private SamplingResult sample(final String name, final Long statusCode, final String traceId) {
+        return sampler.shouldSample(null, traceId, name, Span.Kind.SERVER,
+            statusCode == null ? Attributes.empty() : Attributes.of(STATUS_CODE, statusCode),
+            Collections.emptyList());
+    }
+}
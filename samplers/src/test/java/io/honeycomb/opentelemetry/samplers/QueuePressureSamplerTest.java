@@ -0,0 +1,167 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueuePressureSamplerTest {
+
+    private final AtomicInteger backlog = new AtomicInteger();
+    private QueuePressureSampler sampler;
+
+    @AfterEach
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    @Test
+    public void samplerShouldRejectInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new QueuePressureSampler(0, 10, backlog::get, 100));
+        assertThrows(IllegalArgumentException.class, () -> new QueuePressureSampler(10, 5, backlog::get, 100));
+        assertThrows(IllegalArgumentException.class, () -> new QueuePressureSampler(1, 10, backlog::get, 0));
+    }
+
+    @Test
+    public void raisesRateUnderPressureAndLowersItOnceBacklogClears() {
+        sampler = new QueuePressureSampler(2, 20, backlog::get, 100, 60_000);
+        assertEquals(QueuePressureSampler.DESCRIPTION, sampler.getDescription());
+        assertEquals(2, sampler.getCurrentSampleRate());
+
+        backlog.set(50);
+        sampler.checkBacklog();
+        assertEquals(4, sampler.getCurrentSampleRate());
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        assertEquals(16, sampler.getCurrentSampleRate());
+        sampler.checkBacklog();
+        assertEquals(20, sampler.getCurrentSampleRate());
+
+        // held while the backlog is in between
+        backlog.set(40);
+        sampler.checkBacklog();
+        assertEquals(20, sampler.getCurrentSampleRate());
+
+        backlog.set(25);
+        sampler.checkBacklog();
+        assertEquals(10, sampler.getCurrentSampleRate());
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        assertEquals(2, sampler.getCurrentSampleRate());
+    }
+
+    @Test
+    public void shedsWholeTracesDeterministically() {
+        sampler = new QueuePressureSampler(1, 8, backlog::get, 100, 60_000);
+        backlog.set(100);
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        assertEquals(4, sampler.getCurrentSampleRate());
+
+        final DeterministicTraceSampler fixed = new DeterministicTraceSampler(4);
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final String traceId = UUID.randomUUID().toString();
+            final SamplingResult result = sampler.shouldSample(null, traceId, "span", Span.Kind.SERVER,
+                Attributes.empty(), Collections.emptyList());
+            assertEquals(fixed.sample(traceId), (long) result.getAttributes().get(AttributeKey.longKey("sample.rate")));
+            if (result.getDecision() == Decision.RECORD_AND_SAMPLE) {
+                sampled++;
+            }
+        }
+        assertEquals(2500, sampled, 250);
+    }
+
+    @Test
+    public void checksBacklogInTheBackground() throws Exception {
+        backlog.set(100);
+        sampler = new QueuePressureSampler(1, 64, backlog::get, 100, 1);
+
+        final long deadline = System.nanoTime() + 5_000_000_000L;
+        while (sampler.getCurrentSampleRate() < 64 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(64, sampler.getCurrentSampleRate());
+    }
+
+    @Test
+    public void childSpansFollowTheirRootAcrossRateChanges() {
+        sampler = new QueuePressureSampler(2, 8, backlog::get, 100, 60_000);
+        final String keptRoot = keptAtOnlyFirstRate(2, 8);
+        final SamplingResult kept = sample(keptRoot, null);
+        assertEquals(Decision.RECORD_AND_SAMPLE, kept.getDecision());
+
+        // the rate rises to 8 while the trace is under way
+        backlog.set(100);
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        assertEquals(8, sampler.getCurrentSampleRate());
+        final SamplingResult child = sample(keptRoot, kept);
+        assertEquals(Decision.RECORD_AND_SAMPLE, child.getDecision());
+        assertEquals(2L, (long) child.getAttributes().get(AttributeKey.longKey("sample.rate")));
+
+        // and a root dropped at 8 keeps its children out once the rate falls back to 2
+        final String droppedRoot = keptAtOnlyFirstRate(2, 8);
+        final SamplingResult dropped = sample(droppedRoot, null);
+        assertEquals(Decision.DROP, dropped.getDecision());
+        backlog.set(0);
+        sampler.checkBacklog();
+        sampler.checkBacklog();
+        assertEquals(2, sampler.getCurrentSampleRate());
+        assertEquals(Decision.DROP, sample(droppedRoot, dropped).getDecision());
+    }
+
+    @Test
+    public void keepsCheckingAfterTheBacklogFailsToBeRead() throws Exception {
+        final AtomicInteger failures = new AtomicInteger(3);
+        sampler = new QueuePressureSampler(1, 64, () -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("backlog unavailable");
+            }
+            return 100;
+        }, 100, 1);
+
+        final long deadline = System.nanoTime() + 5_000_000_000L;
+        while (sampler.getCurrentSampleRate() < 64 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(64, sampler.getCurrentSampleRate());
+    }
+
+    /**
+     * @return a trace id that the first rate keeps and the second drops.
+     */
+    private static String keptAtOnlyFirstRate(final int first, final int second) {
+        final DeterministicTraceSampler keeps = new DeterministicTraceSampler(first);
+        final DeterministicTraceSampler drops = new DeterministicTraceSampler(second);
+        while (true) {
+            final String traceId = UUID.randomUUID().toString().replace("-", "");
+            if (keeps.sample(traceId) > 0 && drops.sample(traceId) == 0) {
+                return traceId;
+            }
+        }
+    }
+
+    private SamplingResult sample(final String traceId, final SamplingResult parent) {
+        final SpanContext parentContext = parent == null ? null : SpanContext.create(traceId, "000000000012d685",
+            parent.getDecision() == Decision.RECORD_AND_SAMPLE ? TraceFlags.getSampled() : TraceFlags.getDefault(),
+            TraceState.getDefault());
+        return sampler.shouldSample(parentContext, traceId, "span", Span.Kind.SERVER, Attributes.empty(),
+            Collections.emptyList());
+    }
+}
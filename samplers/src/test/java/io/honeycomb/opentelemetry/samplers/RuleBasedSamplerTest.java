@@ -0,0 +1,234 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.config.TraceConfig;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.Tracer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleBasedSamplerTest {
+
+    private static final AttributeKey<Long> SAMPLE_RATE = AttributeKey.longKey("sample.rate");
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final AttributeKey<Long> STATUS_CODE = AttributeKey.longKey("http.status_code");
+    // sampled at every rate used below
+    private static final String TRACE_ID = "this5";
+
+    private final RuleBasedSampler sampler = new RuleBasedSampler(Arrays.asList(
+        SamplingRule.newBuilder(0).nameEquals("GET /health").build(),
+        SamplingRule.newBuilder(2).nameStartsWith("db.").spanKinds(Span.Kind.CLIENT).build(),
+        SamplingRule.newBuilder(3).attributeEquals("http.route", "/checkout").build(),
+        SamplingRule.newBuilder(4).attributeEquals("http.route", "/cart").build(),
+        SamplingRule.newBuilder(5).attributeEquals("http.route", "/checkout").build(),
+        SamplingRule.newBuilder(6).nameMatches("GET /api/v\\d+/.*").attributeStartsWith("user.tier", "premium").build(),
+        SamplingRule.newBuilder(7).attributeMatches("http.url", ".*/orders/\\d+").build(),
+        SamplingRule.newBuilder(8).attributeEquals(STATUS_CODE, 500L).spanKinds(Span.Kind.SERVER).build()
+    ), 10);
+
+    @Test
+    public void samplerShouldRejectInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RuleBasedSampler(Collections.emptyList(), -1));
+        assertThrows(IllegalArgumentException.class, () -> SamplingRule.newBuilder(-1));
+        assertEquals(RuleBasedSampler.DESCRIPTION, sampler.getDescription());
+    }
+
+    @Test
+    public void firstMatchingRuleSetsTheRate() {
+        assertEquals(0, rate("GET /health", Span.Kind.SERVER, Attributes.of(ROUTE, "/checkout")));
+        assertEquals(2, rate("db.query", Span.Kind.CLIENT, Attributes.empty()));
+        assertEquals(10, rate("db.query", Span.Kind.SERVER, Attributes.empty()));
+        assertEquals(3, rate("POST /", Span.Kind.SERVER, Attributes.of(ROUTE, "/checkout")));
+        assertEquals(4, rate("POST /", Span.Kind.SERVER, Attributes.of(ROUTE, "/cart")));
+        assertEquals(6, rate("GET /api/v2/users", Span.Kind.SERVER,
+            Attributes.of(AttributeKey.stringKey("user.tier"), "premium-gold")));
+        assertEquals(10, rate("GET /api/users", Span.Kind.SERVER,
+            Attributes.of(AttributeKey.stringKey("user.tier"), "premium-gold")));
+        assertEquals(7, rate("GET", Span.Kind.CLIENT,
+            Attributes.of(AttributeKey.stringKey("http.url"), "https://example.com/orders/42")));
+        assertEquals(8, rate("GET", Span.Kind.SERVER, Attributes.of(STATUS_CODE, 500L)));
+        assertEquals(10, rate("GET", Span.Kind.CLIENT, Attributes.of(STATUS_CODE, 500L)));
+        assertEquals(10, rate("GET", Span.Kind.SERVER, Attributes.of(STATUS_CODE, 200L)));
+        assertEquals(10, rate(null, null, null));
+    }
+
+    @Test
+    public void rulesOnTheSameAttributeKeepTheirOrder() {
+        final RuleBasedSampler sameAttribute = new RuleBasedSampler(Arrays.asList(
+            SamplingRule.newBuilder(2).attributeStartsWith("http.route", "/admin").build(),
+            SamplingRule.newBuilder(3).attributeEquals("http.route", "/admin/login").build(),
+            SamplingRule.newBuilder(4).attributeEquals("http.route", "/cart").build(),
+            SamplingRule.newBuilder(5).attributeMatches("http.route", "/ca.*").build()
+        ), 10);
+
+        assertEquals(2, rate(sameAttribute, "GET", Span.Kind.SERVER, Attributes.of(ROUTE, "/admin/login")));
+        assertEquals(4, rate(sameAttribute, "GET", Span.Kind.SERVER, Attributes.of(ROUTE, "/cart")));
+        assertEquals(5, rate(sameAttribute, "GET", Span.Kind.SERVER, Attributes.of(ROUTE, "/catalog")));
+        assertEquals(10, rate(sameAttribute, "GET", Span.Kind.SERVER, Attributes.of(ROUTE, "/checkout")));
+    }
+
+    @Test
+    public void decisionsAreCachedPerNameAndKind() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(4, rate("POST /", Span.Kind.SERVER, Attributes.of(ROUTE, "/cart")));
+            assertEquals(10, rate("POST /", Span.Kind.SERVER, Attributes.of(ROUTE, "/other")));
+            assertEquals(2, rate("db.query", Span.Kind.CLIENT, Attributes.empty()));
+        }
+    }
+
+    @Test
+    public void namesBeyondTheCacheAreStillMatched() {
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(2, rate("db.query-" + i, Span.Kind.CLIENT, Attributes.empty()));
+            assertEquals(10, rate("span-" + i, Span.Kind.CLIENT, Attributes.empty()));
+        }
+    }
+
+    @Test
+    public void appliesRatesDeterministically() {
+        final List<SamplingRule> rules = new ArrayList<>();
+        rules.add(SamplingRule.newBuilder(20).nameEquals("hot").build());
+        final RuleBasedSampler ruleBased = new RuleBasedSampler(rules, 1);
+        final DeterministicTraceSampler fixed = new DeterministicTraceSampler(20);
+
+        for (int i = 0; i < 1000; i++) {
+            final String traceId = UUID.randomUUID().toString();
+            final SamplingResult result = ruleBased.shouldSample(null, traceId, "hot", Span.Kind.SERVER,
+                Attributes.empty(), Collections.emptyList());
+            assertEquals(fixed.sample(traceId) > 0, result.getDecision() == Decision.RECORD_AND_SAMPLE);
+        }
+    }
+
+    @Test
+    public void findsLiteralsRequiredByRegularExpressions() {
+        assertEquals("/orders/", SamplingRule.requiredLiteral(".*/orders/\\d+"));
+        assertEquals("GET /api/v", SamplingRule.requiredLiteral("GET /api/v\\d+/.*"));
+        assertEquals("://example.com/", SamplingRule.requiredLiteral("https?://example\\.com/[a-z]+"));
+        assertEquals("/items", SamplingRule.requiredLiteral("^/itemss?$"));
+        assertEquals("ab", SamplingRule.requiredLiteral("ab+c{2}"));
+        assertNull(SamplingRule.requiredLiteral("(?i)GET /health"));
+        assertNull(SamplingRule.requiredLiteral("GET|POST"));
+        assertNull(SamplingRule.requiredLiteral("\\x41BC"));
+        assertNull(SamplingRule.requiredLiteral(".*"));
+    }
+
+    @Test
+    public void childSpansFollowTheDecisionOfTheirLocalParent() {
+        final RuleBasedSampler sampler = new RuleBasedSampler(Arrays.asList(
+            SamplingRule.newBuilder(0).nameEquals("GET /health").build(),
+            SamplingRule.newBuilder(5).nameStartsWith("db.").build()
+        ), 20);
+
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String traceId = UUID.randomUUID().toString().replace("-", "");
+            final SamplingResult root = sampler.shouldSample(null, traceId, "GET /", Span.Kind.SERVER,
+                Attributes.empty(), Collections.emptyList());
+            final boolean kept = root.getDecision() == Decision.RECORD_AND_SAMPLE;
+            final SpanContext parent = SpanContext.create(traceId, "000000000012d685",
+                kept ? TraceFlags.getSampled() : TraceFlags.getDefault(), TraceState.getDefault());
+
+            for (String name : Arrays.asList("db.query", "GET /health")) {
+                final SamplingResult child = sampler.shouldSample(parent, traceId, name, Span.Kind.CLIENT,
+                    Attributes.empty(), Collections.emptyList());
+                assertEquals(root.getDecision(), child.getDecision(), name);
+                if (kept) {
+                    assertEquals(20L, child.getAttributes().get(SAMPLE_RATE), name);
+                }
+            }
+            if (kept) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 0 && sampled < 1000, "sampled " + sampled);
+    }
+
+    @Test
+    public void childSpansEndingBeforeTheirRootCarryTheRootsRate() {
+        final List<SpanData> exported = new ArrayList<>();
+        final TracerSdkProvider provider = TracerSdkProvider.builder().build();
+        provider.updateActiveTraceConfig(TraceConfig.getDefault().toBuilder().setSampler(new RuleBasedSampler(
+            Collections.singletonList(SamplingRule.newBuilder(1).nameStartsWith("db.").build()), 4)).build());
+        provider.addSpanProcessor(SimpleSpanProcessor.newBuilder(new SpanExporter() {
+            @Override
+            public CompletableResultCode export(final Collection<SpanData> spans) {
+                exported.addAll(spans);
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        }).build());
+        final Tracer tracer = provider.get("test");
+
+        for (int i = 0; i < 200; i++) {
+            final Span root = tracer.spanBuilder("GET /").setSpanKind(Span.Kind.SERVER).startSpan();
+            try (Scope ignored = tracer.withSpan(root)) {
+                tracer.spanBuilder("db.query").setSpanKind(Span.Kind.CLIENT).startSpan().end();
+            }
+            root.end();
+        }
+        provider.shutdown();
+
+        // the children end and are exported first, each kept along with its root and recording the root's rate
+        final long children = exported.stream().filter(span -> span.getName().equals("db.query")).count();
+        assertTrue(children > 0 && children < 200, "children " + children);
+        assertEquals(2 * children, exported.size());
+        for (SpanData span : exported) {
+            assertEquals(4L, span.getAttributes().get(SAMPLE_RATE), span.getName());
+        }
+    }
+
+    @Test
+    public void spansWithRemoteParentsAreDecidedByTheirRule() {
+        final SpanContext parent = SpanContext.createFromRemoteParent("0000000000000000000000000000abcd",
+            "000000000012d685", TraceFlags.getSampled(), TraceState.getDefault());
+
+        final SamplingResult result = sampler.shouldSample(parent, "0000000000000000000000000000abcd", "GET /health",
+            Span.Kind.SERVER, Attributes.empty(), Collections.emptyList());
+
+        assertEquals(Decision.DROP, result.getDecision());
+    }
+
+    private long rate(final String name, final Span.Kind kind, final Attributes attributes) {
+        return rate(sampler, name, kind, attributes);
+    }
+
+    private static long rate(final RuleBasedSampler sampler, final String name, final Span.Kind kind,
+                             final Attributes attributes) {
+        final SamplingResult result = sampler.shouldSample(null, TRACE_ID, name, kind, attributes,
+            Collections.emptyList());
+        final long rate = result.getAttributes().get(SAMPLE_RATE);
+        if (rate == 0) {
+            assertEquals(Decision.DROP, result.getDecision());
+        }
+        return rate;
+    }
+}
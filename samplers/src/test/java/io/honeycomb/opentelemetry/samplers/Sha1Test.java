@@ -0,0 +1,52 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Sha1Test {
+
+    @Test
+    public void matchesMessageDigestForTraceIds() throws NoSuchAlgorithmException {
+        for (int i = 0; i < 1000; i++) {
+            final String traceId = UUID.randomUUID().toString().replace("-", "");
+            assertEquals(expected(traceId), Sha1.first32Bits(traceId));
+        }
+    }
+
+    @Test
+    public void matchesMessageDigestAcrossBlockBoundaries() throws NoSuchAlgorithmException {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected(input.toString()), Sha1.first32Bits(input.toString()));
+            input.append((char) ('a' + i % 26));
+        }
+    }
+
+    @Test
+    public void matchesMessageDigestForNonAsciiInput() throws NoSuchAlgorithmException {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final char[] chars = new char[random.nextInt(100)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) random.nextInt(Character.MAX_VALUE + 1);
+            }
+            final String input = new String(chars);
+            assertEquals(expected(input), Sha1.first32Bits(input));
+        }
+        assertEquals(expected("\uD83D\uDE00 emoji"), Sha1.first32Bits("\uD83D\uDE00 emoji"));
+        assertEquals(expected("unpaired \uD83D"), Sha1.first32Bits("unpaired \uD83D"));
+    }
+
+    private static int expected(final String input) throws NoSuchAlgorithmException {
+        final byte[] digest = MessageDigest.getInstance("SHA-1").digest(input.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest).getInt(0);
+    }
+}
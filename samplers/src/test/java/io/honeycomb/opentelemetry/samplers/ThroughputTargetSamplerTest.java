@@ -0,0 +1,163 @@
+package io.honeycomb.opentelemetry.samplers;
+
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThroughputTargetSamplerTest {
+
+    private ThroughputTargetSampler sampler;
+
+    @AfterEach
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.shutdown();
+        }
+    }
+
+    @Test
+    public void samplerShouldRejectInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ThroughputTargetSampler(0));
+        assertThrows(IllegalArgumentException.class, () -> new ThroughputTargetSampler(100, 0, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new ThroughputTargetSampler(100, 1000, 1.5));
+    }
+
+    @Test
+    public void samplesEverythingBelowTheTarget() {
+        sampler = new ThroughputTargetSampler(100, 60_000, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, sampler.sample(UUID.randomUUID().toString()));
+        }
+        sampler.updateRate();
+
+        assertEquals(1, sampler.getEffectiveSampleRate());
+        assertEquals(ThroughputTargetSampler.DESCRIPTION, sampler.getDescription());
+    }
+
+    @Test
+    public void sampledVolumeFollowsTheTarget() {
+        // 60000 spans per minute at a target of 50 per second
+        sampler = new ThroughputTargetSampler(50, 60_000, 1);
+        for (int i = 0; i < 60_000; i++) {
+            sampler.sample(UUID.randomUUID().toString());
+        }
+        sampler.updateRate();
+        assertEquals(20, sampler.getEffectiveSampleRate(), 0.001);
+
+        int sampled = 0;
+        for (int i = 0; i < 60_000; i++) {
+            final int rate = sampler.sample(UUID.randomUUID().toString());
+            if (rate > 0) {
+                assertEquals(20, rate);
+                sampled++;
+            }
+        }
+        assertEquals(3000, sampled, 300);
+        sampler.updateRate();
+
+        // traffic drops to a quarter of the target
+        for (int i = 0; i < 750; i++) {
+            sampler.sample(UUID.randomUUID().toString());
+        }
+        sampler.updateRate();
+        assertEquals(1, sampler.getEffectiveSampleRate());
+    }
+
+    @Test
+    public void keptFractionMatchesTheRecordedRate() {
+        // 60000 spans per minute at targets of 1000 / 1.49 and 1000 / 2.6 per second
+        for (double effectiveRate : new double[]{1.49, 2.6}) {
+            sampler = new ThroughputTargetSampler(1000 / effectiveRate, 60_000, 1);
+            for (int i = 0; i < 60_000; i++) {
+                sampler.sample(UUID.randomUUID().toString());
+            }
+            sampler.updateRate();
+            assertEquals(effectiveRate, sampler.getEffectiveSampleRate(), 0.001);
+
+            int sampled = 0;
+            int recordedRate = 0;
+            for (int i = 0; i < 60_000; i++) {
+                final int rate = sampler.sample(UUID.randomUUID().toString());
+                if (rate > 0) {
+                    recordedRate = rate;
+                    sampled++;
+                }
+            }
+            assertEquals(Math.round(effectiveRate), recordedRate);
+            assertEquals(60_000 / recordedRate, sampled, 60_000 / recordedRate * 0.02, "rate " + effectiveRate);
+            sampler.shutdown();
+        }
+    }
+
+    @Test
+    public void childSpansFollowTheirRootAcrossRateChanges() {
+        sampler = new ThroughputTargetSampler(100, 60_000, 1);
+        final String traceId = keptAtOnlyFirstRate(1, 10);
+        final SamplingResult root = sample(traceId, null);
+        assertEquals(1L, (long) root.getAttributes().get(AttributeKey.longKey("sample.rate")));
+
+        // 60000 spans per minute at a target of 100 per second raise the rate to 10 while the trace is under way
+        for (int i = 0; i < 60_000; i++) {
+            sampler.sample(UUID.randomUUID().toString());
+        }
+        sampler.updateRate();
+        assertEquals(10, sampler.getEffectiveSampleRate(), 0.001);
+
+        final SamplingResult child = sample(traceId, root);
+        assertEquals(Decision.RECORD_AND_SAMPLE, child.getDecision());
+        assertEquals(1L, (long) child.getAttributes().get(AttributeKey.longKey("sample.rate")));
+        assertEquals(Decision.DROP, sample(traceId, null).getDecision());
+    }
+
+    @Test
+    public void decisionsAreDeterministicPerTrace() {
+        sampler = new ThroughputTargetSampler(10, 60_000, 0.5);
+        for (int i = 0; i < 6_000; i++) {
+            sampler.sample(UUID.randomUUID().toString());
+        }
+        sampler.updateRate();
+
+        final DeterministicTraceSampler fixed = new DeterministicTraceSampler(10);
+        for (int i = 0; i < 1000; i++) {
+            final String traceId = UUID.randomUUID().toString();
+            final SamplingResult result = sampler.shouldSample(null, traceId, "span", Span.Kind.SERVER,
+                Attributes.empty(), Collections.emptyList());
+            assertEquals(fixed.sample(traceId) > 0, result.getDecision() == Decision.RECORD_AND_SAMPLE);
+            assertEquals(fixed.sample(traceId), (long) result.getAttributes().get(AttributeKey.longKey("sample.rate")));
+        }
+    }
+
+    /**
+     * @return a trace id that the first rate keeps and the second drops.
+     */
+    private static String keptAtOnlyFirstRate(final int first, final int second) {
+        final DeterministicTraceSampler keeps = new DeterministicTraceSampler(first);
+        final DeterministicTraceSampler drops = new DeterministicTraceSampler(second);
+        while (true) {
+            final String traceId = UUID.randomUUID().toString().replace("-", "");
+            if (keeps.sample(traceId) > 0 && drops.sample(traceId) == 0) {
+                return traceId;
+            }
+        }
+    }
+
+    private SamplingResult sample(final String traceId, final SamplingResult parent) {
+        final SpanContext parentContext = parent == null ? null : SpanContext.create(traceId, "000000000012d685",
+            parent.getDecision() == Decision.RECORD_AND_SAMPLE ? TraceFlags.getSampled() : TraceFlags.getDefault(),
+            TraceState.getDefault());
+        return sampler.shouldSample(parentContext, traceId, "span", Span.Kind.SERVER, Attributes.empty(),
+            Collections.emptyList());
+    }
+}